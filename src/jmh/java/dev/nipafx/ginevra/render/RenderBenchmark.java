@@ -0,0 +1,173 @@
+package dev.nipafx.ginevra.render;
+
+import dev.nipafx.ginevra.execution.StoreFront;
+import dev.nipafx.ginevra.html.Classes;
+import dev.nipafx.ginevra.html.Element;
+import dev.nipafx.ginevra.html.HtmlDocument;
+import dev.nipafx.ginevra.html.Id;
+import dev.nipafx.ginevra.html.ListItem;
+import dev.nipafx.ginevra.html.Src;
+import dev.nipafx.ginevra.outline.Document;
+import dev.nipafx.ginevra.outline.FileDocument;
+import dev.nipafx.ginevra.outline.Query.CollectionQuery;
+import dev.nipafx.ginevra.outline.Query.RootQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static dev.nipafx.ginevra.html.GmlElement.text;
+import static dev.nipafx.ginevra.html.HtmlElement.a;
+import static dev.nipafx.ginevra.html.HtmlElement.body;
+import static dev.nipafx.ginevra.html.HtmlElement.code;
+import static dev.nipafx.ginevra.html.HtmlElement.div;
+import static dev.nipafx.ginevra.html.HtmlElement.document;
+import static dev.nipafx.ginevra.html.HtmlElement.em;
+import static dev.nipafx.ginevra.html.HtmlElement.h2;
+import static dev.nipafx.ginevra.html.HtmlElement.head;
+import static dev.nipafx.ginevra.html.HtmlElement.img;
+import static dev.nipafx.ginevra.html.HtmlElement.li;
+import static dev.nipafx.ginevra.html.HtmlElement.link;
+import static dev.nipafx.ginevra.html.HtmlElement.meta;
+import static dev.nipafx.ginevra.html.HtmlElement.p;
+import static dev.nipafx.ginevra.html.HtmlElement.pre;
+import static dev.nipafx.ginevra.html.HtmlElement.strong;
+import static dev.nipafx.ginevra.html.HtmlElement.ul;
+
+/**
+ * Renders a large, already resolved page (comparable to a long article with navigation) to HTML.
+ *
+ * <p>Run with {@code mvn -P benchmarks compile exec:exec}, which attaches JMH's GC profiler,
+ * so {@code gc.alloc.rate.norm} reports the bytes allocated per rendered page. To isolate
+ * the cost of emitting tags and attributes, {@code fragmentCache=false} renders each element
+ * anew instead of reusing previously rendered fragments.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class RenderBenchmark {
+
+	@Param({ "false", "true" })
+	private boolean fragmentCache;
+
+	@Param({ "200" })
+	private int sections;
+
+	private Renderer renderer;
+	private HtmlDocument page;
+
+	@Setup
+	public void createPage() {
+		var fragments = fragmentCache ? FragmentCache.bounded(FragmentCache.DEFAULT_CAPACITY) : FragmentCache.none();
+		renderer = new Renderer(new EmptyStore(), Path.of("resources"), Path.of("style"), false, fragments);
+		page = createPage(sections);
+	}
+
+	@Benchmark
+	public String renderToString() {
+		return renderer.renderAsHtml(page, Set.of()).html();
+	}
+
+	@Benchmark
+	public void renderToWriter() {
+		// the null writer discards the output, so this measures the rendering alone
+		renderer.renderAsHtml(page, Writer.nullWriter());
+	}
+
+	private static HtmlDocument createPage(int sectionCount) {
+		var navigation = new ArrayList<ListItem>();
+		var sections = new ArrayList<Element>();
+		for (int i = 0; i < sectionCount; i++) {
+			navigation.add(li.children(a.href("#section-" + i).title("Section " + i).text("Section " + i)));
+			sections.add(createSection(i));
+		}
+
+		return document
+				.language(Locale.ENGLISH)
+				.head(head
+						.title("A Long Article")
+						.charset(StandardCharsets.UTF_8)
+						.children(
+								meta.name("description").content("A long article that is used to benchmark rendering"),
+								meta.name("viewport").content("width=device-width, initial-scale=1"),
+								link.rel("stylesheet").href("/style/global.css"),
+								link.rel("icon").href("/resources/favicon.png")))
+				.body(body
+						.classes(Classes.of("article", "dark"))
+						.children(
+								div.id(Id.of("navigation")).classes(Classes.of("nav")).children(ul.children(navigation)),
+								div.id(Id.of("content")).children(sections)));
+	}
+
+	private static Element createSection(int index) {
+		return div
+				.id(Id.of("section-" + index))
+				.classes(Classes.of("section", index % 2 == 0 ? "even" : "odd"))
+				.children(List.of(
+						h2.id(Id.of("heading-" + index)).text("Section " + index),
+						p.children(
+								text.text("This is the first paragraph of section " + index + ", which contains "),
+								strong.text("strong"),
+								text.text(" and "),
+								em.text("emphasized"),
+								text.text(" text as well as a "),
+								a.href("https://example.org/" + index).title("Example " + index).text("link"),
+								text.text(".")),
+						img
+								.classes(Classes.of("illustration"))
+								.src(Src.direct("/resources/image-" + index + ".png"))
+								.title("Illustration " + index)
+								.alt("An illustration for section " + index),
+						ul.classes(Classes.of("points")).children(
+								li.text("first point"),
+								li.children(text.text("second point with "), code.text("code")),
+								li.children(text.text("third point with "), em.text("emphasis"))),
+						pre.classes(Classes.of("code-block")).children(
+								code.classes(Classes.of("language-java")).text("var section = " + index + ";"))));
+	}
+
+	private static class EmptyStore implements StoreFront {
+
+		@Override
+		public <RESULT extends Record & Document> RESULT query(RootQuery<RESULT> query) {
+			throw new IllegalStateException("The empty store can't answer queries");
+		}
+
+		@Override
+		public <RESULT extends Record & Document> Set<RESULT> query(CollectionQuery<RESULT> query) {
+			throw new IllegalStateException("The empty store can't answer queries");
+		}
+
+		@Override
+		public Optional<? extends FileDocument> getResource(String name) {
+			throw new IllegalStateException("The empty store can't answer queries");
+		}
+
+		@Override
+		public long generation() {
+			return 0;
+		}
+
+	}
+
+}
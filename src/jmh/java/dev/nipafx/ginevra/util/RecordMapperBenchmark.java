@@ -0,0 +1,115 @@
+package dev.nipafx.ginevra.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.RecordComponent;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toUnmodifiableMap;
+
+/**
+ * Maps a document (comparable to an article's front matter) to a value map and back, once with
+ * {@link RecordMapper}, which looks up accessors and constructor once per type, and once with
+ * the reflective lookups per instance that it used before (see {@link Reflective}).
+ *
+ * <p>Run with {@code mvn -P benchmarks compile exec:exec -Djmh.args="RecordMapperBenchmark -prof gc"}.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class RecordMapperBenchmark {
+
+	public record Article(
+			String title, String slug, int rank, Optional<String> description, List<String> tags, Path file) { }
+
+	private Article article;
+	private Map<String, Object> values;
+
+	@Setup
+	public void createArticle() {
+		article = new Article(
+				"A Long Article",
+				"a-long-article",
+				42,
+				Optional.of("A long article that is used to benchmark record mapping"),
+				List.of("java", "records", "performance"),
+				Path.of("articles/a-long-article.md"));
+		values = RecordMapper.createValueMapFromRecord(article);
+	}
+
+	@Benchmark
+	public Map<String, Object> valueMapFromRecord_cached() {
+		return RecordMapper.createValueMapFromRecord(article);
+	}
+
+	@Benchmark
+	public Map<String, Object> valueMapFromRecord_reflective() {
+		return Reflective.createValueMapFromRecord(article);
+	}
+
+	@Benchmark
+	public Article recordFromValueMap_cached() {
+		return RecordMapper.createRecordFromValueMap(Article.class, values);
+	}
+
+	@Benchmark
+	public Article recordFromValueMap_reflective() {
+		return Reflective.createRecordFromValueMap(Article.class, values);
+	}
+
+	/**
+	 * The reflective approach {@code RecordMapper} took before it cached a plan per type
+	 * (reduced to what's needed for the flat {@code Article}).
+	 */
+	static class Reflective {
+
+		static Map<String, Object> createValueMapFromRecord(Record instance) {
+			return Stream
+					.of(instance.getClass().getRecordComponents())
+					.collect(toUnmodifiableMap(
+							RecordComponent::getName,
+							component -> {
+								try {
+									return component.getAccessor().invoke(instance);
+								} catch (ReflectiveOperationException ex) {
+									throw new IllegalStateException(ex);
+								}
+							}));
+		}
+
+		static <TYPE extends Record> TYPE createRecordFromValueMap(Class<TYPE> type, Map<String, ?> values) {
+			var constructorArguments = Stream
+					.of(type.getRecordComponents())
+					.map(component -> values.get(component.getName()))
+					.toArray();
+			var constructorParameters = Stream
+					.of(type.getRecordComponents())
+					.map(RecordComponent::getType)
+					.toArray(Class[]::new);
+			try {
+				return type.getConstructor(constructorParameters).newInstance(constructorArguments);
+			} catch (ReflectiveOperationException ex) {
+				throw new IllegalStateException(ex);
+			}
+		}
+
+	}
+
+}
@@ -9,7 +9,9 @@ public interface GinevraArgs {
 
 	sealed interface ActionArgs { }
 
-	record BuildArgs(Optional<Path> siteFolder, Optional<Path> resourcesFolder, Optional<Path> cssFolder) implements ActionArgs {
+	record BuildArgs(
+			Optional<Path> siteFolder, Optional<Path> resourcesFolder, Optional<Path> cssFolder,
+			Optional<Boolean> parallel, Optional<Path> buildCache, Optional<Boolean> pureElements) implements ActionArgs {
 
 		public SitePaths createPaths() {
 			return new SitePaths(
@@ -19,9 +21,19 @@ public interface GinevraArgs {
 			);
 		}
 
+		public boolean parallelOrDefault() {
+			return parallel.orElse(false);
+		}
+
+		public boolean pureElementsOrDefault() {
+			return pureElements.orElse(false);
+		}
+
 	}
 
-	record DevelopArgs(Path sources, Optional<Integer> port, Optional<Boolean> pureTemplates) implements ActionArgs {
+	record DevelopArgs(
+			Path sources, Optional<Integer> port, Optional<Boolean> pureTemplates, Optional<Boolean> pureElements)
+			implements ActionArgs {
 
 		public int portOrDefault() {
 			return port.orElse(8000);
@@ -31,6 +43,10 @@ public interface GinevraArgs {
 			return pureTemplates.orElse(false);
 		}
 
+		public boolean pureElementsOrDefault() {
+			return pureElements.orElse(false);
+		}
+
 	}
 
 }
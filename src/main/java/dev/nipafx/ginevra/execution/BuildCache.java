@@ -0,0 +1,200 @@
+package dev.nipafx.ginevra.execution;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.nipafx.ginevra.util.SHA256;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers what a build produced, so the next build can skip work that would lead to the same result.
+ */
+interface BuildCache {
+
+	static BuildCache none() {
+		return new NoBuildCache();
+	}
+
+	static BuildCache load(Path cacheFile, Path siteFolder, Optional<String> fingerprint) {
+		return PersistentBuildCache.load(cacheFile, siteFolder, fingerprint);
+	}
+
+	/**
+	 * @return whether the last build had the same fingerprint and all files it produced still exist
+	 */
+	boolean isUpToDate();
+
+	/**
+	 * Registers the file as output of this build.
+	 *
+	 * @return whether the file needs to be written (i.e. whether it didn't exist with this content after the last build)
+	 */
+	boolean registerOutput(Path file, String content);
+
+	/**
+	 * Registers the file, which is a copy of the source file, as output of this build.
+	 *
+	 * @return whether the file needs to be copied (i.e. whether it didn't exist with this content after the last build)
+	 */
+	boolean registerOutput(Path file, Path source);
+
+	/**
+	 * Registers the file, whose content has the given {@link SHA256} hash, as output of this build.
+	 *
+	 * @return whether the file needs to be written (i.e. whether it didn't exist with this content after the last build)
+	 */
+	boolean registerOutputHash(Path file, String contentHash);
+
+	/**
+	 * @return whether this cache compares output content to that of the last build
+	 * 		(if it doesn't, there's no need to hash content before writing it)
+	 */
+	boolean comparesContent();
+
+	/**
+	 * Deletes the files that the last build produced but this one didn't and persists the cache.
+	 */
+	void completeBuild();
+
+	class NoBuildCache implements BuildCache {
+
+		@Override
+		public boolean isUpToDate() {
+			return false;
+		}
+
+		@Override
+		public boolean registerOutput(Path file, String content) {
+			return true;
+		}
+
+		@Override
+		public boolean registerOutput(Path file, Path source) {
+			return true;
+		}
+
+		@Override
+		public boolean registerOutputHash(Path file, String contentHash) {
+			return true;
+		}
+
+		@Override
+		public boolean comparesContent() {
+			return false;
+		}
+
+		@Override
+		public void completeBuild() {
+			// nothing was cached, so there's nothing to do
+		}
+
+	}
+
+	class PersistentBuildCache implements BuildCache {
+
+		private static final ObjectMapper JSON = Json.BUILD_CACHE_MAPPER;
+
+		private final Path cacheFile;
+		private final Path siteFolder;
+		private final Optional<String> fingerprint;
+		private final Manifest previousBuild;
+		// maps the paths of output files (relative to the site folder) to their content hashes
+		private final ConcurrentMap<String, String> outputFiles;
+
+		private PersistentBuildCache(Path cacheFile, Path siteFolder, Optional<String> fingerprint, Manifest previousBuild) {
+			this.cacheFile = cacheFile;
+			this.siteFolder = siteFolder.toAbsolutePath();
+			this.fingerprint = fingerprint;
+			this.previousBuild = previousBuild;
+			this.outputFiles = new ConcurrentHashMap<>();
+		}
+
+		static PersistentBuildCache load(Path cacheFile, Path siteFolder, Optional<String> fingerprint) {
+			var previousBuild = Manifest.empty();
+			if (Files.exists(cacheFile))
+				try {
+					previousBuild = JSON.readValue(cacheFile.toFile(), Manifest.class);
+				} catch (IOException ex) {
+					// an unreadable cache is no reason to fail the build - it will just be slower
+					System.out.printf("Ignoring unreadable build cache %s: %s%n", cacheFile, ex.getMessage());
+				}
+			return new PersistentBuildCache(cacheFile, siteFolder, fingerprint, previousBuild);
+		}
+
+		@Override
+		public boolean isUpToDate() {
+			// an unknown fingerprint means that some source couldn't be fingerprinted,
+			// so there's no way of knowing whether anything changed
+			return fingerprint.isPresent()
+					&& fingerprint.get().equals(previousBuild.fingerprint())
+					&& previousBuild
+							.files().keySet().stream()
+							.allMatch(file -> Files.exists(siteFolder.resolve(file)));
+		}
+
+		@Override
+		public boolean registerOutput(Path file, String content) {
+			return registerOutputHash(file, SHA256.hash(content));
+		}
+
+		@Override
+		public boolean registerOutput(Path file, Path source) {
+			return registerOutputHash(file, SHA256.hash(source));
+		}
+
+		@Override
+		public boolean registerOutputHash(Path file, String contentHash) {
+			var absoluteFile = file.toAbsolutePath();
+			var relativeFile = siteFolder.relativize(absoluteFile).toString();
+			outputFiles.put(relativeFile, contentHash);
+
+			var unchanged = contentHash.equals(previousBuild.files().get(relativeFile)) && Files.exists(absoluteFile);
+			return !unchanged;
+		}
+
+		@Override
+		public boolean comparesContent() {
+			return true;
+		}
+
+		@Override
+		public void completeBuild() {
+			previousBuild
+					.files().keySet().stream()
+					.filter(file -> !outputFiles.containsKey(file))
+					.map(siteFolder::resolve)
+					.forEach(staleFile -> {
+						try {
+							Files.deleteIfExists(staleFile);
+						} catch (IOException ex) {
+							// TODO: handle error
+							ex.printStackTrace();
+						}
+					});
+
+			try {
+				Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+				var manifest = new Manifest(fingerprint.orElse(""), Map.copyOf(outputFiles));
+				JSON.writeValue(cacheFile.toFile(), manifest);
+			} catch (IOException ex) {
+				// TODO: handle error
+				ex.printStackTrace();
+			}
+		}
+
+		record Manifest(String fingerprint, Map<String, String> files) {
+
+			static Manifest empty() {
+				return new Manifest("", Map.of());
+			}
+
+		}
+
+	}
+
+}
@@ -0,0 +1,103 @@
+package dev.nipafx.ginevra.execution;
+
+import dev.nipafx.ginevra.execution.NodeOutline.Node;
+import dev.nipafx.ginevra.execution.NodeOutline.Node.SourceNode;
+import dev.nipafx.ginevra.outline.Source;
+import dev.nipafx.ginevra.util.SHA256;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Computes a hash over everything that determines a one-time build's output:
+ * the content of all sources, the code that processes them, and the build arguments.
+ */
+class BuildFingerprint {
+
+	private BuildFingerprint() {
+		// private constructor to prevent instantiation
+	}
+
+	/**
+	 * @return the fingerprint or an empty {@code Optional} if some part of the build can't be fingerprinted
+	 */
+	static Optional<String> of(NodeOutline outline, Collection<Class<?>> codeTypes, Object buildArgs) {
+		var sourceFingerprints = outline
+				.nodes(SourceNode.class)
+				// node IDs are assigned in outline order, which makes them stable across builds
+				.sorted(Comparator.comparing(Node::id))
+				.map(node -> fingerprint(node.source()))
+				.toList();
+		if (sourceFingerprints.stream().anyMatch(Optional::isEmpty))
+			return Optional.empty();
+
+		var codeFingerprints = codeTypes.stream()
+				.map(BuildFingerprint::fingerprintCodeOf)
+				.distinct()
+				.toList();
+		if (codeFingerprints.stream().anyMatch(Optional::isEmpty))
+			return Optional.empty();
+
+		var fingerprint = Stream
+				.of(sourceFingerprints.stream(), codeFingerprints.stream(), Stream.of(Optional.of(buildArgs.toString())))
+				.flatMap(fingerprints -> fingerprints)
+				.map(Optional::orElseThrow)
+				.collect(joining("|"));
+		return Optional.of(SHA256.hash(fingerprint));
+	}
+
+	private static Optional<String> fingerprint(Source<?> source) {
+		return switch (source) {
+			case FileSource<?> fileSource -> Optional.of(fileSource.fingerprint());
+			case RecordSource<?> recordSource -> Optional.of(recordSource.fingerprint());
+			// there's no telling what other sources load, so they can't be fingerprinted
+			default -> Optional.empty();
+		};
+	}
+
+	private static Optional<String> fingerprintCodeOf(Class<?> type) {
+		var codeSource = type.getProtectionDomain().getCodeSource();
+		if (codeSource == null || codeSource.getLocation() == null)
+			return Optional.empty();
+
+		try {
+			var location = Path.of(codeSource.getLocation().toURI());
+			return Files.isDirectory(location)
+					? fingerprintDirectory(location)
+					: Optional.of(SHA256.hash(location));
+		} catch (URISyntaxException | IllegalArgumentException ex) {
+			// the location isn't a file system path (e.g. for code loaded over the network)
+			return Optional.empty();
+		} catch (UncheckedIOException ex) {
+			// TODO: handle error
+			ex.printStackTrace();
+			return Optional.empty();
+		}
+	}
+
+	private static Optional<String> fingerprintDirectory(Path directory) {
+		try (var files = Files.walk(directory)) {
+			var fileHashes = files
+					.filter(Files::isRegularFile)
+					.sorted()
+					.map(file -> "%s:%s".formatted(directory.relativize(file), SHA256.hash(file)))
+					.collect(joining("\n"));
+			return Optional.of(SHA256.hash(fileHashes));
+		} catch (IOException | UncheckedIOException ex) {
+			// TODO: handle error
+			ex.printStackTrace();
+			// code that can't be read can't be fingerprinted (and must not count as unchanged)
+			return Optional.empty();
+		}
+	}
+
+}
@@ -2,24 +2,40 @@ package dev.nipafx.ginevra.execution;
 
 import dev.nipafx.ginevra.Ginevra;
 
+import java.lang.ref.WeakReference;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 class ByteArrayClassLoader extends ClassLoader {
 
+	/**
+	 * The generation of classes that weren't loaded by a {@code ByteArrayClassLoader}
+	 * (e.g. Ginevra's own classes), which never become stale.
+	 */
+	static final long APP_GENERATION = 0;
+
 	private static final AtomicReference<Optional<ByteArrayClassLoader>> CURRENT =
 			new AtomicReference<>(Optional.empty());
+	private static final AtomicLong LAST_GENERATION = new AtomicLong(APP_GENERATION);
+	// weak references, so the loaders can be garbage collected when nothing else references them
+	private static final List<WeakReference<ByteArrayClassLoader>> ALL_LOADERS = new CopyOnWriteArrayList<>();
 
+	private final long generation;
 	private final Map<String, byte[]> byteCode;
 	private final ConcurrentMap<String, Class<?>> classes;
 
 	ByteArrayClassLoader(ClassLoader parent, Map<String, byte[]> byteCode) {
 		super("site", parent);
+		this.generation = LAST_GENERATION.incrementAndGet();
 		this.byteCode = Map.copyOf(byteCode);
 		this.classes = new ConcurrentHashMap<>();
+		ALL_LOADERS.add(new WeakReference<>(this));
 	}
 
 	@Override
@@ -42,6 +58,10 @@ class ByteArrayClassLoader extends ClassLoader {
 		return byteCode;
 	}
 
+	public long generation() {
+		return generation;
+	}
+
 	public static Optional<ByteArrayClassLoader> current() {
 		return CURRENT.get();
 	}
@@ -57,4 +77,37 @@ class ByteArrayClassLoader extends ClassLoader {
 		return CURRENT.getAndSet(Optional.ofNullable(next));
 	}
 
+	/**
+	 * @return the generation of the loader that loaded the type or {@link #APP_GENERATION}
+	 * 		if it wasn't loaded by a {@code ByteArrayClassLoader}
+	 */
+	public static long generationOf(Class<?> type) {
+		return type.getClassLoader() instanceof ByteArrayClassLoader loader
+				? loader.generation()
+				: APP_GENERATION;
+	}
+
+	/**
+	 * @return whether the generation belongs to a loader that was replaced by a later one
+	 */
+	public static boolean isStale(long generation) {
+		return generation != APP_GENERATION
+				&& generation != CURRENT.get().map(ByteArrayClassLoader::generation).orElse(APP_GENERATION);
+	}
+
+	/**
+	 * Loaders that were replaced but not yet garbage collected. Right after a swap, the previous loader
+	 * is usually still reachable, but if this number keeps growing across swaps, something retains
+	 * instances (or classes) of old generations, which leaks their classes' metaspace.
+	 *
+	 * @return the number of loaders that were replaced but are still reachable
+	 */
+	public static long staleLoaders() {
+		ALL_LOADERS.removeIf(loader -> loader.get() == null);
+		return ALL_LOADERS.stream()
+				.map(WeakReference::get)
+				.filter(loader -> loader != null && isStale(loader.generation()))
+				.count();
+	}
+
 }
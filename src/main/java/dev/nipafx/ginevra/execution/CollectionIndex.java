@@ -0,0 +1,178 @@
+package dev.nipafx.ginevra.execution;
+
+import dev.nipafx.ginevra.outline.Query.Condition;
+import dev.nipafx.ginevra.outline.Query.Condition.Equals;
+import dev.nipafx.ginevra.outline.Query.Condition.Range;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * A secondary index over the values of one record component of the documents in a collection.
+ *
+ * <p>Documents are indexed by the component value, so equality conditions can be answered with a lookup.
+ * If all values are mutually comparable, the index is also sorted, so range conditions and orderings can
+ * be answered without comparing all documents.</p>
+ */
+class CollectionIndex<DOCUMENT extends Record> {
+
+	private final Method accessor;
+	private final Map<Object, List<DOCUMENT>> documentsByValue;
+	// `null` if the component values aren't mutually comparable
+	private final NavigableMap<Object, List<DOCUMENT>> sortedDocumentsByValue;
+	private final List<DOCUMENT> documentsWithoutValue;
+
+	private CollectionIndex(
+			Method accessor,
+			Map<Object, List<DOCUMENT>> documentsByValue,
+			NavigableMap<Object, List<DOCUMENT>> sortedDocumentsByValue,
+			List<DOCUMENT> documentsWithoutValue) {
+		this.accessor = accessor;
+		this.documentsByValue = documentsByValue;
+		this.sortedDocumentsByValue = sortedDocumentsByValue;
+		this.documentsWithoutValue = documentsWithoutValue;
+	}
+
+	static <DOCUMENT extends Record> CollectionIndex<DOCUMENT> create(
+			Class<DOCUMENT> type, String component, Collection<DOCUMENT> documents) {
+		var accessor = accessorFor(type, component);
+		var documentsByValue = new HashMap<Object, List<DOCUMENT>>();
+		var documentsWithoutValue = new ArrayList<DOCUMENT>();
+		for (DOCUMENT document : documents) {
+			var value = componentValue(accessor, document);
+			if (value == null)
+				documentsWithoutValue.add(document);
+			else
+				documentsByValue.computeIfAbsent(value, _ -> new ArrayList<>()).add(document);
+		}
+
+		return new CollectionIndex<>(accessor, documentsByValue, sortIfPossible(documentsByValue), documentsWithoutValue);
+	}
+
+	private static Method accessorFor(Class<?> type, String component) {
+		return Stream
+				.of(type.getRecordComponents())
+				.filter(recordComponent -> recordComponent.getName().equals(component))
+				.map(RecordComponent::getAccessor)
+				.findFirst()
+				.orElseThrow(() -> {
+					var message = "Can't select by unknown component '%s' of type '%s'".formatted(component, type.getName());
+					return new IllegalArgumentException(message);
+				});
+	}
+
+	private static <DOCUMENT> NavigableMap<Object, List<DOCUMENT>> sortIfPossible(Map<Object, List<DOCUMENT>> documentsByValue) {
+		var allComparable = documentsByValue
+				.keySet().stream()
+				.allMatch(Comparable.class::isInstance);
+		if (!allComparable)
+			return null;
+
+		try {
+			var sorted = new TreeMap<Object, List<DOCUMENT>>(CollectionIndex::compare);
+			sorted.putAll(documentsByValue);
+			return sorted;
+		} catch (ClassCastException ex) {
+			// the values are comparable, but not to one another
+			return null;
+		}
+	}
+
+	// querying
+
+	List<DOCUMENT> select(Condition condition) {
+		return switch (condition) {
+			case Equals(_, var value) -> documentsByValue.getOrDefault(value, List.of());
+			case Range(var component, var from, var to) -> {
+				var sorted = sortedOrThrow(component);
+				try {
+					var range = from.isPresent() && to.isPresent()
+							? sorted.subMap(from.get(), true, to.get(), false)
+							: from.isPresent()
+									? sorted.tailMap(from.get(), true)
+									: sorted.headMap(to.orElseThrow(), false);
+					yield flatten(range);
+				} catch (ClassCastException | IllegalArgumentException ex) {
+					var message = "Can't select component '%s' in range [%s, %s)".formatted(component, from, to);
+					throw new IllegalArgumentException(message, ex);
+				}
+			}
+		};
+	}
+
+	/**
+	 * @return all documents ordered by the indexed component's value with documents without value coming last
+	 */
+	List<DOCUMENT> ordered(String component, boolean descending) {
+		var sorted = sortedOrThrow(component);
+		var ordered = flatten(descending ? sorted.descendingMap() : sorted);
+		ordered.addAll(documentsWithoutValue);
+		return ordered;
+	}
+
+	boolean matches(DOCUMENT document, Condition condition) {
+		var value = componentValue(accessor, document);
+		return switch (condition) {
+			case Equals(_, var expected) -> Objects.equals(value, expected);
+			case Range(_, var from, var to) -> value != null
+					&& from.map(bound -> compare(bound, value) <= 0).orElse(true)
+					&& to.map(bound -> compare(value, bound) < 0).orElse(true);
+		};
+	}
+
+	Comparator<DOCUMENT> comparator(boolean descending) {
+		Comparator<Object> valueOrder = descending
+				? ((Comparator<Object>) CollectionIndex::compare).reversed()
+				: CollectionIndex::compare;
+		return Comparator.comparing(document -> componentValue(accessor, document), Comparator.nullsLast(valueOrder));
+	}
+
+	private NavigableMap<Object, List<DOCUMENT>> sortedOrThrow(String component) {
+		if (sortedDocumentsByValue == null) {
+			var message = "Can't order by component '%s' because its values aren't mutually comparable".formatted(component);
+			throw new IllegalArgumentException(message);
+		}
+		return sortedDocumentsByValue;
+	}
+
+	private static <DOCUMENT> List<DOCUMENT> flatten(Map<Object, List<DOCUMENT>> documentsByValue) {
+		var documents = new ArrayList<DOCUMENT>();
+		documentsByValue.values().forEach(documents::addAll);
+		return documents;
+	}
+
+	// misc
+
+	private static Object componentValue(Method accessor, Record document) {
+		try {
+			var value = accessor.invoke(document);
+			return value instanceof Optional<?> optional
+					? optional.orElse(null)
+					: value;
+		} catch (IllegalAccessException ex) {
+			var message = "Record '%s' is inaccessible.".formatted(document.getClass().getName());
+			throw new IllegalStateException(message, ex);
+		} catch (InvocationTargetException ex) {
+			var message = "Invoking accessor '%s#%s' failed.".formatted(document.getClass().getName(), accessor.getName());
+			throw new IllegalStateException(message, ex);
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static int compare(Object left, Object right) {
+		return ((Comparable) left).compareTo(right);
+	}
+
+}
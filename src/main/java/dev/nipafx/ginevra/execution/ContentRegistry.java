@@ -0,0 +1,134 @@
+package dev.nipafx.ginevra.execution;
+
+import dev.nipafx.ginevra.outline.HtmlContent;
+import dev.nipafx.ginevra.outline.SenderId;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds the {@link HtmlContent} instances that the {@link LiveStore} excludes from JSON (see {@link Json}).
+ *
+ * <p>The content is registered per store slot (a collection or the root) and sender. Each time a sender's
+ * documents are stored, their content replaces the content of the previous generation, which is released
+ * unless other slots still reference it, so the registry only holds the content of the current site.</p>
+ */
+class ContentRegistry {
+
+	private final ConcurrentMap<UUID, Entry> entriesById;
+	private final Map<HtmlContent, UUID> idsByContent;
+	private final Map<Owner, Claim> claimsByOwner;
+
+	ContentRegistry() {
+		entriesById = new ConcurrentHashMap<>();
+		idsByContent = new IdentityHashMap<>();
+		claimsByOwner = new HashMap<>();
+	}
+
+	/**
+	 * @return a new claim that collects the content that is serialized while storing a sender's documents;
+	 * 		it needs to be {@link #commit(Optional, SenderId, Claim) committed} once they're stored
+	 */
+	Claim claim() {
+		return new Claim(this);
+	}
+
+	/**
+	 * Replaces the content previously registered for the sender in the given collection (or the root)
+	 * with the content in the claim.
+	 */
+	synchronized void commit(Optional<String> collection, SenderId sender, Claim claim) {
+		// register the new content before releasing the old, so content that is in both isn't dropped
+		claim.contentIds().forEach(this::retain);
+		var previous = claimsByOwner.put(new Owner(collection, sender), claim);
+		if (previous != null)
+			previous.contentIds().forEach(this::release);
+	}
+
+	/**
+	 * Releases the content registered for the sender in the given collection (or the root).
+	 */
+	synchronized void release(Optional<String> collection, SenderId sender) {
+		var previous = claimsByOwner.remove(new Owner(collection, sender));
+		if (previous != null)
+			previous.contentIds().forEach(this::release);
+	}
+
+	synchronized void clear() {
+		entriesById.clear();
+		idsByContent.clear();
+		claimsByOwner.clear();
+	}
+
+	/**
+	 * @throws IllegalArgumentException if no content with that ID is registered
+	 */
+	HtmlContent get(UUID contentId) {
+		var entry = entriesById.get(contentId);
+		if (entry == null)
+			throw new IllegalArgumentException("No HTML content with ID '%s' is registered".formatted(contentId));
+		return entry.content();
+	}
+
+	int size() {
+		return entriesById.size();
+	}
+
+	private synchronized UUID idFor(HtmlContent content) {
+		// reuse the ID of content that is already registered, so an unchanged (i.e. the identical)
+		// instance leads to identical JSON and thus doesn't count as a change
+		var contentId = idsByContent.get(content);
+		return contentId != null ? contentId : UUID.randomUUID();
+	}
+
+	private void retain(UUID contentId, HtmlContent content) {
+		entriesById.compute(contentId, (_, entry) -> entry == null
+				? new Entry(content, 1)
+				: new Entry(entry.content(), entry.references() + 1));
+		idsByContent.putIfAbsent(content, contentId);
+	}
+
+	private void release(UUID contentId, HtmlContent content) {
+		var entry = entriesById.computeIfPresent(contentId, (_, previous) -> previous.references() == 1
+				? null
+				: new Entry(previous.content(), previous.references() - 1));
+		if (entry == null)
+			idsByContent.remove(content, contentId);
+	}
+
+	private record Entry(HtmlContent content, int references) { }
+
+	private record Owner(Optional<String> collection, SenderId sender) { }
+
+	/**
+	 * The content that was serialized while storing a sender's documents.
+	 * Claims aren't thread-safe and should only be used to store a single sender's documents.
+	 */
+	static class Claim {
+
+		private final ContentRegistry registry;
+		private final Map<UUID, HtmlContent> contentIds;
+
+		private Claim(ContentRegistry registry) {
+			this.registry = registry;
+			this.contentIds = new HashMap<>();
+		}
+
+		UUID register(HtmlContent content) {
+			var contentId = registry.idFor(content);
+			contentIds.put(contentId, content);
+			return contentId;
+		}
+
+		private Map<UUID, HtmlContent> contentIds() {
+			return contentIds;
+		}
+
+	}
+
+}
@@ -43,10 +43,23 @@ public class Executor {
 		var sitePaths = updatedArgs.createPaths();
 		var outline = createOutline(configuration);
 
+		var buildCache = updatedArgs
+				.buildCache()
+				.map(cacheFile -> BuildCache.load(
+						cacheFile,
+						sitePaths.siteFolder(),
+						BuildFingerprint.of(outline, List.of(configType, Ginevra.class), updatedArgs)))
+				.orElseGet(BuildCache::none);
+		if (buildCache.isUpToDate()) {
+			System.out.println("Neither sources nor code changed since the last build - nothing to do");
+			return;
+		}
+
 		var store = new OneTimeStore();
-		var renderer = new Renderer(store, sitePaths.resourcesFolder(), sitePaths.cssFolder());
-		var fileSystem = SiteFileSystem.create(sitePaths);
-		var siteBuilder = new OneTimeSiteBuilder(store, renderer, fileSystem);
+		var renderer = new Renderer(
+				store, sitePaths.resourcesFolder(), sitePaths.cssFolder(), updatedArgs.pureElementsOrDefault());
+		var fileSystem = SiteFileSystem.create(sitePaths, buildCache);
+		var siteBuilder = new OneTimeSiteBuilder(store, renderer, fileSystem, updatedArgs.parallelOrDefault());
 
 		try {
 			siteBuilder.build(outline);
@@ -68,7 +81,7 @@ public class Executor {
 		var outline = createOutline(configuration);
 
 		var store = new LiveStore();
-		var renderer = new Renderer(store, Path.of("resources"), Path.of("style"));
+		var renderer = new Renderer(store, Path.of("resources"), Path.of("style"), developArgs.pureElementsOrDefault());
 		var server = new LiveServer();
 		var siteBuilder = new LiveSiteBuilder(store, renderer, server, developArgs.pureTemplatesOrDefault());
 
@@ -14,6 +14,7 @@ import dev.nipafx.ginevra.outline.TextFileDocument;
 import dev.nipafx.ginevra.util.FileSystemUtils;
 import dev.nipafx.ginevra.util.FileWatch;
 import dev.nipafx.ginevra.util.FileWatchEvent;
+import dev.nipafx.ginevra.util.SHA256;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -24,6 +25,7 @@ import java.util.Optional;
 import java.util.function.Consumer;
 
 import static java.util.function.Predicate.not;
+import static java.util.stream.Collectors.joining;
 
 class FileSource<DOCUMENT extends Record & FileDocument> implements Source<DOCUMENT> {
 
@@ -58,12 +60,18 @@ class FileSource<DOCUMENT extends Record & FileDocument> implements Source<DOCUM
 	}
 
 	private List<Envelope<DOCUMENT>> loadAllFromDirectory(Path directory) {
+		return listFiles(directory).stream()
+				.map(this::loadFile)
+				.flatMap(Optional::stream)
+				.toList();
+	}
+
+	private static List<Path> listFiles(Path directory) {
 		try (var files = Files.walk(directory, 1)) {
 			return files
 					.filter(not(Files::isDirectory))
 					.filter(file -> !file.getFileName().toString().startsWith("."))
-					.map(this::loadFile)
-					.flatMap(Optional::stream)
+					.sorted()
 					.toList();
 		} catch (IOException ex) {
 			// TODO: handle error
@@ -72,6 +80,18 @@ class FileSource<DOCUMENT extends Record & FileDocument> implements Source<DOCUM
 		}
 	}
 
+	/**
+	 * @return a hash over the names and contents of all files this source would load
+	 */
+	String fingerprint() {
+		var files = Files.isDirectory(path) ? listFiles(path) : List.of(path);
+		var fileHashes = files.stream()
+				.filter(Files::exists)
+				.map(file -> "%s:%s".formatted(file, SHA256.hash(file)))
+				.collect(joining("\n"));
+		return SHA256.hash("%s|%s".formatted(name, fileHashes));
+	}
+
 	private Optional<Envelope<DOCUMENT>> loadFile(Path file) {
 		var id = createIdFor(file);
 		try {
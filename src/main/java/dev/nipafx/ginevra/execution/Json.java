@@ -12,6 +12,7 @@ import com.fasterxml.jackson.databind.node.TextNode;
 import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import dev.nipafx.ginevra.execution.ContentRegistry.Claim;
 import dev.nipafx.ginevra.outline.HtmlContent;
 
 import java.io.IOException;
@@ -19,60 +20,52 @@ import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 import static com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES;
 
 class Json {
 
-	static final ObjectMapper LIVE_STORE_MAPPER = new ObjectMapper()
-			.configure(FAIL_ON_UNKNOWN_PROPERTIES, false)
-			.registerModule(new Jdk8Module())
-			.registerModule(new JavaTimeModule())
-			.registerModule(new SimpleModule(
-					"StoreModule",
-					Version.unknownVersion(),
-					Map.of(
-							HtmlContent.class, new ContentDeserializer(),
-							Path.class, new PathDeserializer()),
-					List.of(
-							new ContentSerializer(),
-							new PathSerializer())));
-
-	static final ObjectMapper ONE_TIME_STORE_MAPPER = new ObjectMapper()
-			.configure(FAIL_ON_UNKNOWN_PROPERTIES, false)
-			.registerModule(new Jdk8Module())
-			.registerModule(new JavaTimeModule())
-			.registerModule(new SimpleModule(
-					"StoreModule",
-					Version.unknownVersion(),
-					Map.of(
-							HtmlContent.class, new ContentDeserializer(),
-							Path.class, new PathDeserializer()),
-					List.of(
-							new ContentSerializer(),
-							new PathSerializer())));
+	/**
+	 * Creates a new mapper for the live store. Mappers cache (de)serializers per class (and thus keep
+	 * those classes and their class loader reachable), so each class loader generation needs its own.
+	 */
+	static ObjectMapper createLiveStoreMapper() {
+		return new ObjectMapper()
+				.configure(FAIL_ON_UNKNOWN_PROPERTIES, false)
+				.registerModule(new Jdk8Module())
+				.registerModule(new JavaTimeModule())
+				.registerModule(new SimpleModule(
+						"StoreModule",
+						Version.unknownVersion(),
+						Map.of(
+								HtmlContent.class, new ContentDeserializer(),
+								Path.class, new PathDeserializer()),
+						List.of(
+								new ContentSerializer(),
+								new PathSerializer())));
+	}
+
+	static final ObjectMapper BUILD_CACHE_MAPPER = new ObjectMapper();
 
 	/*
 	 * The `HtmlContent` is a potentially large object tree (~> (de-)serialization takes time)
 	 * of Ginevra instances (~> doesn't care about new class loader ~> (de-)serialization unnecessary),
-	 * so exclude it from (de-)serialization by storing it in a map.
+	 * so exclude it from (de-)serialization by storing it in the store's `ContentRegistry`.
+	 * The registry (for deserialization) and the current claim (for serialization) are passed
+	 * as attributes of the object reader/writer.
 	 */
 
 	static class ContentSerializer extends StdSerializer<HtmlContent> {
 
-		private static final ConcurrentMap<UUID, HtmlContent> CONTENT = new ConcurrentHashMap<>();
-
 		public ContentSerializer() {
 			super(HtmlContent.class);
 		}
 
 		@Override
 		public void serialize(HtmlContent content, JsonGenerator json, SerializerProvider provider) throws IOException {
-			var contentId = UUID.randomUUID();
-			CONTENT.put(contentId, content);
-			json.writeString(contentId.toString());
+			if (!(provider.getAttribute(Claim.class) instanceof Claim claim))
+				throw new IllegalStateException("HTML content can only be serialized with a content claim");
+			json.writeString(claim.register(content).toString());
 		}
 
 	}
@@ -87,7 +80,9 @@ class Json {
 		public HtmlContent deserialize(JsonParser json, DeserializationContext context) throws IOException {
 			var node = json.getCodec().readTree(json);
 			var contentId = ((TextNode) node).asText();
-			return ContentSerializer.CONTENT.get(UUID.fromString(contentId));
+			if (!(context.getAttribute(ContentRegistry.class) instanceof ContentRegistry registry))
+				throw new IllegalStateException("HTML content can only be deserialized with a content registry");
+			return registry.get(UUID.fromString(contentId));
 		}
 
 	}
@@ -99,8 +94,6 @@ class Json {
 
 	static class PathSerializer extends StdSerializer<Path> {
 
-		private static final ConcurrentMap<UUID, HtmlContent> CONTENT = new ConcurrentHashMap<>();
-
 		public PathSerializer() {
 			super(Path.class);
 		}
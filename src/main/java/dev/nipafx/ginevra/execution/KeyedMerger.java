@@ -0,0 +1,77 @@
+package dev.nipafx.ginevra.execution;
+
+import dev.nipafx.ginevra.outline.Document;
+import dev.nipafx.ginevra.outline.Merger;
+import dev.nipafx.ginevra.util.StreamUtils.Pair;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static dev.nipafx.ginevra.util.StreamUtils.crossProduct;
+import static dev.nipafx.ginevra.util.StreamUtils.hashJoin;
+
+/**
+ * A merger that only merges documents with equal keys. Merge nodes detect it and,
+ * instead of merging the cross product of their inputs, only merge documents whose keys match.
+ */
+record KeyedMerger<DOCUMENT_IN_1 extends Record & Document, DOCUMENT_IN_2 extends Record & Document, DOCUMENT_OUT extends Record & Document, KEY>(
+		Function<DOCUMENT_IN_1, KEY> leftKey,
+		Function<DOCUMENT_IN_2, KEY> rightKey,
+		Merger<DOCUMENT_IN_1, DOCUMENT_IN_2, DOCUMENT_OUT> merger)
+		implements Merger<DOCUMENT_IN_1, DOCUMENT_IN_2, DOCUMENT_OUT> {
+
+	@Override
+	public List<DOCUMENT_OUT> merge(DOCUMENT_IN_1 doc1, DOCUMENT_IN_2 doc2) {
+		var key = leftKey.apply(doc1);
+		return key != null && Objects.equals(key, rightKey.apply(doc2))
+				? merger.merge(doc1, doc2)
+				: List.of();
+	}
+
+	/**
+	 * @return the pairs of documents that need to be passed to the merger, i.e. those with equal keys
+	 * 		if it is a {@code KeyedMerger}, otherwise all pairs
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static <LEFT, RIGHT> Stream<Pair<LEFT, RIGHT>> pairsToMerge(Merger<?, ?, ?> merger, Collection<LEFT> left, Collection<RIGHT> right) {
+		return switch (merger) {
+			case KeyedMerger keyed -> hashJoin(left, right, keyed.leftKey(), keyed.rightKey());
+			default -> crossProduct(left, right);
+		};
+	}
+
+	/**
+	 * Merges all pairs of documents that need to be merged according to {@link #pairsToMerge(Merger, Collection, Collection) pairsToMerge}.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static Stream<Document> mergeAll(Merger<?, ?, ?> merger, Collection<?> left, Collection<?> right) {
+		return pairsToMerge(merger, left, right)
+				.flatMap(pair -> {
+					// the pairs' keys are known to match, so skip the key check and go straight to the actual merger
+					var actualMerger = (Merger) (merger instanceof KeyedMerger keyed ? keyed.merger() : merger);
+					var documents = (List<Document>) actualMerger.merge((Record & Document) pair.left(), (Record & Document) pair.right());
+					return documents.stream();
+				});
+	}
+
+	/**
+	 * @return the merger's key function for the left side or an empty {@code Optional} if it is no {@code KeyedMerger}
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static Optional<Function<Object, Object>> leftKeyOf(Merger<?, ?, ?> merger) {
+		return merger instanceof KeyedMerger keyed ? Optional.of(keyed.leftKey()) : Optional.empty();
+	}
+
+	/**
+	 * @return the merger's key function for the right side or an empty {@code Optional} if it is no {@code KeyedMerger}
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static Optional<Function<Object, Object>> rightKeyOf(Merger<?, ?, ?> merger) {
+		return merger instanceof KeyedMerger keyed ? Optional.of(keyed.rightKey()) : Optional.empty();
+	}
+
+}
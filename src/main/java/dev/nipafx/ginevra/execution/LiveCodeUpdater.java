@@ -8,6 +8,7 @@ import dev.nipafx.ginevra.util.InMemoryCompiler;
 import dev.nipafx.ginevra.util.InMemoryCompiler.FailedCompilation;
 import dev.nipafx.ginevra.util.InMemoryCompiler.SuccessfulCompilation;
 import dev.nipafx.ginevra.util.MultiplexingQueue;
+import dev.nipafx.ginevra.util.MultiplexingQueue.Backpressure;
 
 import javax.tools.Diagnostic.Kind;
 import java.io.IOException;
@@ -15,6 +16,7 @@ import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
 
@@ -22,6 +24,8 @@ class LiveCodeUpdater {
 
 	private final Path sourceRoot;
 	private final String configClassName;
+	// the compiler keeps the previous compilation's results to only recompile what's needed
+	private final InMemoryCompiler compiler;
 
 	private final MultiplexingQueue<FileWatchEvent> fileEvents;
 	private final List<Consumer<LiveCodeUpdate>> recompileListeners;
@@ -29,7 +33,11 @@ class LiveCodeUpdater {
 	LiveCodeUpdater(Path sourceRoot, String configurationClassName) {
 		this.sourceRoot = sourceRoot;
 		this.configClassName = configurationClassName;
-		this.fileEvents = new MultiplexingQueue<>(this::processFileWatchEvent, "live-code-updater");
+		this.compiler = new InMemoryCompiler(sourceRoot);
+		// a burst of changes (e.g. switching branches) only needs to be compiled once, so only the latest
+		// event per path is kept and all waiting events are processed together
+		this.fileEvents = new MultiplexingQueue<>("live-code-updater", Backpressure.coalesceBy(FileWatchEvent::path));
+		this.fileEvents.addBatchListener(this::processFileWatchEvents);
 		this.recompileListeners = new CopyOnWriteArrayList<>();
 	}
 
@@ -43,18 +51,20 @@ class LiveCodeUpdater {
 		}
 	}
 
-	private void processFileWatchEvent(FileWatchEvent event) {
-		var changedPath = event.path();
+	private void processFileWatchEvents(List<FileWatchEvent> events) {
+		if (events.stream().anyMatch(LiveCodeUpdater::isSourceChange))
+			compileAndUpdateCode()
+					.ifPresent(update -> recompileListeners.forEach(listener -> listener.accept(update)));
+	}
+
+	private static boolean isSourceChange(FileWatchEvent event) {
 		// don't try to draw conclusions from the kind of file system entry the path is referencing
 		// (e.g. a directory or a "regular" file) as in the case of a deletion, nothing meaningful
 		// can be determined
-		if (!FileSystemUtils.isTemporaryChange(event) && changedPath.getFileName().toString().endsWith(".java"))
-			compileAndUpdateCode()
-					.ifPresent(update -> recompileListeners.forEach(listener -> listener.accept(update)));
+		return !FileSystemUtils.isTemporaryChange(event) && event.path().getFileName().toString().endsWith(".java");
 	}
 
 	Optional<LiveCodeUpdate> compileAndUpdateCode() {
-		var compiler = new InMemoryCompiler(sourceRoot);
 		return switch (compiler.compileSources()) {
 			case FailedCompilation failed -> {
 				reportFailedCompilation(failed);
@@ -88,7 +98,7 @@ class LiveCodeUpdater {
 		var classLoader = new ByteArrayClassLoader(getClass().getClassLoader(), compilation.classes());
 		var changes = ByteArrayClassLoader
 				.swap(classLoader)
-				.map(previousLoader -> determineChanges(previousLoader, classLoader))
+				.map(previousLoader -> determineChanges(previousLoader, classLoader, compilation.compiledClasses()))
 				.orElseGet(() -> Changes.forChangedTypes(List.of()));
 		try {
 			var configType = classLoader.loadClass(configClassName);
@@ -106,15 +116,14 @@ class LiveCodeUpdater {
 		}
 	}
 
-	private Changes determineChanges(ByteArrayClassLoader previousLoader, ByteArrayClassLoader nextLoader) {
-		var changedTypes = nextLoader
-				.byteCode()
-				.entrySet().stream()
-				.filter(type -> previousLoader.byteCode().containsKey(type.getKey()))
-				.filter(type -> !Arrays.equals(type.getValue(), previousLoader.byteCode().get(type.getKey())))
+	private Changes determineChanges(ByteArrayClassLoader previousLoader, ByteArrayClassLoader nextLoader, Set<String> compiledClasses) {
+		// classes that weren't compiled again have the same byte code as before
+		var changedTypes = compiledClasses.stream()
+				.filter(type -> previousLoader.byteCode().containsKey(type))
+				.filter(type -> !Arrays.equals(nextLoader.byteCode().get(type), previousLoader.byteCode().get(type)))
 				.<Class<?>> map(type -> {
 					try {
-						return nextLoader.loadClass(type.getKey());
+						return nextLoader.loadClass(type);
 					} catch (ClassNotFoundException ex) {
 						// TODO: handle error
 						throw new IllegalStateException(ex);
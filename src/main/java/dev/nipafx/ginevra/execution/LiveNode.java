@@ -13,15 +13,19 @@ import dev.nipafx.ginevra.outline.SourceEvent.Removed;
 import dev.nipafx.ginevra.util.StreamUtils.Pair;
 
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 
-import static dev.nipafx.ginevra.util.CollectionUtils.add;
-import static dev.nipafx.ginevra.util.StreamUtils.crossProduct;
+import static java.util.stream.Collectors.toSet;
 
 sealed interface LiveNode {
 
@@ -209,9 +213,10 @@ sealed interface LiveNode {
 		private Merger<?, ?, ?> merger;
 
 		// indicates whether merging the senders' documents lead to a non-empty result
+		// (for keyed merges, envelopes without matching keys are never merged and thus not registered)
 		private final Map<Pair<SenderId, SenderId>, Boolean> ledger;
-		private List<Envelope<?>> leftInput;
-		private List<Envelope<?>> rightInput;
+		private MergeInput leftInput;
+		private MergeInput rightInput;
 
 		MergeLiveNode(LiveNode leftNode, LiveNode rightNode, Merger<?, ?, ?> merger) {
 			this.leftNode = leftNode;
@@ -223,9 +228,9 @@ sealed interface LiveNode {
 
 		MergeLiveNode setInput(LiveNode previous, List<Envelope<?>> envelopes) {
 			if (leftNode == previous)
-				leftInput = List.copyOf(envelopes);
+				leftInput = new MergeInput(envelopes, KeyedMerger.leftKeyOf(merger));
 			else if (rightNode == previous)
-				rightInput = List.copyOf(envelopes);
+				rightInput = new MergeInput(envelopes, KeyedMerger.rightKeyOf(merger));
 			else
 				throw new IllegalStateException("Unexpected merge parent node: " + previous);
 
@@ -236,137 +241,222 @@ sealed interface LiveNode {
 			if (leftInput == null || rightInput == null)
 				return Optional.empty();
 
-			var merged = crossProduct(leftInput, rightInput)
-					.<Envelope<?>> map(pair -> {
-						Envelope<?> mergedEnvelope = applyMerge(pair.left(), pair.right());
-						ledger.put(
-								new Pair<>(pair.left().sender(), pair.right().sender()),
-								!mergedEnvelope.documents().isEmpty());
-						return mergedEnvelope;
-					})
+			var merged = leftInput
+					.envelopes().stream()
+					.flatMap(left -> rightInput
+							.envelopesMatching(leftInput.keysOf(left))
+							.<Envelope<?>> map(right -> {
+								Envelope<?> mergedEnvelope = applyMerge(left, right);
+								ledger.put(
+										new Pair<>(left.sender(), right.sender()),
+										!mergedEnvelope.documents().isEmpty());
+								return mergedEnvelope;
+							}))
 					.filter(envelope -> !envelope.documents().isEmpty())
 					.toList();
 			return Optional.of(merged);
 		}
 
 		List<SourceEvent> update(LiveNode previous, SourceEvent event) {
+			if (leftNode == previous)
+				return update(event, new Side(leftInput, rightInput, true));
+			else if (rightNode == previous)
+				return update(event, new Side(rightInput, leftInput, false));
+			else
+				throw new IllegalArgumentException("Unexpected merge parent node: " + previous);
+		}
+
+		private List<SourceEvent> update(SourceEvent event, Side side) {
 			return switch (event) {
 				case Added(var added) -> {
-					if (leftNode == previous) {
-						leftInput = add(leftInput, added);
-						yield rightInput.stream()
-								.map(right -> {
-									var addedEnvelope = applyMerge(added, right);
-									ledger.put(
-											new Pair<>(added.sender(), right.sender()),
-											!addedEnvelope.documents().isEmpty());
-									return addedEnvelope;
-								})
-								.filter(envelope -> !envelope.documents().isEmpty())
-								.<SourceEvent> map(Added::new)
-								.toList();
-					} else if (rightNode == previous) {
-						rightInput = add(rightInput, added);
-						yield leftInput.stream()
-								.map(left -> {
-									var addedEnvelope = applyMerge(left, added);
-									ledger.put(
-											new Pair<>(left.sender(), added.sender()),
-											!addedEnvelope.documents().isEmpty());
-									return addedEnvelope;
-								})
-								.filter(envelope -> !envelope.documents().isEmpty())
-								.<SourceEvent> map(Added::new)
-								.toList();
-					} else
-						throw new IllegalArgumentException("Unexpected merge parent node: " + previous);
+					side.own().put(added);
+					yield side
+							.other()
+							.envelopesMatching(side.own().keysOf(added))
+							.map(other -> {
+								var addedEnvelope = applyMerge(side, added, other);
+								ledger.put(side.pair(added.sender(), other.sender()), !addedEnvelope.documents().isEmpty());
+								return addedEnvelope;
+							})
+							.filter(envelope -> !envelope.documents().isEmpty())
+							.<SourceEvent> map(Added::new)
+							.toList();
 				}
 				case Changed(var changed) -> {
-					if (leftNode == previous) {
-						yield rightInput.stream()
-								.<Optional<SourceEvent>> map(right -> {
-									var merged = applyMerge(changed, right);
-									var anyMerge = !merged.documents().isEmpty();
-									var anyMerged = ledger.put(new Pair<>(changed.sender(), right.sender()), anyMerge);
-									if (anyMerged == null) {
-										var message = "The envelope combination with sender IDs '%s' and '%s' was unknown when it shouldn't have been."
-												.formatted(changed.sender(), right.sender());
-										throw new IllegalStateException(message);
-									}
-
-									if (anyMerged && anyMerge) // ✅ ⇝ ✅
-										return Optional.of(new Changed(merged));
-									else if (anyMerged) // ✅ ⇝ ❌
-										return Optional.of(new Removed(changed.sender()));
-									else if (anyMerge) // ❌ ⇝ ✅
-										return Optional.of(new Added(merged));
-									else // ❌ ⇝ ❌
-										return Optional.empty();
-								})
-								.flatMap(Optional::stream)
-								.toList();
-					} else if (rightNode == previous) {
-						yield leftInput.stream()
-								.<Optional<SourceEvent>> map(left -> {
-									var merged = applyMerge(left, changed);
-									var anyMerge = !merged.documents().isEmpty();
-									var anyMerged = ledger.put(new Pair<>(left.sender(), changed.sender()), anyMerge);
-									if (anyMerged == null) {
-										var message = "The envelope combination with sender IDs '%s' and '%s' was unknown when it shouldn't have been."
-												.formatted(left.sender(), changed.sender());
-										throw new IllegalStateException(message);
-									}
-
-									if (anyMerged && anyMerge) // ✅ ⇝ ✅
-										return Optional.of(new Changed(merged));
-									else if (anyMerged) // ✅ ⇝ ❌
-										return Optional.of(new Removed(changed.sender()));
-									else if (anyMerge) // ❌ ⇝ ✅
-										return Optional.of(new Added(merged));
-									else // ❌ ⇝ ❌
-										return Optional.empty();
-								})
-								.flatMap(Optional::stream)
-								.toList();
-					} else
-						throw new IllegalArgumentException("Unexpected merge parent node: " + previous);
+					if (!side.own().contains(changed.sender())) {
+						var message = "The envelope with sender ID '%s' was unknown when it shouldn't have been."
+								.formatted(changed.sender());
+						throw new IllegalStateException(message);
+					}
+					side.own().put(changed);
+
+					// the changed envelope needs to be merged with the envelopes it now matches
+					// as well as with those it merged with before (to potentially remove the merge results)
+					var previouslyMerged = ledger
+							.entrySet().stream()
+							.filter(entry -> entry.getValue() && side.ownSender(entry.getKey()).equals(changed.sender()))
+							.map(entry -> side.other().get(side.otherSender(entry.getKey())))
+							.flatMap(Optional::stream);
+					var toMerge = Stream
+							.concat(side.other().envelopesMatching(side.own().keysOf(changed)), previouslyMerged)
+							.distinct()
+							.toList();
+					yield toMerge.stream()
+							.<Optional<SourceEvent>> map(other -> {
+								var merged = applyMerge(side, changed, other);
+								var anyMerge = !merged.documents().isEmpty();
+								// for keyed merges, combinations that weren't merged before are unknown
+								var anyMerged = Boolean.TRUE.equals(ledger.put(side.pair(changed.sender(), other.sender()), anyMerge));
+
+								if (anyMerged && anyMerge) // ✅ ⇝ ✅
+									return Optional.of(new Changed(merged));
+								else if (anyMerged) // ✅ ⇝ ❌
+									return Optional.of(new Removed(merged.sender()));
+								else if (anyMerge) // ❌ ⇝ ✅
+									return Optional.of(new Added(merged));
+								else // ❌ ⇝ ❌
+									return Optional.empty();
+							})
+							.flatMap(Optional::stream)
+							.toList();
 				}
 				case Removed(var removed) -> {
-					if (leftNode == previous) {
-						var removals = ledger
-								.keySet().stream()
-								.filter(pair -> pair.left().equals(removed))
-								.map(pair -> pair.left().mergeFrom(pair.right()))
-								.<SourceEvent> map(Removed::new)
-								.toList();
-						ledger.entrySet().removeIf(entry -> entry.getKey().left().equals(removed));
-						yield removals;
-					} else if (rightNode == previous) {
-						var removals = ledger
-								.keySet().stream()
-								.filter(pair -> pair.right().equals(removed))
-								.map(pair -> pair.left().mergeFrom(pair.right()))
-								.<SourceEvent> map(Removed::new)
-								.toList();
-						ledger.entrySet().removeIf(entry -> entry.getKey().right().equals(removed));
-						yield removals;
-					} else
-						throw new IllegalArgumentException("Unexpected merge parent node: " + previous);
+					if (!side.own().contains(removed)) {
+						var message = "The envelope with sender ID '%s' was unknown when it shouldn't have been."
+								.formatted(removed);
+						throw new IllegalStateException(message);
+					}
+					side.own().remove(removed);
+					var pairs = ledger
+							.keySet().stream()
+							.filter(pair -> side.ownSender(pair).equals(removed))
+							.toList();
+					var removals = pairs.stream()
+							// only merges that lead to documents were passed on, so only those need to be removed
+							.filter(ledger::get)
+							.map(pair -> pair.left().mergeFrom(pair.right()))
+							.<SourceEvent> map(Removed::new)
+							.toList();
+					pairs.forEach(ledger::remove);
+					yield removals;
 				}
 			};
 		}
 
+		private Envelope<?> applyMerge(Side side, Envelope<?> own, Envelope<?> other) {
+			return side.isLeft() ? applyMerge(own, other) : applyMerge(other, own);
+		}
+
 		@SuppressWarnings({ "unchecked", "rawtypes" })
 		private Envelope<?> applyMerge(Envelope<?> left, Envelope<?> right) {
 			var mergedId = left.sender().mergeFrom(right.sender());
-			var mergedDocuments = crossProduct(left.documents(), right.documents())
-					.flatMap(innerPair -> ((Merger) merger).merge(innerPair.left(), innerPair.right()).stream())
+			var mergedDocuments = KeyedMerger
+					.mergeAll(merger, left.documents(), right.documents())
 					.toList();
 			return new SimpleEnvelope(mergedId, mergedDocuments);
 		}
 
 		public void updateMerger(Merger<?, ?, ?> merger) {
 			this.merger = merger;
+			// the key functions may have changed, so the inputs need to be reindexed
+			if (leftInput != null)
+				leftInput = new MergeInput(leftInput.envelopes(), KeyedMerger.leftKeyOf(merger));
+			if (rightInput != null)
+				rightInput = new MergeInput(rightInput.envelopes(), KeyedMerger.rightKeyOf(merger));
+		}
+
+		/**
+		 * Captures from which side of the merge an event came, so the update logic can be written once.
+		 */
+		private record Side(MergeInput own, MergeInput other, boolean isLeft) {
+
+			Pair<SenderId, SenderId> pair(SenderId ownSender, SenderId otherSender) {
+				return isLeft ? new Pair<>(ownSender, otherSender) : new Pair<>(otherSender, ownSender);
+			}
+
+			SenderId ownSender(Pair<SenderId, SenderId> pair) {
+				return isLeft ? pair.left() : pair.right();
+			}
+
+			SenderId otherSender(Pair<SenderId, SenderId> pair) {
+				return isLeft ? pair.right() : pair.left();
+			}
+
+		}
+
+		/**
+		 * The envelopes on one side of the merge. For keyed merges, they are indexed by their documents' keys.
+		 */
+		private static final class MergeInput {
+
+			private final Map<SenderId, Envelope<?>> envelopes;
+			private final Optional<Function<Object, Object>> key;
+			private final Map<Object, Set<SenderId>> sendersByKey;
+
+			MergeInput(List<Envelope<?>> envelopes, Optional<Function<Object, Object>> key) {
+				this.envelopes = new LinkedHashMap<>();
+				this.key = key;
+				this.sendersByKey = new HashMap<>();
+				envelopes.forEach(this::put);
+			}
+
+			List<Envelope<?>> envelopes() {
+				return List.copyOf(envelopes.values());
+			}
+
+			boolean contains(SenderId sender) {
+				return envelopes.containsKey(sender);
+			}
+
+			Optional<Envelope<?>> get(SenderId sender) {
+				return Optional.ofNullable(envelopes.get(sender));
+			}
+
+			void put(Envelope<?> envelope) {
+				remove(envelope.sender());
+				envelopes.put(envelope.sender(), envelope);
+				keysOf(envelope).ifPresent(keys -> keys.forEach(key -> sendersByKey
+						.computeIfAbsent(key, _ -> new HashSet<>())
+						.add(envelope.sender())));
+			}
+
+			void remove(SenderId sender) {
+				var removed = envelopes.remove(sender);
+				if (removed == null)
+					return;
+				keysOf(removed).ifPresent(keys -> keys.forEach(key -> {
+					var senders = sendersByKey.get(key);
+					senders.remove(sender);
+					if (senders.isEmpty())
+						sendersByKey.remove(key);
+				}));
+			}
+
+			/**
+			 * @return the keys of the envelope's documents (without {@code null}) or an empty {@code Optional}
+			 * 		if the merge isn't keyed
+			 */
+			Optional<Set<Object>> keysOf(Envelope<?> envelope) {
+				return key.map(keyFunction -> envelope
+						.documents().stream()
+						.map(keyFunction)
+						.filter(Objects::nonNull)
+						.collect(toSet()));
+			}
+
+			/**
+			 * @return the envelopes that contain documents with any of the given keys or all envelopes
+			 * 		if the merge isn't keyed
+			 */
+			Stream<Envelope<?>> envelopesMatching(Optional<Set<Object>> keys) {
+				return keys
+						.map(ks -> ks.stream()
+								.flatMap(k -> sendersByKey.getOrDefault(k, Set.of()).stream())
+								.distinct()
+								.<Envelope<?>> map(envelopes::get))
+						.orElseGet(() -> envelopes.values().stream());
+			}
+
 		}
 
 	}
@@ -3,35 +3,63 @@ package dev.nipafx.ginevra.execution;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 
+import dev.nipafx.ginevra.util.SHA256;
+
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.time.ZoneOffset.UTC;
+import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
+import static java.util.Comparator.comparingDouble;
+import static java.util.stream.Collectors.toUnmodifiableSet;
 
 class LiveServer {
 
 	private static final String REFRESH_SLUG = "/_ginevra/refresh";
+	private static final String REFRESH_PAGE_PARAMETER = "page=";
 	static final String REFRESH_JS_CODE = """
-			const eventSource = new EventSource("%s");
+			const eventSource = new EventSource("%s?%s" + encodeURIComponent(window.location.pathname));
 			eventSource.addEventListener('refresh', () => {
 				eventSource.close();
 				window.location.reload();
 			});
-			""".formatted(REFRESH_SLUG);
+			""".formatted(REFRESH_SLUG, REFRESH_PAGE_PARAMETER);
 
 	// only access within `synchronized (sseConnections)` block to prevent race conditions
 	// when reading from or writing to the list or when writing to the exchanges it contains
-	private final List<HttpExchange> sseConnections;
+	private final List<SseConnection> sseConnections;
 
 	LiveServer() {
 		this.sseConnections = new ArrayList<>();
 	}
 
-	void launch(int port, Function<Path, byte[]> fetchResponse) {
+	void launch(int port, Function<Path, Response> fetchResponse) {
 		try {
 			HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
 			server.createContext(REFRESH_SLUG, this::handleSseRefreshRequest);
@@ -46,20 +74,142 @@ class LiveServer {
 		}
 	}
 
-	private void handlePageRequest(HttpExchange exchange, Function<Path, byte[]> fetchResponse) throws IOException {
+	private void handlePageRequest(HttpExchange exchange, Function<Path, Response> fetchResponse) throws IOException {
 		try {
 			var path = Path.of(exchange.getRequestURI().toString());
 			var response = fetchResponse.apply(path);
 
-			exchange.sendResponseHeaders(200, response.length);
-			try (var out = exchange.getResponseBody()) {
-				out.write(response);
+			exchange.getResponseHeaders().set("Content-Type", contentTypeOf(exchange.getRequestURI().getPath()));
+			// the browser may cache everything but needs to check whether it's still up-to-date
+			exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+			switch (response) {
+				case BytesResponse bytes -> sendBytes(exchange, bytes);
+				case FileResponse(var file) -> sendFile(exchange, file);
 			}
 		} catch (Exception ex) {
 			// TODO: handle error
 			ex.printStackTrace();
-			exchange.sendResponseHeaders(500, 0);
+			exchange.sendResponseHeaders(500, -1);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static void sendBytes(HttpExchange exchange, BytesResponse response) throws IOException {
+		var encoding = response.bytes().length < ContentEncoding.MIN_LENGTH
+				? ContentEncoding.IDENTITY
+				: ContentEncoding.negotiate(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+		// each encoding is a different representation of the content, so it needs its own ETag
+		var etag = encoding == ContentEncoding.IDENTITY
+				? "\"%s\"".formatted(response.hash())
+				: "\"%s--%s\"".formatted(response.hash(), encoding.token());
+		exchange.getResponseHeaders().set("ETag", etag);
+		exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+		if (encoding != ContentEncoding.IDENTITY)
+			exchange.getResponseHeaders().set("Content-Encoding", encoding.token());
+		if (isNotModified(exchange, etag)) {
+			exchange.sendResponseHeaders(304, -1);
+			return;
 		}
+
+		var bytes = response.encoded(encoding);
+
+		// a length of 0 would mean that the response is chunked, -1 means there is no body
+		exchange.sendResponseHeaders(200, bytes.length == 0 ? -1 : bytes.length);
+		try (var out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private static void sendFile(HttpExchange exchange, Path file) throws IOException {
+		try (var channel = FileChannel.open(file, READ)) {
+			var size = channel.size();
+			var lastModified = Files.getLastModifiedTime(file).toInstant().atZone(UTC);
+			// the hash is memoized, so the file is only read for that once (until it changes)
+			var etag = "\"%s\"".formatted(SHA256.hash(file));
+			exchange.getResponseHeaders().set("ETag", etag);
+			exchange.getResponseHeaders().set("Last-Modified", RFC_1123_DATE_TIME.format(lastModified));
+			exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+			if (isNotModified(exchange, etag)) {
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+
+			var requestedRange = ByteRange.parse(exchange.getRequestHeaders().getFirst("Range"), size);
+			if (requestedRange.isPresent() && !requestedRange.get().isWithin(size)) {
+				exchange.getResponseHeaders().set("Content-Range", "bytes */%d".formatted(size));
+				exchange.sendResponseHeaders(416, -1);
+				return;
+			}
+
+			var range = requestedRange.orElse(new ByteRange(0, size - 1));
+			if (requestedRange.isPresent()) {
+				exchange.getResponseHeaders().set("Content-Range", "bytes %d-%d/%d".formatted(range.start(), range.end(), size));
+				exchange.sendResponseHeaders(206, range.length());
+			} else
+				exchange.sendResponseHeaders(200, range.length() == 0 ? -1 : range.length());
+			if (range.length() == 0)
+				return;
+
+			// instead of reading the file into memory, transfer it straight to the response
+			try (var out = Channels.newChannel(exchange.getResponseBody())) {
+				var position = range.start();
+				var remaining = range.length();
+				while (remaining > 0) {
+					var transferred = channel.transferTo(position, remaining, out);
+					// the file got shorter while it was being sent
+					if (transferred <= 0)
+						break;
+					position += transferred;
+					remaining -= transferred;
+				}
+			}
+		}
+	}
+
+	private static boolean isNotModified(HttpExchange exchange, String etag) {
+		var ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+		if (ifNoneMatch == null)
+			return false;
+
+		return Arrays
+				.stream(ifNoneMatch.split(","))
+				.map(String::strip)
+				// weak comparison is fine for `If-None-Match`
+				.map(tag -> tag.startsWith("W/") ? tag.substring(2) : tag)
+				.anyMatch(tag -> tag.equals(etag) || tag.equals("*"));
+	}
+
+	private static String contentTypeOf(String path) {
+		var fileName = path.substring(path.lastIndexOf('/') + 1);
+		var extensionStart = fileName.lastIndexOf('.');
+		// pages have no extension
+		if (extensionStart < 0)
+			return "text/html; charset=utf-8";
+
+		return switch (fileName.substring(extensionStart + 1).toLowerCase(Locale.ROOT)) {
+			case "html", "htm" -> "text/html; charset=utf-8";
+			case "css" -> "text/css; charset=utf-8";
+			case "js", "mjs" -> "text/javascript; charset=utf-8";
+			case "json" -> "application/json";
+			case "xml" -> "application/xml";
+			case "txt" -> "text/plain; charset=utf-8";
+			case "svg" -> "image/svg+xml";
+			case "png" -> "image/png";
+			case "jpg", "jpeg" -> "image/jpeg";
+			case "gif" -> "image/gif";
+			case "webp" -> "image/webp";
+			case "avif" -> "image/avif";
+			case "ico" -> "image/x-icon";
+			case "mp4" -> "video/mp4";
+			case "webm" -> "video/webm";
+			case "mp3" -> "audio/mpeg";
+			case "woff" -> "font/woff";
+			case "woff2" -> "font/woff2";
+			case "ttf" -> "font/ttf";
+			case "pdf" -> "application/pdf";
+			default -> "application/octet-stream";
+		};
 	}
 
 	private void handleSseRefreshRequest(HttpExchange connection) throws IOException {
@@ -69,16 +219,49 @@ class LiveServer {
 		connection.sendResponseHeaders(200, 0);
 		connection.getResponseBody().flush();
 
+		var page = pageOf(connection.getRequestURI());
+		synchronized (sseConnections) {
+			sseConnections.add(new SseConnection(connection, page));
+		}
+	}
+
+	private static Path pageOf(URI refreshRequest) {
+		var query = refreshRequest.getRawQuery();
+		if (query == null || !query.startsWith(REFRESH_PAGE_PARAMETER))
+			return Path.of("/");
+		return Path.of(URLDecoder.decode(query.substring(REFRESH_PAGE_PARAMETER.length()), UTF_8));
+	}
+
+	/**
+	 * @return the paths of the pages that are currently open (i.e. that have an SSE connection)
+	 */
+	Set<Path> observedPages() {
 		synchronized (sseConnections) {
-			sseConnections.add(connection);
+			return sseConnections.stream()
+					.map(SseConnection::page)
+					.collect(toUnmodifiableSet());
 		}
 	}
 
+	/**
+	 * Refreshes all pages.
+	 */
 	void refresh() {
+		refresh(_ -> true);
+	}
+
+	/**
+	 * Only refreshes the pages whose paths pass the given test.
+	 */
+	void refresh(Predicate<Path> refreshPage) {
 		synchronized (sseConnections) {
 			var connections = sseConnections.listIterator();
 			while (connections.hasNext()) {
-				var connection = connections.next();
+				var sseConnection = connections.next();
+				if (!refreshPage.test(sseConnection.page()))
+					continue;
+
+				var connection = sseConnection.exchange();
 				try {
 					// server-sent events apparently need a data field or browsers
 					// (at least Firefox and Chrome) don't process the event
@@ -99,4 +282,177 @@ class LiveServer {
 		}
 	}
 
+	private record SseConnection(HttpExchange exchange, Path page) { }
+
+	/**
+	 * The content to respond with - either as bytes or as a file that is streamed.
+	 * Either way, a hash of the content is used as ETag, so browsers only need to download it if it changed.
+	 */
+	sealed interface Response {
+
+		static BytesResponse of(byte[] bytes) {
+			return new BytesResponse(bytes, SHA256.hash(bytes));
+		}
+
+	}
+
+	/**
+	 * Content that's kept in memory - its encoded (i.e. compressed) variants are created on first use
+	 * and then kept for as long as the response is.
+	 */
+	record BytesResponse(byte[] bytes, String hash, ConcurrentMap<ContentEncoding, byte[]> encodings) implements Response {
+
+		BytesResponse(byte[] bytes, String hash) {
+			this(bytes, hash, new ConcurrentHashMap<>());
+		}
+
+		byte[] encoded(ContentEncoding encoding) {
+			if (encoding == ContentEncoding.IDENTITY)
+				return bytes;
+			return encodings.computeIfAbsent(encoding, _ -> encoding.encode(bytes));
+		}
+
+	}
+
+	// files are usually images, videos, fonts, etc. that are already compressed, so they're sent as they are
+	record FileResponse(Path file) implements Response { }
+
+	enum ContentEncoding {
+
+		IDENTITY("identity"),
+		GZIP("gzip"),
+		DEFLATE("deflate");
+
+		// compressing a few hundred bytes saves next to nothing
+		static final int MIN_LENGTH = 512;
+
+		private final String token;
+
+		ContentEncoding(String token) {
+			this.token = token;
+		}
+
+		String token() {
+			return token;
+		}
+
+		/**
+		 * Picks the encoding the client accepts (according to the value of its {@code Accept-Encoding} header)
+		 * with the highest quality value - if they're equal, gzip is preferred over deflate over identity.
+		 */
+		static ContentEncoding negotiate(String acceptEncoding) {
+			if (acceptEncoding == null || acceptEncoding.isBlank())
+				return IDENTITY;
+
+			var qualities = new EnumMap<ContentEncoding, Double>(ContentEncoding.class);
+			var wildcardQuality = Optional.<Double> empty();
+			for (String coding : acceptEncoding.split(",")) {
+				var parameters = coding.split(";");
+				var token = parameters[0].strip().toLowerCase(Locale.ROOT);
+				var quality = qualityOf(parameters);
+				if (token.equals("*"))
+					wildcardQuality = Optional.of(quality);
+				else
+					Arrays.stream(values())
+							.filter(encoding -> encoding.token.equals(token))
+							.forEach(encoding -> qualities.put(encoding, quality));
+			}
+
+			var finalWildcardQuality = wildcardQuality;
+			ToDoubleFunction<ContentEncoding> quality = encoding -> qualities.getOrDefault(
+					encoding,
+					// identity is acceptable unless it's explicitly excluded
+					finalWildcardQuality.orElse(encoding == IDENTITY ? 1.0 : 0.0));
+			return Stream
+					// on equal quality, `max` keeps the first encoding
+					.of(GZIP, DEFLATE, IDENTITY)
+					.filter(encoding -> quality.applyAsDouble(encoding) > 0)
+					.max(comparingDouble(quality))
+					// if even identity is excluded, there's nothing else to send
+					.orElse(IDENTITY);
+		}
+
+		private static double qualityOf(String[] parameters) {
+			for (int i = 1; i < parameters.length; i++) {
+				var parameter = parameters[i].strip();
+				if (parameter.startsWith("q="))
+					try {
+						return Double.parseDouble(parameter.substring(2));
+					} catch (NumberFormatException ex) {
+						return 0;
+					}
+			}
+			return 1;
+		}
+
+		byte[] encode(byte[] bytes) {
+			var encoded = new ByteArrayOutputStream(bytes.length / 4);
+			try (var out = switch (this) {
+				case IDENTITY -> encoded;
+				case GZIP -> new GZIPOutputStream(encoded);
+				case DEFLATE -> new DeflaterOutputStream(encoded);
+			}) {
+				out.write(bytes);
+			} catch (IOException ex) {
+				// writing to a byte array doesn't fail
+				throw new UncheckedIOException(ex);
+			}
+			return encoded.toByteArray();
+		}
+
+	}
+
+	/**
+	 * A range of bytes, both ends inclusive (like in the HTTP {@code Range} header).
+	 */
+	record ByteRange(long start, long end) {
+
+		/**
+		 * Parses the value of a {@code Range} header - multiple ranges would require a multipart response,
+		 * so they're ignored (as are syntactically invalid ranges), which means the entire content is sent.
+		 *
+		 * @return the requested range (may not be {@link #isWithin(long) within} the content)
+		 * 		or an empty {@code Optional} if the entire content should be sent
+		 */
+		static Optional<ByteRange> parse(String header, long size) {
+			if (header == null || !header.startsWith("bytes=") || header.contains(","))
+				return Optional.empty();
+
+			var range = header.substring("bytes=".length());
+			var separator = range.indexOf('-');
+			if (separator < 0)
+				return Optional.empty();
+
+			try {
+				var start = range.substring(0, separator).strip();
+				var end = range.substring(separator + 1).strip();
+				if (start.isEmpty()) {
+					// a suffix range like `-500` requests the last 500 bytes
+					var suffixLength = Long.parseLong(end);
+					return Optional.of(new ByteRange(Math.max(0, size - suffixLength), size - 1));
+				}
+
+				var from = Long.parseLong(start);
+				if (end.isEmpty())
+					return Optional.of(new ByteRange(from, size - 1));
+				var to = Long.parseLong(end);
+				// a range that ends before it starts is invalid
+				if (to < from)
+					return Optional.empty();
+				return Optional.of(new ByteRange(from, Math.min(to, size - 1)));
+			} catch (NumberFormatException ex) {
+				return Optional.empty();
+			}
+		}
+
+		boolean isWithin(long size) {
+			return start <= end && start < size;
+		}
+
+		long length() {
+			return end - start + 1;
+		}
+
+	}
+
 }
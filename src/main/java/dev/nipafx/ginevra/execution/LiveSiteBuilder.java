@@ -1,6 +1,8 @@
 package dev.nipafx.ginevra.execution;
 
 import dev.nipafx.ginevra.execution.LiveCodeUpdate.Changes;
+import dev.nipafx.ginevra.execution.LiveServer.FileResponse;
+import dev.nipafx.ginevra.execution.LiveServer.Response;
 import dev.nipafx.ginevra.execution.LiveNode.FilterLiveNode;
 import dev.nipafx.ginevra.execution.LiveNode.MergeLiveNode;
 import dev.nipafx.ginevra.execution.LiveNode.SourceLiveNode;
@@ -13,17 +15,24 @@ import dev.nipafx.ginevra.outline.FileDocument;
 import dev.nipafx.ginevra.outline.SourceEvent;
 import dev.nipafx.ginevra.render.Renderer;
 import dev.nipafx.ginevra.util.MultiplexingQueue;
+import dev.nipafx.ginevra.util.MultiplexingQueue.Backpressure;
 
-import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
+import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.mapping;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toUnmodifiableMap;
+import static java.util.stream.Collectors.toUnmodifiableSet;
 
 class LiveSiteBuilder {
 
@@ -32,6 +41,9 @@ class LiveSiteBuilder {
 	private final LiveServer server;
 	private final boolean pureTemplates;
 	private final MultiplexingQueue<SourcedEvent> sourceEvents;
+	private final WarmUp warmUp;
+	// slugs of pages that changed since the last refresh (only accessed by the thread handling source events)
+	private final Set<Path> changedSlugs;
 
 	private Optional<BuildState> buildState;
 
@@ -40,7 +52,12 @@ class LiveSiteBuilder {
 		this.renderer = renderer;
 		this.server = server;
 		this.pureTemplates = pureTemplates;
-		this.sourceEvents = new MultiplexingQueue<>(this::handleSourceEvent, "source-event-watcher");
+		// source events must not be lost (e.g. a dropped removal would leave stale documents in the store),
+		// so bursts that exceed the queue's capacity block the watchers until the events are handled
+		this.sourceEvents = new MultiplexingQueue<>("source-event-watcher", Backpressure.block());
+		this.sourceEvents.addBatchListener(this::handleSourceEvents);
+		this.warmUp = new WarmUp();
+		this.changedSlugs = new HashSet<>();
 		this.buildState = Optional.empty();
 	}
 
@@ -49,6 +66,7 @@ class LiveSiteBuilder {
 	public void build(NodeOutline outline, int port) {
 		if (buildState.isPresent())
 			throw new IllegalStateException("Can't build after a past build - trigger a rebuild instead");
+		// pages are rendered when they're first requested - warming up the entire site would delay that
 		buildState = Optional.of(buildSite(outline));
 
 		server.launch(port, this::serve);
@@ -56,7 +74,9 @@ class LiveSiteBuilder {
 
 	private BuildState buildSite(NodeOutline outline) {
 		var liveGraph = createLiveGraphAndFillStore(outline);
-		var templating = LiveTemplating.initializeTemplates(outline, store, renderer);
+		// filling the store doesn't count as a change
+		store.takeChanges();
+		var templating = LiveTemplating.initializeTemplates(outline, store, renderer, warmUp);
 		var staticResources = createResourceMap(outline);
 		return new BuildState(liveGraph, templating, staticResources);
 	}
@@ -117,9 +137,14 @@ class LiveSiteBuilder {
 
 	public void rebuild(NodeOutline outline, Changes changes) {
 		var state = buildState.orElseThrow(() -> new IllegalStateException("Can't rebuild before a build"));
+		// the warm-up reads the store, so it must be done before the store is updated
+		warmUp.cancel();
 
-		switch (determineRebuild(changes)) {
-			case NOTHING -> System.out.println("REBUILD NOTHING");
+		var changedSlugs = switch (determineRebuild(changes)) {
+			case NOTHING -> {
+				System.out.println("REBUILD NOTHING");
+				yield Set.<Path> of();
+			}
 			case COMPONENTS -> rebuildComponents(state, changes, outline);
 			case TEMPLATES -> rebuildTemplates(state, false, changes, outline);
 			case DOCUMENTS -> {
@@ -128,25 +153,42 @@ class LiveSiteBuilder {
 				// otherwise we need a full rebuild. The store knows which case we're in.
 				var onlyQueriesChanged = !store.updateToNewTypes(changes.documents());
 				if (onlyQueriesChanged)
-					rebuildTemplates(state, true, changes, outline);
+					yield rebuildTemplates(state, true, changes, outline);
 				else
-					rebuildAll(state, outline);
+					yield rebuildAll(state, outline);
 			}
 			case FULL -> rebuildAll(state, outline);
-		}
+		};
+		reportStaleClassLoaders();
 
-		server.refresh();
+		// a full rebuild replaces the build state
+		warmUpPages(buildState.orElseThrow(IllegalStateException::new), changedSlugs)
+				.thenRun(server::refresh);
 	}
 
-	private void rebuildComponents(BuildState state, Changes changes, NodeOutline outline) {
+	private static void reportStaleClassLoaders() {
+		// the loader that was just replaced is usually still reachable (until the next GC),
+		// but if more are, something holds on to instances or classes of old generations
+		var staleLoaders = ByteArrayClassLoader.staleLoaders();
+		if (staleLoaders > 1)
+			System.out.printf("%d replaced class loaders are still reachable%n", staleLoaders);
+	}
+
+	/**
+	 * @return the slugs of the pages that need to be resolved again
+	 */
+	private Set<Path> rebuildComponents(BuildState state, Changes changes, NodeOutline outline) {
 		System.out.println("REBUILD COMPONENTS");
 
 		state.graph().updateToNewClassLoader(outline);
 		store.updateToNewTypes(changes.documents());
-		state.templating().updateToNewClassLoader(outline);
+		return state.templating().updateToNewClassLoader(outline);
 	}
 
-	private void rebuildTemplates(BuildState state, boolean triggeredByQueryChange, Changes changes, NodeOutline outline) {
+	/**
+	 * @return the slugs of the pages that need to be resolved again
+	 */
+	private Set<Path> rebuildTemplates(BuildState state, boolean triggeredByQueryChange, Changes changes, NodeOutline outline) {
 		var messageDetail = changes.templates().isEmpty()
 				? ""
 				: changes.templates().stream()
@@ -155,20 +197,26 @@ class LiveSiteBuilder {
 		System.out.println("REBUILD TEMPLATES" + messageDetail);
 
 		state.graph().updateToNewClassLoader(outline);
+		var changedSlugs = new HashSet<Path>();
 		if (triggeredByQueryChange)
-			state.templating().queryDataChanged();
+			changedSlugs.addAll(state.templating().queryDataChanged());
 		else
 			store.updateToNewTypes(changes.documents());
-		state.templating().updateToNewClassLoaderWithChangedTemplates(outline, changes.templates());
+		changedSlugs.addAll(state.templating().updateToNewClassLoaderWithChangedTemplates(outline, changes.templates()));
+		return changedSlugs;
 	}
 
-	private void rebuildAll(BuildState state, NodeOutline outline) {
+	/**
+	 * @return the slugs of all pages (they all need to be resolved again)
+	 */
+	private Set<Path> rebuildAll(BuildState state, NodeOutline outline) {
 		System.out.println("REBUILD ALL");
 
 		state.stopObservation();
 		store.removeAllData();
 		var buildState = buildSite(outline);
 		this.buildState = Optional.of(buildState);
+		return buildState.templating().slugs();
 	}
 
 	private Rebuild determineRebuild(Changes changes) {
@@ -197,14 +245,51 @@ class LiveSiteBuilder {
 
 	// observe
 
-	private void handleSourceEvent(SourcedEvent event) {
-		processEventsRecursively(Optional.empty(), event.sourceNode(), List.of(event.event()));
-		buildState
+	private void handleSourceEvents(List<SourcedEvent> events) {
+		// the warm-up reads the store, so it must be done before the events are propagated to it
+		warmUp.cancel();
+		// a burst of events (e.g. from a `git checkout`) is pushed through the graph source by source
+		// with each sender's events collapsed into one and then the templates are updated once
+		events.stream()
+				.collect(groupingBy(SourcedEvent::sourceNode, LinkedHashMap::new, mapping(SourcedEvent::event, toList())))
+				.forEach((sourceNode, sourceEvents) -> SourceEvents
+						.coalesce(sourceEvents)
+						// propagate events one by one, so a failing event doesn't prevent the others from being processed
+						.forEach(event -> processEventRecursively(sourceNode, event)));
+		var changedPages = buildState
 				.orElseThrow(IllegalStateException::new)
 				.templating()
-				.queryDataChanged();
-		if (sourceEvents.isEmpty())
-			server.refresh();
+				.queryDataChanged(store.takeChanges());
+		changedSlugs.addAll(changedPages);
+		if (sourceEvents.isEmpty() && !changedSlugs.isEmpty()) {
+			var refreshedSlugs = Set.copyOf(changedSlugs);
+			changedSlugs.clear();
+			// static resources are served as they are, so pages that use them don't change
+			warmUpPages(buildState.orElseThrow(IllegalStateException::new), refreshedSlugs)
+					.thenRun(() -> server.refresh(path -> refreshedSlugs.contains(toSlug(path))));
+		}
+	}
+
+	private void processEventRecursively(LiveNode sourceNode, SourceEvent event) {
+		try {
+			processEventsRecursively(Optional.empty(), sourceNode, List.of(event));
+		} catch (RuntimeException ex) {
+			// TODO: handle error
+			ex.printStackTrace();
+		}
+	}
+
+	/**
+	 * Prepares the pages that browsers currently show before the (remaining) changed ones, so that the requests
+	 * that follow the refresh are served from the cache and other pages are ready when they're requested.
+	 * Pages that the change didn't affect are left as they are.
+	 */
+	private CompletableFuture<Void> warmUpPages(BuildState state, Set<Path> changedSlugs) {
+		var observedSlugs = server
+				.observedPages().stream()
+				.map(LiveSiteBuilder::toSlug)
+				.collect(toUnmodifiableSet());
+		return state.templating().warmUp(observedSlugs, changedSlugs);
 	}
 
 	private void processEventsRecursively(Optional<LiveNode> parent, LiveNode node, List<SourceEvent> events) {
@@ -243,30 +328,27 @@ class LiveSiteBuilder {
 
 	// serve
 
-	private byte[] serve(Path path) {
+	private Response serve(Path path) {
 		var state = buildState.orElseThrow(IllegalStateException::new);
 
-		// slugs have no leading slash but paths do, so remove it
-		var slug = Path.of("/").relativize(path);
+		var slug = toSlug(path);
 		if (state.staticResources().containsKey(slug))
 			return serveStaticResource(state.staticResources().get(slug));
 		else
 			return state.templating().serve(slug);
 	}
 
-	private byte[] serveStaticResource(String resourceName) {
+	private static Path toSlug(Path path) {
+		// slugs have no leading slash but paths do, so remove it
+		return Path.of("/").relativize(path);
+	}
+
+	private Response serveStaticResource(String resourceName) {
 		FileDocument fileDocument = store
 				.getResource(resourceName)
 				// this should've been checked during the initial build
 				.orElseThrow(IllegalStateException::new);
-
-		try {
-			return Files.readAllBytes(fileDocument.file());
-		} catch (IOException ex) {
-			// TODO: handle error
-			ex.printStackTrace();
-			return new byte[0];
-		}
+		return new FileResponse(fileDocument.file());
 	}
 
 	// misc
@@ -3,9 +3,14 @@ package dev.nipafx.ginevra.execution;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import dev.nipafx.ginevra.execution.ContentRegistry.Claim;
 import dev.nipafx.ginevra.outline.Document;
 import dev.nipafx.ginevra.outline.Envelope;
 import dev.nipafx.ginevra.outline.FileDocument;
+import dev.nipafx.ginevra.outline.Query;
 import dev.nipafx.ginevra.outline.Query.CollectionQuery;
 import dev.nipafx.ginevra.outline.Query.RootQuery;
 import dev.nipafx.ginevra.outline.SenderId;
@@ -13,37 +18,58 @@ import dev.nipafx.ginevra.outline.SourceEvent;
 import dev.nipafx.ginevra.outline.SourceEvent.Added;
 import dev.nipafx.ginevra.outline.SourceEvent.Changed;
 import dev.nipafx.ginevra.outline.SourceEvent.Removed;
+import dev.nipafx.ginevra.util.RecordTransfer;
 
 import java.io.IOException;
+import java.lang.reflect.RecordComponent;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-class LiveStore implements StoreFront {
+import static java.util.stream.Collectors.toUnmodifiableSet;
 
-	private static final ObjectMapper JSON = Json.LIVE_STORE_MAPPER;
+class LiveStore implements StoreFront {
 
-	private final Map<SenderId, JsonDocuments> root;
-	private final Map<String, Map<SenderId, JsonDocuments>> collections;
+	// root documents are merged field by field, which is easiest on their JSON representation,
+	// whereas collections hold the documents as they are (see `StoredDocuments`)
+	private final MergedRoot root;
+	private final Map<String, Map<SenderId, StoredDocuments>> collections;
+	// the `HtmlContent` that is excluded from the JSON documents (see `Json`)
+	private final ContentRegistry content;
+	// Jackson and the record transfer cache information per class, so each class loader generation gets its
+	// own mapper and transfer (otherwise, they would keep the classes of all previous generations reachable)
+	private ObjectMapper json;
+	private ObjectReader reader;
+	private RecordTransfer transfer;
 	// Resources can be managed as POJOs because:
 	//  * they're never passed back to user code and can thus not cause class loader issues
 	//  * they're only queried by name and thus don't benefit from transformation to/from JSON
-	// TODO: this causes a memory leak because old classes hold references to old class loaders - fix it
+	// Each resource is tagged with its class loader generation, so it can be migrated to the
+	// new generation's types when the loader is swapped (instead of retaining the old loader).
 	private final Map<String, DocumentWithId<? extends FileDocument>> resources;
 
 	private final StoreCache cache;
 	private final StoreQueryTracker tracker;
+	// the parts of the store that changed since the last call to `takeChanges`
+	private StoreFootprint changes;
 
 	public LiveStore() {
-		root = new HashMap<>();
+		root = new MergedRoot();
 		collections = new HashMap<>();
+		content = new ContentRegistry();
+		json = Json.createLiveStoreMapper();
+		reader = json.reader().withAttribute(ContentRegistry.class, content);
+		transfer = new RecordTransfer();
 		resources = new HashMap<>();
 		cache = new StoreCache();
 		tracker = new StoreQueryTracker();
+		changes = StoreFootprint.none();
 	}
 
 	void storeEnvelope(Optional<String> collection, Envelope<?> envelope) {
@@ -53,16 +79,22 @@ class LiveStore implements StoreFront {
 	}
 
 	private void storeEnvelope(String collection, Envelope<?> envelope) {
+		// replaces the sender's previous documents (if any), so a change doesn't need to remove them first
 		collections
 				.computeIfAbsent(collection, _ -> new HashMap<>())
-				.put(envelope.sender(), toJson(envelope));
-		cache.invalidateCollection(collection);
+				.put(envelope.sender(), new StoredDocuments(List.copyOf(envelope.documents())));
+		cache.patchCollection(collection, this::queryCollection);
+		changes = changes.and(StoreFootprint.ofCollection(collection));
 		envelope.documents().forEach(doc -> tracker.recordStore(doc.getClass()));
 	}
 
 	private void storeEnvelope(Envelope<?> envelope) {
-		root.put(envelope.sender(), toJson(envelope));
-		cache.invalidateRoot();
+		// replaces the sender's previous documents (if any), so a change doesn't need to remove them first
+		var claim = content.claim();
+		var changedFields = root.put(envelope.sender(), toJson(envelope, claim));
+		content.commit(Optional.empty(), envelope.sender(), claim);
+		cache.invalidateRootFields(changedFields);
+		changes = changes.and(StoreFootprint.ofRootFields(changedFields));
 		envelope.documents().forEach(doc -> tracker.recordStore(doc.getClass()));
 	}
 
@@ -75,10 +107,7 @@ class LiveStore implements StoreFront {
 	private void updateEnvelope(String collection, SourceEvent event) {
 		switch (event) {
 			case Added(var added) -> storeEnvelope(collection, added);
-			case Changed(var changed) -> {
-				removeEnvelope(collection, changed.sender());
-				storeEnvelope(collection, changed);
-			}
+			case Changed(var changed) -> storeEnvelope(collection, changed);
 			case Removed(var removedId) -> removeEnvelope(collection, removedId);
 		}
 	}
@@ -86,23 +115,22 @@ class LiveStore implements StoreFront {
 	private void updateEnvelope(SourceEvent event) {
 		switch (event) {
 			case Added(var added) -> storeEnvelope(added);
-			case Changed(var changed) -> {
-				removeEnvelope(changed.sender());
-				storeEnvelope(changed);
-			}
+			case Changed(var changed) -> storeEnvelope(changed);
 			case Removed(var removedId) -> removeEnvelope(removedId);
 		}
 	}
 
 	private void removeEnvelope(String collection, SenderId id) {
-		// TODO: remove HtmlContent that was associated with these documents
 		collections.get(collection).remove(id);
-		cache.invalidateCollection(collection);
+		cache.patchCollection(collection, this::queryCollection);
+		changes = changes.and(StoreFootprint.ofCollection(collection));
 	}
 
 	private void removeEnvelope(SenderId id) {
-		root.remove(id);
-		cache.invalidateRoot();
+		var changedFields = root.remove(id);
+		content.release(Optional.empty(), id);
+		cache.invalidateRootFields(changedFields);
+		changes = changes.and(StoreFootprint.ofRootFields(changedFields));
 	}
 
 	void storeResource(Function<Document, String> naming, Envelope<?> envelope) {
@@ -110,13 +138,15 @@ class LiveStore implements StoreFront {
 				.documents()
 				.forEach(doc -> {
 					var name = naming.apply(doc);
-					var previous = resources.put(name, new DocumentWithId<>(envelope.sender(), (Record & FileDocument) doc));
+					var previous = resources.put(name, DocumentWithId.of(envelope.sender(), (Record & FileDocument) doc));
 					if (previous != null) {
 						var message = "Resources must have unique names, but both %s and %s are named '%s'."
 								.formatted(previous.document(), doc, name);
 						throw new IllegalArgumentException(message);
 					}
 				});
+		cache.invalidateResources();
+		changes = changes.and(StoreFootprint.ofResources());
 	}
 
 	void updateResource(Function<Document, String> naming, SourceEvent event) {
@@ -132,6 +162,8 @@ class LiveStore implements StoreFront {
 
 	private void removeResource(SenderId id) {
 		resources.values().removeIf(doc -> doc.id().equals(id));
+		cache.invalidateResources();
+		changes = changes.and(StoreFootprint.ofResources());
 	}
 
 	@Override
@@ -144,14 +176,8 @@ class LiveStore implements StoreFront {
 	private <RESULT> RESULT queryRootField(String fieldName, Class<RESULT> resultType) {
 		tracker.recordQuery(resultType);
 		try {
-			// TODO: duplicate value detection (only one value should be defined for each key)
-			var rootNode = JSON.createObjectNode();
-			for (var docs : root.values())
-				for (JsonNode jsonNode : docs.documents())
-					JSON.readerForUpdating(rootNode).readValue(jsonNode);
-
-			return JSON.treeToValue(rootNode.get(fieldName), resultType);
-		} catch (IOException ex) {
+			return reader.treeToValue(root.get(fieldName), resultType);
+		} catch (JsonProcessingException ex) {
 			// TODO: handle error
 			throw new IllegalArgumentException(ex);
 		}
@@ -163,7 +189,7 @@ class LiveStore implements StoreFront {
 			throw new IllegalArgumentException("Unknown document collection: " + query.collection());
 
 		tracker.recordQuery(query.resultType());
-		return cache.queryCollection(query.collection(), query.resultType(), this::queryCollection);
+		return cache.queryCollection(query, this::queryCollection);
 	}
 
 	private <RESULT> Set<RESULT> queryCollection(String collectionName, Class<RESULT> resultType) {
@@ -171,9 +197,8 @@ class LiveStore implements StoreFront {
 		return collections
 				.get(collectionName)
 				.values().stream()
-				.flatMap(envelope -> envelope.documents().stream())
-				.map(documentNode -> fromJson(resultType, documentNode))
-				.collect(Collectors.toUnmodifiableSet());
+				.flatMap(envelope -> envelope.documentsAs(resultType, transfer).stream())
+				.collect(toUnmodifiableSet());
 	}
 
 	@Override
@@ -183,6 +208,38 @@ class LiveStore implements StoreFront {
 				.map(DocumentWithId::document);
 	}
 
+	@Override
+	public long generation() {
+		return cache.generation();
+	}
+
+	/**
+	 * @return the parts of the store the query reads
+	 */
+	public StoreFootprint footprintOf(Query<?> query) {
+		return switch (query) {
+			case CollectionQuery<?> collectionQuery -> StoreFootprint.ofCollection(collectionQuery.collection());
+			case RootQuery<?> rootQuery -> {
+				// a component may be a root field or a collection (and that can change when
+				// documents are added or removed), so consider each component to be both
+				var components = Stream
+						.of(rootQuery.resultType().getRecordComponents())
+						.map(RecordComponent::getName)
+						.collect(toUnmodifiableSet());
+				yield new StoreFootprint(components, components, false);
+			}
+		};
+	}
+
+	/**
+	 * @return the parts of the store that changed since this method was last called
+	 */
+	public StoreFootprint takeChanges() {
+		var changes = this.changes;
+		this.changes = StoreFootprint.none();
+		return changes;
+	}
+
 	/**
 	 * The return value can only be trusted if outside code established that no "deeper" changes
 	 * than the document types occurred, i.e. if arbitrary types changed, a removal of all stored
@@ -191,49 +248,150 @@ class LiveStore implements StoreFront {
 	 * @return whether the changes required a removal of all stored data
 	 */
 	public boolean updateToNewTypes(List<Class<? extends Document>> changedDocumentTypes) {
-		// the cache holds instances of the old types, so it needs to be invalidated
-		// regardless of whether the new types are actually different
+		// the cache and the converted documents are instances of the old types, so they need
+		// to be invalidated regardless of whether the new types are actually different
 		cache.invalidateAll();
+		collections
+				.values()
+				.forEach(envelopes -> envelopes.values().forEach(StoredDocuments::discardConversions));
+		createConvertersForNewTypes();
 
-		var removeAll = !tracker.onlyQueryTypes(changedDocumentTypes);
+		// if the stored types didn't change, their instances can be migrated to the new class loader's types
+		var removeAll = !tracker.onlyQueryTypes(changedDocumentTypes) || !migrateStaleDocuments();
 		if (removeAll)
 			removeAllData();
 		return removeAll;
 	}
 
+	/**
+	 * @return whether all documents and resources that are instances of stale types could be migrated
+	 * 		to the current types
+	 */
+	private boolean migrateStaleDocuments() {
+		// a transfer holds on to the types it was used for, so use one that is discarded afterward
+		var migration = new RecordTransfer();
+		try {
+			collections
+					.values()
+					.forEach(envelopes -> envelopes.replaceAll((_, documents) -> documents.migrate(migration)));
+			resources.replaceAll((_, resource) -> resource.migrate(migration));
+			return true;
+		} catch (IllegalArgumentException ex) {
+			// a type was removed or changed in a way that prevents migration
+			return false;
+		}
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the document's type is stale and can't be migrated to the current one
+	 */
+	private static <DOCUMENT extends Document> DOCUMENT migrate(DOCUMENT document, RecordTransfer migration) {
+		var staleType = document.getClass();
+		if (!ByteArrayClassLoader.isStale(ByteArrayClassLoader.generationOf(staleType)))
+			return document;
+
+		try {
+			var currentType = ByteArrayClassLoader.currentOrApp().loadClass(staleType.getName());
+			@SuppressWarnings("unchecked")
+			var migrated = (DOCUMENT) migration.transfer(document, currentType);
+			return migrated;
+		} catch (ClassNotFoundException ex) {
+			throw new IllegalArgumentException("The type '%s' no longer exists".formatted(staleType.getName()), ex);
+		}
+	}
+
+	private void createConvertersForNewTypes() {
+		json = Json.createLiveStoreMapper();
+		reader = json.reader().withAttribute(ContentRegistry.class, content);
+		transfer = new RecordTransfer();
+	}
+
 	public void removeAllData() {
 		root.clear();
 		collections.clear();
+		content.clear();
 		resources.clear();
 		cache.invalidateAll();
 		tracker.reset();
+		createConvertersForNewTypes();
+		changes = StoreFootprint.none();
 	}
 
 	@Override
 	public String toString() {
-		return "LiveStore{%s root entries, %s collections, %s resources}"
-				.formatted(root.size(), collections.size(), resources.size());
+		return "LiveStore{%s root entries, %s collections, %s resources, %s HTML contents}"
+				.formatted(root.size(), collections.size(), resources.size(), content.size());
 	}
 
-	private record DocumentWithId<DOCUMENT extends Record & Document>(SenderId id, DOCUMENT document) { }
+	/**
+	 * @param loaderGeneration the {@link ByteArrayClassLoader#generation() generation} of the loader
+	 * 		that loaded the document's type
+	 */
+	private record DocumentWithId<DOCUMENT extends Record & Document>(SenderId id, DOCUMENT document, long loaderGeneration) {
 
-	private static JsonDocuments toJson(Envelope<?> envelope) {
-		var documentsAsJson = envelope
+		static <DOCUMENT extends Record & Document> DocumentWithId<DOCUMENT> of(SenderId id, DOCUMENT document) {
+			return new DocumentWithId<>(id, document, ByteArrayClassLoader.generationOf(document.getClass()));
+		}
+
+		DocumentWithId<DOCUMENT> migrate(RecordTransfer migration) {
+			return ByteArrayClassLoader.isStale(loaderGeneration)
+					? of(id, LiveStore.migrate(document, migration))
+					: this;
+		}
+
+	}
+
+	private List<JsonNode> toJson(Envelope<?> envelope, Claim claim) {
+		var writer = json.writer().withAttribute(Claim.class, claim);
+		return envelope
 				.documents().stream()
-				.map(JSON::<JsonNode>valueToTree)
+				.map(document -> toJson(writer, document))
 				.toList();
-		return new JsonDocuments(documentsAsJson);
 	}
 
-	private static <TYPE> TYPE fromJson(Class<TYPE> type, JsonNode jsonNode) {
-		try {
-			return JSON.treeToValue(jsonNode, type);
-		} catch (JsonProcessingException ex) {
+	private JsonNode toJson(ObjectWriter writer, Document document) {
+		// like `ObjectMapper::valueToTree` but with the writer's attributes
+		try (var buffer = new TokenBuffer(json, false)) {
+			writer.writeValue(buffer, document);
+			return json.readTree(buffer.asParser());
+		} catch (IOException ex) {
 			// TODO: handle error
-			throw new IllegalStateException(ex);
+			throw new IllegalArgumentException(ex);
 		}
 	}
 
-	private record JsonDocuments(List<JsonNode> documents) { }
+	/**
+	 * A sender's documents and their conversions to the types they were queried as, so when a sender's
+	 * documents change, only those need to be converted again (instead of the entire collection).
+	 * Documents that are queried as their own type (of the current class loader generation) aren't
+	 * converted at all.
+	 */
+	private record StoredDocuments(List<? extends Document> documents, ConcurrentMap<Class<?>, List<?>> conversions) {
+
+		StoredDocuments(List<? extends Document> documents) {
+			this(documents, new ConcurrentHashMap<>());
+		}
+
+		@SuppressWarnings("unchecked")
+		<TYPE> List<TYPE> documentsAs(Class<TYPE> type, RecordTransfer transfer) {
+			return (List<TYPE>) conversions.computeIfAbsent(type, _ -> documents
+					.stream()
+					.map(document -> transfer.transfer(document, type))
+					.toList());
+		}
+
+		StoredDocuments migrate(RecordTransfer migration) {
+			var migrated = documents
+					.stream()
+					.map(document -> LiveStore.migrate(document, migration))
+					.toList();
+			return new StoredDocuments(migrated);
+		}
+
+		void discardConversions() {
+			conversions.clear();
+		}
+
+	}
 
 }
@@ -1,5 +1,8 @@
 package dev.nipafx.ginevra.execution;
 
+import dev.nipafx.ginevra.execution.LiveServer.BytesResponse;
+import dev.nipafx.ginevra.execution.LiveServer.FileResponse;
+import dev.nipafx.ginevra.execution.LiveServer.Response;
 import dev.nipafx.ginevra.execution.NodeOutline.Node.GenerateTemplateNode;
 import dev.nipafx.ginevra.html.GmlElement;
 import dev.nipafx.ginevra.html.HtmlDocument;
@@ -11,184 +14,444 @@ import dev.nipafx.ginevra.render.Renderer;
 import dev.nipafx.ginevra.render.ResourceFile;
 import dev.nipafx.ginevra.render.ResourceFile.CopiedFile;
 import dev.nipafx.ginevra.render.ResourceFile.CssFile;
-import dev.nipafx.ginevra.util.FileSystemUtils;
 
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Stream;
 
 import static dev.nipafx.ginevra.util.CollectionUtils.add;
-import static java.util.Comparator.comparing;
-import static java.util.stream.Collectors.toConcurrentMap;
+import static java.util.stream.Collectors.toCollection;
 import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
+import static java.util.stream.Collectors.toUnmodifiableSet;
 
 class LiveTemplating {
 
 	private final Map<String, TemplateCache> cache;
+	private final Routes routes;
+	private final WarmUp warmUp;
 	private final LiveStore store;
 	private final Renderer renderer;
 
-	private LiveTemplating(Map<String, TemplateCache> cache, LiveStore store, Renderer renderer) {
+	private LiveTemplating(Map<String, TemplateCache> cache, Routes routes, WarmUp warmUp, LiveStore store, Renderer renderer) {
 		this.store = store;
 		this.renderer = renderer;
 		this.cache = cache;
+		this.routes = routes;
+		this.warmUp = warmUp;
 	}
 
-	static LiveTemplating initializeTemplates(NodeOutline outline, LiveStore store, Renderer renderer) {
+	static LiveTemplating initializeTemplates(NodeOutline outline, LiveStore store, Renderer renderer, WarmUp warmUp) {
+		var routes = new Routes();
 		var cache = outline
 				.nodes(GenerateTemplateNode.class)
 				.map(node -> Map.entry(
 						node.id(),
-						TemplateCache.createFor(node.template(), store, renderer))
+						TemplateCache.createFor(node.template(), store, routes))
 				)
 				.collect(toMap(Entry::getKey, Entry::getValue));
-		return new LiveTemplating(cache, store, renderer);
+		return new LiveTemplating(cache, routes, warmUp, store, renderer);
 	}
 
-	void queryDataChanged() {
+	/**
+	 * @return the slugs of all pages (they all need to be resolved again)
+	 */
+	Set<Path> queryDataChanged() {
+		warmUp.cancel();
 		cache.values().forEach(TemplateCache::reset);
+		return slugs();
 	}
 
-	void updateToNewClassLoader(NodeOutline outline) {
-		outline
+	/**
+	 * Only invalidates the pages whose template queries or custom elements read data that changed.
+	 *
+	 * @return the slugs of the pages whose content changed (or that were added or removed)
+	 */
+	Set<Path> queryDataChanged(StoreFootprint changes) {
+		if (changes.isEmpty())
+			return Set.of();
+
+		warmUp.cancel();
+		return cache
+				.values().stream()
+				.flatMap(template -> template.updateToChanges(changes, store).stream())
+				.collect(toUnmodifiableSet());
+	}
+
+	/**
+	 * @return the slugs of all pages (they all need to be resolved again)
+	 */
+	Set<Path> updateToNewClassLoader(NodeOutline outline) {
+		warmUp.cancel();
+		return outline
 				.nodes(GenerateTemplateNode.class)
 				// replace the cache for that node with a fresh one (~> content will have to be rendered again)
-				.forEach(node -> cache.put(node.id(), TemplateCache.createFor(node.template(), store, renderer)));
+				.flatMap(node -> replaceTemplateCache(node).stream())
+				.collect(toUnmodifiableSet());
 	}
 
-	public void updateToNewClassLoaderWithChangedTemplates(NodeOutline outline, List<Class<? extends Template<?>>> changedTemplates) {
+	/**
+	 * @return the slugs of the pages of the changed templates (they need to be resolved again)
+	 */
+	public Set<Path> updateToNewClassLoaderWithChangedTemplates(NodeOutline outline, List<Class<? extends Template<?>>> changedTemplates) {
+		warmUp.cancel();
+		var changedSlugs = new HashSet<Path>();
 		outline
 				.nodes(GenerateTemplateNode.class)
 				.forEach(node -> {
 					var templateChanged = changedTemplates.stream().anyMatch(type -> type.isAssignableFrom(node.template().getClass()));
 					if (templateChanged)
 						// replace the cache for that node with a fresh one (~> content will have to be rendered again)
-						cache.put(node.id(), TemplateCache.createFor(node.template(), store, renderer));
+						changedSlugs.addAll(replaceTemplateCache(node));
 					else
 						// update the cache to the new but unchanged template instance (~> rendered content remains valid)
 						cache.get(node.id()).updateTemplate(node.template());
 				});
+		return changedSlugs;
+	}
+
+	private Set<Path> replaceTemplateCache(GenerateTemplateNode node) {
+		var replacement = TemplateCache.createFor(node.template(), store, routes);
+		// the new cache routes its pages to itself, so only pages the old one had on its own need to be removed
+		var previous = cache.put(node.id(), replacement);
+		if (previous != null)
+			routes.removeAll(previous);
+		return replacement.slugs();
 	}
 
-	byte[] serve(Path slug) {
+	/**
+	 * @return the slugs of all pages
+	 */
+	Set<Path> slugs() {
 		return cache
 				.values().stream()
-				.map(template -> template.readinessToServe(slug))
-				.filter(template -> template.readiness() != Readiness.NEVER)
-				.max(comparing(TemplateReadiness::readiness))
-				.flatMap(template -> template.cache().tryToServe(slug, store, renderer))
+				.flatMap(template -> template.slugs().stream())
+				.collect(toUnmodifiableSet());
+	}
+
+	/**
+	 * Resolves and renders the given pages (unless they already are) in the background - the prioritized ones
+	 * first. Slugs that no template serves are ignored. This cancels the previous warm-up.
+	 *
+	 * @return a future that completes when the prioritized pages are ready
+	 */
+	CompletableFuture<Void> warmUp(Set<Path> prioritizedSlugs, Set<Path> otherSlugs) {
+		var prioritized = warmUpTasks(prioritizedSlugs.stream());
+		var others = warmUpTasks(otherSlugs.stream().filter(slug -> !prioritizedSlugs.contains(slug)));
+		return warmUp.start(prioritized, others);
+	}
+
+	private List<Runnable> warmUpTasks(Stream<Path> slugs) {
+		return slugs
+				.flatMap(slug -> routes
+						.templateFor(slug)
+						.map(template -> warmUpTask(slug, template))
+						.stream())
+				.toList();
+	}
+
+	private Runnable warmUpTask(Path slug, TemplateCache template) {
+		return () -> {
+			try {
+				template.tryToServe(slug, store, renderer);
+			} catch (RuntimeException ex) {
+				// the error will be reported again when the page is requested
+				// TODO: handle error
+				ex.printStackTrace();
+			}
+		};
+	}
+
+	Response serve(Path slug) {
+		return routes
+				.serveAsset(slug)
+				.or(() -> routes
+						.templateFor(slug)
+						.flatMap(template -> template.tryToServe(slug, store, renderer)))
 				// TODO: better handling of missing content
-				.orElse("404".getBytes());
+				.orElseGet(() -> Response.of("404".getBytes()));
 	}
 
-	private record TemplateReadiness(Readiness readiness, TemplateCache cache) { }
-	private enum Readiness {
-		NEVER, RESET, RESOLVED, RENDERED
+	/**
+	 * Indexes which template serves which page and holds the assets (CSS and resource files) of all pages
+	 * (their names contain a hash of their content, so they can be shared), so a request can be answered
+	 * without asking each template whether it knows the slug.
+	 *
+	 * <p>Assets are kept for as long as a resolved page references them - once the last one is removed
+	 * (or reset or replaced), so are they. Otherwise each edit of a style would add another CSS file.</p>
+	 */
+	private static class Routes {
+
+		private final ConcurrentMap<Path, TemplateCache> templatesBySlug;
+		private final ConcurrentMap<Path, Response> assets;
+		// only access the references while synchronizing on this instance
+		private final Map<Path, Set<PageReference>> pagesByAsset;
+		private final Map<PageReference, Set<Path>> assetsByPage;
+
+		Routes() {
+			this.templatesBySlug = new ConcurrentHashMap<>();
+			this.assets = new ConcurrentHashMap<>();
+			this.pagesByAsset = new HashMap<>();
+			this.assetsByPage = new HashMap<>();
+		}
+
+		Optional<TemplateCache> templateFor(Path slug) {
+			return Optional.ofNullable(templatesBySlug.get(slug));
+		}
+
+		void route(Path slug, TemplateCache template) {
+			templatesBySlug.put(slug, template);
+		}
+
+		void unroute(Path slug, TemplateCache template) {
+			templatesBySlug.remove(slug, template);
+		}
+
+		void removeAll(TemplateCache template) {
+			templatesBySlug.values().removeIf(routedTemplate -> routedTemplate == template);
+			releaseAllAssets(template);
+		}
+
+		synchronized void addAssets(TemplateCache template, Path slug, Set<ResourceFile> resources) {
+			var page = new PageReference(template, slug);
+			// a page is only resolved again after it was removed, but just in case, release what it referenced before
+			releaseAssets(page);
+			resources.forEach(resourceFile -> {
+				var path = switch (resourceFile) {
+					case CopiedFile(var source, var target) -> {
+						assets.computeIfAbsent(target, _ -> new FileResponse(source));
+						yield target;
+					}
+					case CssFile(var file, var css) -> {
+						assets.computeIfAbsent(file, _ -> Response.of(css.getBytes()));
+						yield file;
+					}
+				};
+				pagesByAsset.computeIfAbsent(path, _ -> new HashSet<>()).add(page);
+				assetsByPage.computeIfAbsent(page, _ -> new HashSet<>()).add(path);
+			});
+		}
+
+		synchronized void releaseAssets(TemplateCache template, Path slug) {
+			releaseAssets(new PageReference(template, slug));
+		}
+
+		private synchronized void releaseAllAssets(TemplateCache template) {
+			assetsByPage
+					.keySet().stream()
+					.filter(page -> page.template() == template)
+					.toList()
+					.forEach(this::releaseAssets);
+		}
+
+		private void releaseAssets(PageReference page) {
+			var paths = assetsByPage.remove(page);
+			if (paths == null)
+				return;
+
+			paths.forEach(path -> {
+				var pages = pagesByAsset.get(path);
+				pages.remove(page);
+				if (pages.isEmpty()) {
+					pagesByAsset.remove(path);
+					assets.remove(path);
+				}
+			});
+		}
+
+		Optional<Response> serveAsset(Path path) {
+			return Optional.ofNullable(assets.get(path));
+		}
+
 	}
 
+	/**
+	 * Pages are composed eagerly (that's needed to know which slugs the template serves) but only resolved and
+	 * rendered when they're requested or warmed up in the background (which, after a change, finishes all pages
+	 * that it affected). Serving a page doesn't lock the cache (only changing its state does), so requests
+	 * don't wait for one another.
+	 */
 	private static class TemplateCache {
 
-		private Template<?> template;
-		private TemplateState state;
+		private final Routes routes;
+		private volatile Template<?> template;
+		private volatile TemplateState state;
 
-		private TemplateCache(Template<?> template, TemplateState state) {
+		private TemplateCache(Template<?> template, Routes routes) {
 			this.template = template;
-			this.state = state;
+			this.routes = routes;
+			this.state = new Reset(Set.of());
+		}
+
+		static TemplateCache createFor(Template<?> template, LiveStore store, Routes routes) {
+			var cache = new TemplateCache(template, routes);
+			cache.templated(store);
+			return cache;
 		}
 
-		static <DOCUMENT extends Record & Document> TemplateCache createFor(
-				Template<DOCUMENT> template, StoreFront store, Renderer renderer) {
-			return new TemplateCache(template, applyTemplate(template, store, renderer));
+		Set<Path> slugs() {
+			return switch (state) {
+				case Reset(var paths) -> paths;
+				case Templated templated -> Set.copyOf(templated.content().keySet());
+			};
 		}
 
-		void reset() {
+		synchronized void reset() {
 			state = switch (state) {
 				case Reset reset -> reset;
-				case Templated(var content) -> new Reset(Set.copyOf(content.keySet()));
+				case Templated templated -> {
+					var slugs = Set.copyOf(templated.content().keySet());
+					slugs.forEach(slug -> routes.releaseAssets(this, slug));
+					yield new Reset(slugs);
+				}
 			};
 		}
 
-		TemplateReadiness readinessToServe(Path slug) {
-			var readiness =  switch (state) {
-				case Reset(var paths) -> paths.contains(slug) ? Readiness.RESET : Readiness.NEVER;
-				case Templated(var content) -> switch (content.get(slug)) {
-					case null -> Readiness.NEVER;
-					case ResolvedDoc _, ResolvedFile _ -> Readiness.RESOLVED;
-					case Rendered _ -> Readiness.RENDERED;
-				};
-			};
-			return new TemplateReadiness(readiness, this);
+		/**
+		 * Composes the pages of documents that are new or whose pages read changed data again (but doesn't
+		 * resolve them, yet) and removes the pages of documents that the template's query no longer returns.
+		 *
+		 * @return the slugs of the pages that changed
+		 */
+		synchronized Set<Path> updateToChanges(StoreFootprint changes, LiveStore store) {
+			if (state instanceof Reset(var paths))
+				// all pages will be templated again anyway
+				return paths;
+			var templated = (Templated) state;
+
+			var changedSlugs = new HashSet<Path>();
+			var outdatedDocuments = templated.documentsOfPagesThatRead(changes);
+			if (templated.queryFootprint().overlaps(changes)) {
+				// thanks to the store's caches, querying again is cheap and so is comparing the documents
+				// (which only finds changes to the documents themselves, hence the footprints of their pages)
+				var documents = queryDocuments(template, store).collect(toSet());
+				var removedDocuments = templated.documents().stream()
+						.filter(document -> !documents.contains(document))
+						.toList();
+				removedDocuments.forEach(document -> changedSlugs.addAll(removePages(document, templated)));
+				outdatedDocuments.removeAll(removedDocuments);
+				documents.stream()
+						.filter(document -> !templated.documents().contains(document))
+						.forEach(outdatedDocuments::add);
+			}
+
+			changedSlugs.addAll(composePages(outdatedDocuments, templated));
+			return changedSlugs;
+		}
+
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		private Set<Path> composePages(Collection<?> documents, Templated templated) {
+			var changedSlugs = new HashSet<Path>();
+			for (Object document : documents) {
+				changedSlugs.addAll(removePages(document, templated));
+				var pages = ((Template) template).composeMany((Record & Document) document);
+				((Stream<HtmlPage>) pages).forEach(page -> {
+					if (templated.addComposedPage(document, page)) {
+						routes.route(page.slug(), this);
+						changedSlugs.add(page.slug());
+					}
+				});
+			}
+			return changedSlugs;
+		}
+
+		private Set<Path> removePages(Object document, Templated templated) {
+			var slugs = templated.removePages(document);
+			slugs.forEach(slug -> {
+				routes.unroute(slug, this);
+				routes.releaseAssets(this, slug);
+			});
+			return slugs;
+		}
+
+		Optional<Response> tryToServe(Path slug, LiveStore store, Renderer renderer) {
+			return serve(slug, templated(store), store, renderer);
+		}
+
+		private Templated templated(LiveStore store) {
+			// the state is only locked when the template needs to be applied (again)
+			if (state instanceof Templated templated)
+				return templated;
+
+			synchronized (this) {
+				if (state instanceof Reset(var paths)) {
+					var templated = new Templated(store.footprintOf(template.query()));
+					composePages(queryDocuments(template, store).toList(), templated);
+					paths.stream()
+							.filter(path -> !templated.content().containsKey(path))
+							.forEach(path -> routes.unroute(path, this));
+					state = templated;
+				}
+				return (Templated) state;
+			}
 		}
 
-		// this method changes internal state but may be called from multiple threads
-		// (if there are multiple clients observing the site) ~> synchronize to prevent races
-		synchronized Optional<byte[]> tryToServe(Path slug, StoreFront store, Renderer renderer) {
-			if (state instanceof Reset)
-				state = applyTemplate(template, store, renderer);
-			if (state instanceof Templated(var content) && content.containsKey(slug))
-				return Optional.of(renderContent(slug, renderer));
+		private Optional<Response> serve(Path slug, Templated templated, LiveStore store, Renderer renderer) {
+			if (templated.content().get(slug) instanceof Composed composed)
+				resolvePage(slug, composed, templated, store, renderer);
 
-			return Optional.empty();
+			// rendering within `computeIfPresent` makes sure each page is only rendered once
+			var content = templated.content().computeIfPresent(slug, (_, resolved) -> switch (resolved) {
+				case Composed composed -> composed;
+				case ResolvedDoc(var doc, _, var resources) -> renderDocument(renderer, doc, resources);
+				case Rendered rendered -> rendered;
+			});
+
+			return switch (content) {
+				case null -> Optional.empty();
+				case Rendered(var response) -> Optional.of(response);
+				// the page was composed again (or the template reset) while it was resolved ~> start over
+				case Composed _ -> tryToServe(slug, store, renderer);
+				case ResolvedDoc _ -> throw new IllegalStateException("Content should've just been rendered");
+			};
 		}
 
 		@SuppressWarnings({ "rawtypes", "unchecked" })
-		private static <DOCUMENT extends Record & Document> TemplateState applyTemplate(Template<DOCUMENT> template, StoreFront store, Renderer renderer) {
-			Stream<DOCUMENT> queryResults = switch (template.query()) {
+		private static <DOCUMENT extends Record & Document> Stream<DOCUMENT> queryDocuments(Template<DOCUMENT> template, LiveStore store) {
+			return switch (template.query()) {
 				case Query.CollectionQuery collectionQuery -> store
-						.<DOCUMENT> query(collectionQuery).stream()
-						.filter(result -> collectionQuery.filter().test(result));
+						.<DOCUMENT> query(collectionQuery).stream();
 				case Query.RootQuery rootQuery -> Stream
 						.of((DOCUMENT) store.query(rootQuery));
 			};
+		}
 
-			var resolved = queryResults
-					.flatMap(template::composeMany)
-					.flatMap(htmlPage -> createContent(htmlPage, template, renderer))
-					.collect(toConcurrentMap(Entry::getKey, Entry::getValue, (content, _) -> content));
-			return new Templated(resolved);
-		}
-
-		private static <DOCUMENT extends Record & Document> Stream<Entry<Path, Content>> createContent(
-				HtmlPage htmlPage, Template<DOCUMENT> template, Renderer renderer) {
-			var htmlDoc = renderer.resolveToDocument(htmlPage.html(), template);
-			return Stream.concat(
-					Stream.of(Map.entry(
-							htmlPage.slug(),
-							new ResolvedDoc(htmlDoc.document(), htmlPage.slug(), htmlDoc.referencedResources()))),
-					htmlDoc
-							.referencedResources().stream()
-							.map(resourceFile -> switch (resourceFile) {
-								case CopiedFile(var source, var target) -> Map.entry(target, new ResolvedFile(source));
-								case CssFile(var file, var css) -> Map.entry(file, new Rendered(css.getBytes()));
-							}));
-		}
-
-		private byte[] renderContent(Path slug, Renderer renderer) {
-			if (!(state instanceof Templated(var templated)))
-				throw new IllegalStateException("Rendering can only be called in a templated state");
-
-			templated.computeIfPresent(slug, (_, content) -> switch (content) {
-				case ResolvedDoc(var doc, _, var resources) -> renderDocument(renderer, doc, resources);
-				case ResolvedFile(var file) -> new Rendered(FileSystemUtils.readAllBytes(file));
-				case Rendered rd -> rd;
-			});
-
-			return switch (templated.get(slug)) {
-				case Rendered(var bytes) -> bytes;
-				case ResolvedDoc _, ResolvedFile _ -> throw new IllegalStateException("Content should've just been rendered");
-				case null -> throw new IllegalStateException("Rendering can only be called when it is confirmed that the path belongs to the correct document");
-			};
+		private void resolvePage(Path slug, Composed composed, Templated templated, LiveStore store, Renderer renderer) {
+			// resolving is the expensive part, so it happens without holding the lock
+			var htmlDoc = renderer.resolveToDocument(composed.page().html(), template);
+			var footprint = htmlDoc
+					.queries().stream()
+					.map(store::footprintOf)
+					.reduce(StoreFootprint.none(), StoreFootprint::and);
+			if (htmlDoc.referencedResources().stream().anyMatch(CopiedFile.class::isInstance))
+				footprint = footprint.and(StoreFootprint.ofResources());
+
+			var resolvedDoc = new ResolvedDoc(htmlDoc.document(), slug, htmlDoc.referencedResources());
+			synchronized (this) {
+				// if the page was composed again, removed, or resolved by another thread, the result is dropped
+				// (and its assets aren't added, so they don't outlive it); otherwise add the assets before
+				// the page, so they're available once it can be served
+				if (state == templated && composed.equals(templated.content().get(slug))) {
+					routes.addAssets(this, slug, htmlDoc.referencedResources());
+					templated.addResolvedPage(slug, composed, resolvedDoc, footprint);
+				}
+			}
 		}
 
 		private Rendered renderDocument(Renderer renderer, HtmlDocument document, Set<ResourceFile> referencedResources) {
 			var injectedDocument = injectSseRequest(document);
 			var page = renderer.renderAsHtml(injectedDocument, referencedResources);
-			return new Rendered(page.html().getBytes());
+			return new Rendered(Response.of(page.html().getBytes()));
 		}
 
 		private static HtmlDocument injectSseRequest(HtmlDocument document) {
@@ -206,11 +469,80 @@ class LiveTemplating {
 
 	private sealed interface TemplateState { }
 	private record Reset(Set<Path> paths) implements TemplateState { }
-	private record Templated(ConcurrentMap<Path, Content> templated) implements TemplateState { }
+
+	/**
+	 * The template's content by slug plus, for each page, the document it was composed from and the parts of
+	 * the store its custom elements read, so changes to the store only need to invalidate the affected pages.
+	 * Only access the bookkeeping (i.e. everything but {@link #content()}) while holding the template's lock.
+	 */
+	private record Templated(
+			StoreFootprint queryFootprint,
+			ConcurrentMap<Path, Content> content,
+			Map<Path, PageSource> pages,
+			Map<Object, Set<Path>> slugsByDocument) implements TemplateState {
+
+		Templated(StoreFootprint queryFootprint) {
+			this(queryFootprint, new ConcurrentHashMap<>(), new HashMap<>(), new HashMap<>());
+		}
+
+		Set<Object> documents() {
+			return slugsByDocument.keySet();
+		}
+
+		Set<Object> documentsOfPagesThatRead(StoreFootprint changes) {
+			return pages
+					.values().stream()
+					.filter(page -> page.footprint().overlaps(changes))
+					.map(PageSource::document)
+					.collect(toCollection(HashSet::new));
+		}
+
+		/**
+		 * @return whether the page was added (it isn't if another document already has a page with the same slug)
+		 */
+		boolean addComposedPage(Object document, HtmlPage page) {
+			if (content.putIfAbsent(page.slug(), new Composed(document, page)) != null)
+				return false;
+			// the page's footprint is only known once it's resolved
+			pages.put(page.slug(), new PageSource(document, StoreFootprint.none()));
+			slugsByDocument.computeIfAbsent(document, _ -> new HashSet<>()).add(page.slug());
+			return true;
+		}
+
+		/**
+		 * Replaces the composed page with the resolved one (if it wasn't replaced or removed in the meantime).
+		 */
+		void addResolvedPage(Path slug, Composed composed, ResolvedDoc resolvedDoc, StoreFootprint footprint) {
+			if (content.replace(slug, composed, resolvedDoc))
+				pages.put(slug, new PageSource(composed.document(), footprint));
+		}
+
+		/**
+		 * Removes the document's pages (the template releases their assets, see {@link Routes}).
+		 *
+		 * @return the slugs of the removed pages
+		 */
+		Set<Path> removePages(Object document) {
+			var slugs = slugsByDocument.remove(document);
+			if (slugs == null)
+				return Set.of();
+
+			slugs.forEach(slug -> {
+				content.remove(slug);
+				pages.remove(slug);
+			});
+			return slugs;
+		}
+
+	}
+
+	private record PageSource(Object document, StoreFootprint footprint) { }
+	private record PageReference(TemplateCache template, Path slug) { }
 
 	private sealed interface Content { }
+	private record Composed(Object document, HtmlPage page) implements Content { }
 	private record ResolvedDoc(HtmlDocument document, Path documentSlug, Set<ResourceFile> referencedResources) implements Content { }
-	private record ResolvedFile(Path file) implements Content { }
-	private record Rendered(byte[] bytes) implements Content { }
+	// the response keeps the compressed variants of the page, so they're only created once per rendering
+	private record Rendered(BytesResponse response) implements Content { }
 
 }
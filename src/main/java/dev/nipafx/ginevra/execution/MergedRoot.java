@@ -0,0 +1,153 @@
+package dev.nipafx.ginevra.execution;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dev.nipafx.ginevra.outline.SenderId;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * The merged view of all root documents as JSON, which is updated sender by sender, so a change
+ * only needs to re-merge the root fields that the sender defined before or defines after it.
+ *
+ * <p>Like a JSON update, nested objects are merged key by key but only one value can be defined
+ * for each key - a second value is rejected as a duplicate unless one of them is undefined, i.e.
+ * {@code null} or an empty array or object (which is what absent optionals and empty collections
+ * are serialized to). The {@link OneTimeStore} applies the same rule.</p>
+ */
+class MergedRoot {
+
+	private final Map<SenderId, Map<String, JsonNode>> fieldsBySender;
+	private final Map<String, Map<SenderId, JsonNode>> contributionsByField;
+	private final Map<String, JsonNode> mergedFields;
+
+	MergedRoot() {
+		fieldsBySender = new HashMap<>();
+		contributionsByField = new HashMap<>();
+		mergedFields = new HashMap<>();
+	}
+
+	/**
+	 * Replaces the documents previously stored for the sender (if any) with the given ones.
+	 *
+	 * @return the names of the root fields whose merged values changed
+	 * @throws IllegalArgumentException if the documents define a value that was already defined
+	 * 		(in which case the root remains unchanged)
+	 */
+	public Set<String> put(SenderId sender, List<JsonNode> documents) {
+		var fields = new LinkedHashMap<String, JsonNode>();
+		for (JsonNode document : documents)
+			document.fields().forEachRemaining(field -> fields.merge(
+					field.getKey(),
+					field.getValue(),
+					(existing, addition) -> merge(field.getKey(), existing, addition, sender::toString)));
+		return update(sender, fields);
+	}
+
+	/**
+	 * @return the names of the root fields whose merged values changed
+	 */
+	public Set<String> remove(SenderId sender) {
+		return update(sender, Map.of());
+	}
+
+	/**
+	 * @return the merged value of the field or {@code null} if no document defines it
+	 */
+	public JsonNode get(String fieldName) {
+		return mergedFields.get(fieldName);
+	}
+
+	public int size() {
+		return fieldsBySender.size();
+	}
+
+	public void clear() {
+		fieldsBySender.clear();
+		contributionsByField.clear();
+		mergedFields.clear();
+	}
+
+	private Set<String> update(SenderId sender, Map<String, JsonNode> newFields) {
+		var oldFields = fieldsBySender.getOrDefault(sender, Map.of());
+		var affectedFields = new HashSet<>(oldFields.keySet());
+		affectedFields.addAll(newFields.keySet());
+
+		// merge all affected fields before changing anything, so a duplicate leaves the root unchanged
+		var newContributions = new HashMap<String, Map<SenderId, JsonNode>>();
+		var newMergedFields = new HashMap<String, JsonNode>();
+		for (String field : affectedFields) {
+			var contributions = new LinkedHashMap<>(contributionsByField.getOrDefault(field, Map.of()));
+			contributions.remove(sender);
+			if (newFields.containsKey(field))
+				contributions.put(sender, newFields.get(field));
+			newContributions.put(field, contributions);
+			newMergedFields.put(field, merge(field, contributions));
+		}
+
+		if (newFields.isEmpty())
+			fieldsBySender.remove(sender);
+		else
+			fieldsBySender.put(sender, Map.copyOf(newFields));
+
+		var changedFields = new HashSet<String>();
+		for (String field : affectedFields) {
+			var contributions = newContributions.get(field);
+			var mergedField = newMergedFields.get(field);
+			if (contributions.isEmpty())
+				contributionsByField.remove(field);
+			else
+				contributionsByField.put(field, contributions);
+
+			var previous = mergedField == null ? mergedFields.remove(field) : mergedFields.put(field, mergedField);
+			if (!Objects.equals(previous, mergedField))
+				changedFields.add(field);
+		}
+		return changedFields;
+	}
+
+	private static JsonNode merge(String field, Map<SenderId, JsonNode> contributions) {
+		JsonNode merged = null;
+		for (JsonNode contribution : contributions.values())
+			merged = merge(field, merged, contribution, () -> contributions.keySet().stream()
+					.map(SenderId::toString)
+					.collect(joining(", ")));
+		return merged;
+	}
+
+	// the senders are only needed for the error message, so they're only described when that's created
+	private static JsonNode merge(String path, JsonNode existing, JsonNode addition, Supplier<String> senders) {
+		if (isUndefined(existing))
+			return addition;
+		if (isUndefined(addition))
+			return existing;
+
+		if (existing instanceof ObjectNode existingObject && addition instanceof ObjectNode additionObject) {
+			var merged = JsonNodeFactory.instance.objectNode();
+			merged.setAll(existingObject);
+			additionObject.fields().forEachRemaining(field -> merged.set(
+					field.getKey(),
+					merge(path + "." + field.getKey(), merged.get(field.getKey()), field.getValue(), senders)));
+			return merged;
+		}
+
+		var message = "Only one value can be defined for each root key, but '%s' is defined more than once (by %s)."
+				.formatted(path, senders.get());
+		throw new IllegalArgumentException(message);
+	}
+
+	private static boolean isUndefined(JsonNode node) {
+		return node == null || node.isNull() || (node.isContainerNode() && node.isEmpty());
+	}
+
+}
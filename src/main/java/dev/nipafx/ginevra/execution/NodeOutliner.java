@@ -206,12 +206,21 @@ public class NodeOutliner implements Outliner {
 	Step<DOCUMENT_OUT> merge(Step<DOCUMENT_IN_1> left, Step<DOCUMENT_IN_2> right, Merger<DOCUMENT_IN_1, DOCUMENT_IN_2, DOCUMENT_OUT> merger) {
 		var leftNode = getNodeFromStep(left);
 		var rightNode = getNodeFromStep(right);
-		var mergeNode = new MergeNode(nextId(), leftNode, rightNode, merger);
+		var mergeNode = createNewNode(() -> new MergeNode(nextId(), leftNode, rightNode, merger));
 		appendNode(leftNode, mergeNode);
 		appendNode(rightNode, mergeNode);
 		return new NodeStep<>(this, mergeNode);
 	}
 
+	@Override
+	public <DOCUMENT_IN_1 extends Record & Document, DOCUMENT_IN_2 extends Record & Document, DOCUMENT_OUT extends Record & Document, KEY>
+	Step<DOCUMENT_OUT> merge(
+			Step<DOCUMENT_IN_1> left, Step<DOCUMENT_IN_2> right,
+			Function<DOCUMENT_IN_1, KEY> leftKey, Function<DOCUMENT_IN_2, KEY> rightKey,
+			Merger<DOCUMENT_IN_1, DOCUMENT_IN_2, DOCUMENT_OUT> merger) {
+		return merge(left, right, new KeyedMerger<>(leftKey, rightKey, merger));
+	}
+
 	// store
 
 	@Override
@@ -316,6 +325,11 @@ public class NodeOutliner implements Outliner {
 			return outliner.merge(this, other, merger);
 		}
 
+		@Override
+		public <OTHER_DOCUMENT extends Record & Document, DOCUMENT_OUT1 extends Record & Document, KEY> Step<DOCUMENT_OUT1> merge(Step<OTHER_DOCUMENT> other, Function<DOCUMENT, KEY> key, Function<OTHER_DOCUMENT, KEY> otherKey, Merger<DOCUMENT, OTHER_DOCUMENT, DOCUMENT_OUT1> merger) {
+			return outliner.merge(this, other, key, otherKey, merger);
+		}
+
 		@Override
 		public void store(String collection) {
 			outliner.store(this, collection);
@@ -12,21 +12,22 @@ import dev.nipafx.ginevra.execution.NodeOutline.Node.TransformNode;
 import dev.nipafx.ginevra.execution.SiteFileSystem.TemplatedFile;
 import dev.nipafx.ginevra.outline.Document;
 import dev.nipafx.ginevra.outline.FileDocument;
-import dev.nipafx.ginevra.outline.Merger;
 import dev.nipafx.ginevra.outline.Query.CollectionQuery;
 import dev.nipafx.ginevra.outline.Query.RootQuery;
 import dev.nipafx.ginevra.outline.Template;
 import dev.nipafx.ginevra.render.Renderer;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
-import static dev.nipafx.ginevra.util.StreamUtils.crossProduct;
 import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.toUnmodifiableMap;
 
@@ -35,14 +36,16 @@ class OneTimeSiteBuilder {
 	private final OneTimeStore store;
 	private final Renderer renderer;
 	private final SiteFileSystem siteFileSystem;
+	private final boolean parallel;
 
 	private NodeOutline outline;
 	private Map<MergeNode, MergeCache> mergeCaches;
 
-	OneTimeSiteBuilder(OneTimeStore store, Renderer renderer, SiteFileSystem siteFileSystem) {
+	OneTimeSiteBuilder(OneTimeStore store, Renderer renderer, SiteFileSystem siteFileSystem, boolean parallel) {
 		this.store = store;
 		this.renderer = renderer;
 		this.siteFileSystem = siteFileSystem;
+		this.parallel = parallel;
 	}
 
 	public void build(NodeOutline outline) throws InterruptedException {
@@ -60,20 +63,53 @@ class OneTimeSiteBuilder {
 	}
 
 	private void fillStore() {
-		outline
-				.nodes(SourceNode.class)
-				.forEach(this::runFromSource);
+		if (parallel)
+			// parallel streams that are started from within a fork/join pool fork their tasks
+			// into that pool, so all steps (except merges) fan out to the work-stealing pool
+			try (var pool = new ForkJoinPool()) {
+				pool.invoke(ForkJoinTask.adapt(this::runSourcesAndMerges));
+			}
+		else
+			runSourcesAndMerges();
+	}
+
+	private void runSourcesAndMerges() {
+		inBuildMode(outline.nodes(SourceNode.class)).forEach(this::runFromSource);
+		runMerges();
 	}
 
 	@SuppressWarnings("unchecked")
 	private void runFromSource(SourceNode sourceNode) {
-		sourceNode
-				.source()
-				.loadAll().stream()
+		inBuildMode(sourceNode.source().loadAll())
 				.map(envelope -> (List<Document>) envelope.documents())
 				.forEach(documents -> processRecursively(sourceNode, documents));
 	}
 
+	/**
+	 * Merges act as barriers: A merge can only run once all documents from both its inputs were
+	 * gathered, which is the case when all sources were processed and no other merge that still
+	 * needs to run is upstream of it. Each round of merges can then unblock more merges downstream.
+	 */
+	private void runMerges() {
+		var pendingMerges = new ArrayList<>(mergeCaches.keySet());
+		while (!pendingMerges.isEmpty()) {
+			var readyMerges = pendingMerges.stream()
+					.filter(merge -> pendingMerges.stream().noneMatch(other -> isDownstreamOf(merge, other)))
+					.toList();
+			if (readyMerges.isEmpty())
+				throw new IllegalStateException("Merge steps must not form a cycle");
+
+			pendingMerges.removeAll(readyMerges);
+			inBuildMode(readyMerges).forEach(merge -> processRecursively(merge, mergeCaches.get(merge).merge()));
+		}
+	}
+
+	private boolean isDownstreamOf(Node node, Node upstream) {
+		return outline
+				.getChildrenOf(upstream)
+				.anyMatch(child -> child == node || isDownstreamOf(node, child));
+	}
+
 	private void processRecursively(Node previous, List<Document> documents) {
 		if (documents.isEmpty())
 			return;
@@ -81,26 +117,25 @@ class OneTimeSiteBuilder {
 		if (children == null)
 			throw new IllegalStateException("Unknown step triggered document processing");
 
-		children.forEach(next -> {
+		inBuildMode(children).forEach(next -> {
 			switch (next) {
 				case SourceNode _ -> throw new IllegalStateException("No step should map to a source");
 				case FilterNode nextFilter -> {
-					var filteredDocuments = documents.stream()
+					var filteredDocuments = inBuildMode(documents)
 							.filter(nextFilter.filter())
 							.toList();
 					processRecursively(nextFilter, filteredDocuments);
 				}
 				case TransformNode nextTransform -> {
-					var transformedDocuments = documents.stream()
+					var transformedDocuments = inBuildMode(documents)
 							.flatMap(document -> nextTransform.transformer().apply(document).stream())
 							.toList();
 					processRecursively(nextTransform, transformedDocuments);
 				}
+				// merges are run later (see `runMerges`), so just gather their input
 				case MergeNode nextMerge -> mergeCaches
 						.get(nextMerge)
-						.setInput(previous, documents)
-						.merge()
-						.ifPresent(mergedDocuments -> processRecursively(nextMerge, mergedDocuments));
+						.addInput(previous, documents);
 				case StoreDocumentNode(_, var collection) -> documents.forEach(doc -> store.storeDocument(collection, doc));
 				case StoreResourceNode(_, var naming) -> documents.forEach(doc -> store.storeResource(naming.apply(doc), (FileDocument) doc));
 				case GenerateTemplateNode _ -> throw new IllegalStateException("No step should map to a template");
@@ -109,6 +144,14 @@ class OneTimeSiteBuilder {
 		});
 	}
 
+	private <ELEMENT> Stream<ELEMENT> inBuildMode(Collection<ELEMENT> elements) {
+		return parallel ? elements.parallelStream() : elements.stream();
+	}
+
+	private <ELEMENT> Stream<ELEMENT> inBuildMode(Stream<ELEMENT> elements) {
+		return parallel ? elements.parallel() : elements.sequential();
+	}
+
 	private void renderTemplates() throws InterruptedException {
 		try (var executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors())) {
 			outline
@@ -125,7 +168,6 @@ class OneTimeSiteBuilder {
 		switch (template.query()) {
 			case CollectionQuery<DOCUMENT> collectionQuery -> store
 					.query(collectionQuery).stream()
-					.filter(result -> collectionQuery.filter().test(result))
 					.forEach(document -> executor.submit(() ->
 							generateFromTemplate(template, document)
 									.forEach(siteFileSystem::writeTemplatedFile)));
@@ -139,8 +181,13 @@ class OneTimeSiteBuilder {
 		return template
 				.composeMany(document)
 				.map(page -> {
-					var rendered = renderer.renderAsHtml(page.html(), template);
-					return new TemplatedFile(page.slug(), rendered.html(), rendered.referencedResources());
+					// resolve the page right away (it may query the store), but only render it
+					// once the file system is ready to write it, so it's never held in memory as a string
+					var resolved = renderer.resolveToDocument(page.html(), template);
+					return new TemplatedFile(
+							page.slug(),
+							output -> renderer.renderAsHtml(resolved.document(), output),
+							resolved.referencedResources());
 				});
 	}
 
@@ -164,44 +211,36 @@ class OneTimeSiteBuilder {
 
 		private final MergeNode merge;
 
-		// will be null until update was called
+		// input may be added from multiple threads, so only access
+		// these lists in methods that synchronize on this instance
 		private List<Document> leftInput;
 		private List<Document> rightInput;
 
 		private MergeCache(MergeNode merge) {
 			this.merge = merge;
+			this.leftInput = new ArrayList<>();
+			this.rightInput = new ArrayList<>();
 		}
 
-		MergeCache setInput(Node previous, List<Document> documents) {
+		synchronized void addInput(Node previous, List<Document> documents) {
 			if (merge.leftNode() == previous)
-				leftInput = List.copyOf(documents);
+				leftInput.addAll(documents);
 			else if (merge.rightNode() == previous)
-				rightInput = List.copyOf(documents);
+				rightInput.addAll(documents);
 			else
 				throw new IllegalArgumentException("Unexpected merge parent node: " + previous);
-
-			return this;
 		}
 
-		@SuppressWarnings({ "unchecked", "rawtypes" })
-		public Optional<List<Document>> merge() {
-			if (leftInput == null || rightInput == null)
-				return Optional.empty();
-
-			var mergedDocuments = crossProduct(leftInput, rightInput)
-					.<Document> flatMap(pair -> {
-						var merger = (Merger) merge.merger();
-						var left = (Record & Document) pair.left();
-						var right = (Record & Document) pair.right();
-						return merger.merge(left, right).stream();
-					})
+		synchronized List<Document> merge() {
+			var mergedDocuments = KeyedMerger
+					.mergeAll(merge.merger(), leftInput, rightInput)
 					.toList();
 
 			// get rid of the inputs - they won't be needed again
-			leftInput = null;
-			rightInput = null;
+			leftInput = List.of();
+			rightInput = List.of();
 
-			return Optional.of(mergedDocuments);
+			return mergedDocuments;
 		}
 
 	}
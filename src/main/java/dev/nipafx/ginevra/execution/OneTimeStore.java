@@ -1,31 +1,41 @@
 package dev.nipafx.ginevra.execution;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import dev.nipafx.ginevra.outline.Document;
 import dev.nipafx.ginevra.outline.FileDocument;
 import dev.nipafx.ginevra.outline.Query.CollectionQuery;
 import dev.nipafx.ginevra.outline.Query.RootQuery;
+import dev.nipafx.ginevra.util.RecordMapper;
 
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
-class OneTimeStore implements StoreFront {
+import static java.util.stream.Collectors.toUnmodifiableSet;
 
-	private static final ObjectMapper JSON = Json.ONE_TIME_STORE_MAPPER;
+/**
+ * A store for one-time builds that keeps the stored documents as they are.
+ *
+ * <p>Unlike the {@link LiveStore}, this store never has to deal with documents whose types were
+ * loaded by a class loader that has since been replaced, so there's no need to convert documents
+ * to a neutral representation. Instead, documents are only transformed (with the {@link RecordMapper})
+ * if they're queried with a type that differs from the one they were stored as.</p>
+ */
+class OneTimeStore implements StoreFront {
 
-	private final JsonNode root;
-	private final Map<String, ArrayNode> collections;
+	// the root's values are the component values of all documents stored in it
+	// (with nested records also represented as value maps, so they can be merged)
+	private final Map<String, Object> root;
+	private final Map<String, List<Record>> collections;
 	private final Map<String, FileDocument> resources;
 
 	private final StoreCache cache;
 
 	OneTimeStore() {
-		root = JSON.createObjectNode();
+		root = new HashMap<>();
 		collections = new HashMap<>();
 		resources = new HashMap<>();
 		cache = new StoreCache();
@@ -37,30 +47,87 @@ class OneTimeStore implements StoreFront {
 				() -> storeDocument(document));
 	}
 
-	void storeDocument(String collection, Document document) {
+	// documents may be stored from multiple threads (during a parallel build), so
+	// only access the underlying maps while synchronizing on this instance
+
+	synchronized void storeDocument(String collection, Document document) {
 		collections
-				.computeIfAbsent(collection, _ -> JSON.createArrayNode())
-				.add(JSON.valueToTree(document));
+				.computeIfAbsent(collection, _ -> new ArrayList<>())
+				.add((Record) document);
+		cache.invalidateCollection(collection);
 	}
 
 	void storeDocument(Document document) {
-		try {
-			// TODO: duplicate value detection (only one value should be defined for each key)
-			JSON
-					.readerForUpdating(root)
-					.readValue(JSON.<JsonNode> valueToTree(document));
-		} catch (IOException ex) {
-			// TODO: handle error
-			throw new IllegalStateException(ex);
+		// converting the document doesn't access the maps, so it happens outside of the lock
+		var values = RecordMapper.createValueMapFromRecord((Record) document);
+		synchronized (this) {
+			// check before merging, so a duplicate leaves the root unchanged
+			checkForDuplicates(root, values, "", document);
+			mergeInto(root, values);
+			cache.invalidateRoot();
 		}
 	}
 
-	void storeResource(String name, FileDocument document) {
+	/*
+	 * Values are merged like the `MergedRoot` merges JSON: nested value maps are merged key by key,
+	 * but only one value can be defined for each key - a second value is rejected as a duplicate unless
+	 * one of them is undefined, i.e. `null`, an empty `Optional`, or an empty collection or map.
+	 */
+
+	@SuppressWarnings("unchecked")
+	private static void checkForDuplicates(Map<String, ?> target, Map<String, ?> values, String path, Document document) {
+		values.forEach((key, value) -> {
+			var existing = target.get(key);
+			if (isUndefined(value) || isUndefined(existing))
+				return;
+
+			if (existing instanceof Map<?, ?> existingMap && value instanceof Map<?, ?> valueMap) {
+				checkForDuplicates((Map<String, ?>) existingMap, (Map<String, ?>) valueMap, path + key + ".", document);
+				return;
+			}
+
+			var message = "Only one value can be defined for each root key, but '%s' is defined more than once (last by %s)."
+					.formatted(path + key, document);
+			throw new IllegalArgumentException(message);
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void mergeInto(Map<String, Object> target, Map<String, ?> values) {
+		values.forEach((key, value) -> {
+			var existing = target.get(key);
+			if (isUndefined(value) && existing != null)
+				return;
+			if (isUndefined(existing)) {
+				target.put(key, value);
+				return;
+			}
+
+			// `checkForDuplicates` made sure that both are value maps, which may be shared with the documents'
+			// value maps, so the merged one is a copy (of only this part of the root)
+			var merged = new HashMap<>((Map<String, Object>) existing);
+			mergeInto(merged, (Map<String, ?>) value);
+			target.put(key, merged);
+		});
+	}
+
+	private static boolean isUndefined(Object value) {
+		return switch (value) {
+			case null -> true;
+			case Optional<?> optional -> optional.isEmpty();
+			case Collection<?> collection -> collection.isEmpty();
+			case Map<?, ?> map -> map.isEmpty();
+			default -> false;
+		};
+	}
+
+	synchronized void storeResource(String name, FileDocument document) {
 		var previous = resources.put(name, document);
 		if (previous != null) {
 			var message = "Resources must have unique names, but both %s and %s are named '%s'.".formatted(previous, document, name);
 			throw new IllegalArgumentException(message);
 		}
+		cache.invalidateResources();
 	}
 
 	@Override
@@ -69,13 +136,10 @@ class OneTimeStore implements StoreFront {
 		return (RESULT) cache.queryRoot(query.resultType(), collections::containsKey, this::queryRoot, this::queryCollection);
 	}
 
-	private <RESULT> RESULT queryRoot(String fieldName, Class<RESULT> resultType) {
-		try {
-			return JSON.treeToValue(root.get(fieldName), resultType);
-		} catch (IOException ex) {
-			// TODO: handle error
-			throw new IllegalArgumentException(ex);
-		}
+	private Object queryRoot(String fieldName, Class<?> resultType) {
+		// the `StoreCache` has the `RecordMapper` turn the value (including nested value maps)
+		// into the type of the query's component, so there's no need to do that here
+		return root.get(fieldName);
 	}
 
 	@Override
@@ -83,17 +147,19 @@ class OneTimeStore implements StoreFront {
 		if (!collections.containsKey(query.collection()))
 			throw new IllegalArgumentException("Unknown document collection: " + query.collection());
 
-		return cache.queryCollection(query.collection(), query.resultType(), this::queryCollection);
+		return cache.queryCollection(query, this::queryCollection);
 	}
 
-	private <RESULT> Set<RESULT> queryCollection(String collectionName, Class<RESULT> resultType) {
-		try {
-			var setType = JSON.getTypeFactory().constructCollectionType(Set.class, resultType);
-			return JSON.readerFor(setType).readValue(collections.get(collectionName));
-		} catch (IOException ex) {
-			// TODO: handle error
-			throw new IllegalArgumentException(ex);
-		}
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Set<?> queryCollection(String collectionName, Class<?> resultType) {
+		if (!resultType.isRecord())
+			throw new IllegalArgumentException("Collections can only be queried for record types but got " + resultType);
+
+		var recordType = (Class<? extends Record>) resultType;
+		return collections
+				.get(collectionName).stream()
+				.map(document -> RecordMapper.createRecordFromRecord((Class) recordType, document))
+				.collect(toUnmodifiableSet());
 	}
 
 	@Override
@@ -101,10 +167,15 @@ class OneTimeStore implements StoreFront {
 		return Optional.ofNullable(resources.get(name));
 	}
 
+	@Override
+	public long generation() {
+		return cache.generation();
+	}
+
 	@Override
 	public String toString() {
 		return "OneTimeStore{%s root entries, %s collections, %s resources}"
 				.formatted(root.size(), collections.size(), resources.size());
 	}
 
-}
\ No newline at end of file
+}
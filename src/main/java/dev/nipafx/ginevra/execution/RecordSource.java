@@ -6,6 +6,7 @@ import dev.nipafx.ginevra.outline.SenderId;
 import dev.nipafx.ginevra.outline.SimpleEnvelope;
 import dev.nipafx.ginevra.outline.Source;
 import dev.nipafx.ginevra.outline.SourceEvent;
+import dev.nipafx.ginevra.util.SHA256;
 
 import java.net.URI;
 import java.util.List;
@@ -36,4 +37,11 @@ class RecordSource<DOCUMENT extends Record & Document> implements Source<DOCUMEN
 		return List.of(envelope);
 	}
 
+	/**
+	 * @return a hash over the record's string representation, which for records includes all component values
+	 */
+	String fingerprint() {
+		return SHA256.hash(envelope.documents().toString());
+	}
+
 }
@@ -3,22 +3,43 @@ package dev.nipafx.ginevra.execution;
 import dev.nipafx.ginevra.render.ResourceFile;
 import dev.nipafx.ginevra.render.ResourceFile.CopiedFile;
 import dev.nipafx.ginevra.render.ResourceFile.CssFile;
+import dev.nipafx.ginevra.util.SHA256;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.Collections;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 
 interface SiteFileSystem {
 
 	static SiteFileSystem create(SitePaths sitePaths) {
-		return new ActualFileSystem(sitePaths);
+		return new ActualFileSystem(sitePaths, BuildCache.none());
+	}
+
+	static SiteFileSystem create(SitePaths sitePaths, BuildCache buildCache) {
+		return new ActualFileSystem(sitePaths, buildCache);
 	}
 
 	void initialize();
@@ -29,16 +50,21 @@ interface SiteFileSystem {
 
 	void awaitCompletion() throws InterruptedException;
 
-	record TemplatedFile(Path slug, String content, Set<ResourceFile> referencedResources) { }
+	/**
+	 * @param content writes the file's content to the given writer, so it doesn't have to be assembled in memory first
+	 */
+	record TemplatedFile(Path slug, Consumer<Writer> content, Set<ResourceFile> referencedResources) { }
 
 	class ActualFileSystem implements SiteFileSystem {
 
 		private final SitePaths sitePaths;
+		private final BuildCache buildCache;
 		private final Set<Path> writtenFiles;
 		private final ExecutorService executor;
 
-		public ActualFileSystem(SitePaths sitePaths) {
+		public ActualFileSystem(SitePaths sitePaths, BuildCache buildCache) {
 			this.sitePaths = sitePaths;
+			this.buildCache = buildCache;
 			this.writtenFiles = Collections.newSetFromMap(new ConcurrentHashMap<>());
 			this.executor = Executors.newVirtualThreadPerTaskExecutor();
 		}
@@ -58,7 +84,7 @@ interface SiteFileSystem {
 			executor.submit(() -> {
 				var filePath = sitePaths.siteFolder().resolve(file.slug()).resolve("index.html").toAbsolutePath();
 
-				writeToFile(filePath, file.content());
+				streamToFile(filePath, file.content());
 				file
 						.referencedResources()
 						.forEach(res -> {
@@ -71,11 +97,16 @@ interface SiteFileSystem {
 		}
 
 		private void copyFile(CopiedFile copiedFile) {
-			var targetFile = sitePaths.siteFolder().resolve(copiedFile.target());
+			var targetFile = sitePaths.siteFolder().resolve(copiedFile.target()).toAbsolutePath();
 			var fileNotWrittenBefore = writtenFiles.add(targetFile);
+			if (!fileNotWrittenBefore)
+				return;
+
 			// copied files have a hashed name, so if a target file of that name already exists
 			// it can be assumed to be up-to-date and nothing needs to be done
-			if (fileNotWrittenBefore && !Files.exists(targetFile))
+			// (it still needs to be registered, though, so the build cache doesn't consider it stale)
+			buildCache.registerOutput(targetFile, copiedFile.source());
+			if (!Files.exists(targetFile))
 				try {
 					Files.copy(copiedFile.source(), targetFile);
 				} catch (IOException ex) {
@@ -88,17 +119,63 @@ interface SiteFileSystem {
 		private void writeCssFile(CssFile cssFile) {
 			var targetFile = sitePaths.siteFolder().resolve(cssFile.file()).toAbsolutePath();
 			var fileNotWrittenBefore = writtenFiles.add(targetFile);
+			if (!fileNotWrittenBefore)
+				return;
+
 			// CSS files have a hashed name, so if a target file of that name already exists
 			// it can be assumed to be up-to-date and nothing needs to be done
-			if (fileNotWrittenBefore && !Files.exists(targetFile))
-				writeToFile(targetFile, cssFile.content());
+			var needsWriting = buildCache.registerOutput(targetFile, cssFile.content());
+			if (needsWriting && !Files.exists(targetFile))
+				writeContent(targetFile, cssFile.content());
 		}
 
-		private void writeToFile(Path filePath, String fileContent) {
+		private void streamToFile(Path filePath, Consumer<Writer> content) {
 			var fileWrittenBefore = !writtenFiles.add(filePath);
 			if (fileWrittenBefore)
 				return;
 
+			try {
+				Files.createDirectories(filePath.getParent());
+				if (buildCache.comparesContent())
+					streamToFileIfChanged(filePath, content);
+				else {
+					// some files can change without Ginevra noticing,
+					// so they need to be deleted and recreated
+					Files.deleteIfExists(filePath);
+					streamContent(filePath, Optional.empty(), content);
+				}
+			} catch (IOException | UncheckedIOException ex) {
+				writtenFiles.remove(filePath);
+				// TODO: handle error
+				ex.printStackTrace();
+			}
+		}
+
+		private void streamToFileIfChanged(Path filePath, Consumer<Writer> content) throws IOException {
+			// the content's hash is only known once it was written, so write it to a temporary file
+			// and only replace the actual file if the last build didn't write the same content
+			var tempFile = filePath.resolveSibling(filePath.getFileName() + ".tmp");
+			var digest = SHA256.createDigest();
+			try {
+				streamContent(tempFile, Optional.of(digest), content);
+				var needsWriting = buildCache.registerOutputHash(filePath, SHA256.hash(digest));
+				if (needsWriting)
+					Files.move(tempFile, filePath, StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				Files.deleteIfExists(tempFile);
+			}
+		}
+
+		private static void streamContent(Path filePath, Optional<MessageDigest> digest, Consumer<Writer> content) throws IOException {
+			OutputStream output = Channels.newOutputStream(FileChannel.open(filePath, CREATE, TRUNCATE_EXISTING, WRITE));
+			if (digest.isPresent())
+				output = new DigestOutputStream(output, digest.get());
+			try (var writer = new BufferedWriter(new OutputStreamWriter(output, UTF_8))) {
+				content.accept(writer);
+			}
+		}
+
+		private void writeContent(Path filePath, String fileContent) {
 			try {
 				// some files can change without Ginevra noticing,
 				// so they need to be deleted and recreated
@@ -122,6 +199,10 @@ interface SiteFileSystem {
 				if (fileWrittenBefore)
 					return;
 
+				var needsCopying = buildCache.registerOutput(targetFile, file);
+				if (!needsCopying)
+					return;
+
 				try {
 					Files.createDirectories(fullTargetFolder);
 					// these files can change without Ginevra noticing,
@@ -142,6 +223,7 @@ interface SiteFileSystem {
 			var terminated = executor.awaitTermination(1, TimeUnit.DAYS);
 			if (!terminated)
 				throw new IllegalStateException("Huh?");
+			buildCache.completeBuild();
 		}
 
 	}
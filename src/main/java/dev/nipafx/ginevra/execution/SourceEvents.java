@@ -0,0 +1,66 @@
+package dev.nipafx.ginevra.execution;
+
+import dev.nipafx.ginevra.outline.Envelope;
+import dev.nipafx.ginevra.outline.SenderId;
+import dev.nipafx.ginevra.outline.SourceEvent;
+import dev.nipafx.ginevra.outline.SourceEvent.Added;
+import dev.nipafx.ginevra.outline.SourceEvent.Changed;
+import dev.nipafx.ginevra.outline.SourceEvent.Removed;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+
+class SourceEvents {
+
+	/**
+	 * Collapses the events of each sender into the one event (or none) that has the same effect as all of them.
+	 * For example, a sender that was changed twice and then removed only needs to be removed, whereas one that
+	 * was added and then removed doesn't need any event at all. The result is ordered by each sender's first event.
+	 */
+	static List<SourceEvent> coalesce(List<SourceEvent> events) {
+		var bySender = new LinkedHashMap<SenderId, Coalesced>();
+		for (SourceEvent event : events)
+			bySender.merge(
+					senderOf(event),
+					Coalesced.from(event),
+					(coalesced, next) -> new Coalesced(coalesced.existedBefore(), next.envelope()));
+
+		return bySender
+				.entrySet().stream()
+				.flatMap(sender -> sender.getValue().toEvent(sender.getKey()).stream())
+				.toList();
+	}
+
+	private static SenderId senderOf(SourceEvent event) {
+		return switch (event) {
+			case Added(var envelope) -> envelope.sender();
+			case Changed(var envelope) -> envelope.sender();
+			case Removed(var id) -> id;
+		};
+	}
+
+	/**
+	 * @param existedBefore whether the sender's documents existed before the first event
+	 * @param envelope the sender's documents after the last event (empty if they were removed)
+	 */
+	private record Coalesced(boolean existedBefore, Optional<Envelope<?>> envelope) {
+
+		static Coalesced from(SourceEvent event) {
+			return switch (event) {
+				case Added(var envelope) -> new Coalesced(false, Optional.of(envelope));
+				case Changed(var envelope) -> new Coalesced(true, Optional.of(envelope));
+				case Removed _ -> new Coalesced(true, Optional.empty());
+			};
+		}
+
+		Optional<SourceEvent> toEvent(SenderId sender) {
+			if (existedBefore)
+				return Optional.of(envelope.<SourceEvent> map(Changed::new).orElseGet(() -> new Removed(sender)));
+			else
+				return envelope.map(Added::new);
+		}
+
+	}
+
+}
@@ -1,15 +1,27 @@
 package dev.nipafx.ginevra.execution;
 
+import dev.nipafx.ginevra.outline.Document;
+import dev.nipafx.ginevra.outline.Query.CollectionQuery;
+import dev.nipafx.ginevra.outline.Query.Condition;
+import dev.nipafx.ginevra.outline.Query.Condition.Equals;
+import dev.nipafx.ginevra.outline.Query.Order;
+import dev.nipafx.ginevra.outline.Query.Selection;
 import dev.nipafx.ginevra.util.RecordMapper;
 
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiFunction;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
@@ -21,11 +33,18 @@ public class StoreCache {
 	private final ConcurrentMap<Class<? extends Record>, Record> rootCache;
 	private final ConcurrentMap<String, Object> rootFieldCache;
 	private final ConcurrentMap<CacheKey, Set<?>> collectionCache;
+	private final ConcurrentMap<IndexKey, CollectionIndex<?>> indexCache;
+	private final ConcurrentMap<SelectionKey, List<?>> selectionCache;
+	// increases with every invalidation, i.e. whenever the store's content changes
+	private final AtomicLong generation;
 
 	public StoreCache() {
 		rootCache = new ConcurrentHashMap<>();
 		rootFieldCache = new ConcurrentHashMap<>();
 		collectionCache = new ConcurrentHashMap<>();
+		indexCache = new ConcurrentHashMap<>();
+		selectionCache = new ConcurrentHashMap<>();
+		generation = new AtomicLong();
 	}
 
 	public Record queryRoot(
@@ -76,24 +95,148 @@ public class StoreCache {
 		return (Set<RESULT>) collectionCache.computeIfAbsent(key, _ -> query.apply(key.collection(), key.queryType()));
 	}
 
+	/**
+	 * Answers the query's {@link Selection} from indexes over the collection and applies its filter.
+	 * The documents that match the selection's conditions, in the selection's order, are cached
+	 * (the filter is arbitrary code and thus can't be part of the cache key).
+	 */
+	public <RESULT extends Record & Document> Set<RESULT> queryCollection(CollectionQuery<RESULT> query, QueryCollection queryCollection) {
+		var selection = query.selection();
+		if (selection.selectsAll() && !query.isFiltered())
+			return queryCollection(query.collection(), query.resultType(), queryCollection);
+
+		var key = new SelectionKey(query.collection(), query.resultType(), selection.conditions(), selection.order());
+		@SuppressWarnings("unchecked")
+		var selected = (List<RESULT>) selectionCache.computeIfAbsent(key, _ -> select(key, queryCollection));
+
+		var limit = selection.limit().orElse(Integer.MAX_VALUE);
+		List<RESULT> results;
+		if (query.isFiltered())
+			results = selected.stream()
+					.filter(query.filter())
+					.skip(selection.offset())
+					.limit(limit)
+					.toList();
+		else {
+			// without a filter, offset and limit translate to a cheap sublist
+			var from = Math.min(selection.offset(), selected.size());
+			var to = (int) Math.min((long) from + limit, selected.size());
+			results = selected.subList(from, to);
+		}
+		return Collections.unmodifiableSequencedSet(new LinkedHashSet<>(results));
+	}
+
+	@SuppressWarnings("unchecked")
+	private <RESULT extends Record> List<RESULT> select(SelectionKey key, QueryCollection queryCollection) {
+		var conditions = key.conditions();
+		if (conditions.isEmpty())
+			return key
+					.order()
+					.map(order -> this.<RESULT> index(key, order.component(), queryCollection)
+							.ordered(order.component(), order.descending()))
+					.orElseGet(() -> List.copyOf((Set<RESULT>) queryCollection(key.collection(), key.queryType(), queryCollection)));
+
+		// equality conditions are usually the most selective, so prefer those to narrow down the documents
+		var narrowingCondition = conditions.stream()
+				.filter(Equals.class::isInstance)
+				.findFirst()
+				.orElse(conditions.getFirst());
+		var selected = new ArrayList<>(this.<RESULT> index(key, narrowingCondition.component(), queryCollection)
+				.select(narrowingCondition));
+		for (Condition condition : conditions) {
+			if (condition == narrowingCondition)
+				continue;
+			var index = this.<RESULT> index(key, condition.component(), queryCollection);
+			selected.removeIf(document -> !index.matches(document, condition));
+		}
+		key.order().ifPresent(order -> selected.sort(this
+				.<RESULT> index(key, order.component(), queryCollection)
+				.comparator(order.descending())));
+		return List.copyOf(selected);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private <RESULT extends Record> CollectionIndex<RESULT> index(SelectionKey key, String component, QueryCollection queryCollection) {
+		var indexKey = new IndexKey(key.collection(), key.queryType(), component);
+		return (CollectionIndex<RESULT>) indexCache.computeIfAbsent(indexKey, _ -> {
+			var documents = (Set) queryCollection(key.collection(), key.queryType(), queryCollection);
+			return CollectionIndex.create((Class) key.queryType(), component, documents);
+		});
+	}
+
+	public long generation() {
+		return generation.get();
+	}
+
 	public void invalidateRoot() {
+		generation.incrementAndGet();
 		rootCache.clear();
 		rootFieldCache.clear();
 	}
 
+	/**
+	 * Only invalidates the cached values of the given root fields and the root documents that contain them.
+	 */
+	public void invalidateRootFields(Set<String> fieldNames) {
+		if (fieldNames.isEmpty())
+			return;
+
+		generation.incrementAndGet();
+		rootFieldCache.keySet().removeAll(fieldNames);
+		rootCache.keySet().removeIf(type -> hasComponent(type, fieldNames::contains));
+	}
+
 	public void invalidateCollection(String collection) {
-		rootCache.clear();
+		generation.incrementAndGet();
+		rootCache.keySet().removeIf(type -> hasComponent(type, collection::equals));
 		rootFieldCache.remove(collection);
 		collectionCache.entrySet().removeIf(entry -> entry.getKey().collection().equals(collection));
+		indexCache.entrySet().removeIf(entry -> entry.getKey().collection().equals(collection));
+		selectionCache.entrySet().removeIf(entry -> entry.getKey().collection().equals(collection));
+	}
+
+	/**
+	 * Instead of dropping the cached documents of the collection (like {@link #invalidateCollection(String)}),
+	 * this replaces them right away with the query's new results. That's cheap if the query only needs to
+	 * convert the changed documents and reuses the other ones (like {@link LiveStore} does).
+	 * Indexes and selections are dropped because they're quickly recreated from the cached documents.
+	 */
+	public void patchCollection(String collection, QueryCollection query) {
+		generation.incrementAndGet();
+		rootCache.keySet().removeIf(type -> hasComponent(type, collection::equals));
+		rootFieldCache.remove(collection);
+		collectionCache.replaceAll((key, documents) -> key.collection().equals(collection)
+				? query.apply(collection, key.queryType())
+				: documents);
+		indexCache.entrySet().removeIf(entry -> entry.getKey().collection().equals(collection));
+		selectionCache.entrySet().removeIf(entry -> entry.getKey().collection().equals(collection));
+	}
+
+	private static boolean hasComponent(Class<? extends Record> type, Predicate<String> isComponentName) {
+		return Stream
+				.of(type.getRecordComponents())
+				.anyMatch(component -> isComponentName.test(component.getName()));
+	}
+
+	/**
+	 * Resources aren't cached, but a change to them still needs to advance the {@link #generation() generation}.
+	 */
+	public void invalidateResources() {
+		generation.incrementAndGet();
 	}
 
 	public void invalidateAll() {
+		generation.incrementAndGet();
 		rootCache.clear();
 		rootFieldCache.clear();
 		collectionCache.clear();
+		indexCache.clear();
+		selectionCache.clear();
 	}
 
 	private record CacheKey(String collection, Class<?> queryType) { }
+	private record IndexKey(String collection, Class<?> queryType, String component) { }
+	private record SelectionKey(String collection, Class<?> queryType, List<Condition> conditions, Optional<Order> order) { }
 
 	public interface QueryRootField extends BiFunction<String, Class<?>, Object> { }
 	public interface QueryCollection extends BiFunction<String, Class<?>, Set<?>> { }
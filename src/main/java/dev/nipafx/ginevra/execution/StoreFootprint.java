@@ -0,0 +1,64 @@
+package dev.nipafx.ginevra.execution;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static java.util.Collections.disjoint;
+
+/**
+ * The parts of a {@link LiveStore} that queries read or that updates changed, so it can be determined
+ * which query results are affected by which changes.
+ *
+ * @param rootFields the names of root fields
+ * @param collections the names of collections
+ * @param resources whether resources were read or changed (they aren't distinguished by name)
+ */
+record StoreFootprint(Set<String> rootFields, Set<String> collections, boolean resources) {
+
+	private static final StoreFootprint NONE = new StoreFootprint(Set.of(), Set.of(), false);
+
+	StoreFootprint {
+		rootFields = Set.copyOf(rootFields);
+		collections = Set.copyOf(collections);
+	}
+
+	static StoreFootprint none() {
+		return NONE;
+	}
+
+	static StoreFootprint ofRootFields(Set<String> rootFields) {
+		return new StoreFootprint(rootFields, Set.of(), false);
+	}
+
+	static StoreFootprint ofCollection(String collection) {
+		return new StoreFootprint(Set.of(), Set.of(collection), false);
+	}
+
+	static StoreFootprint ofResources() {
+		return new StoreFootprint(Set.of(), Set.of(), true);
+	}
+
+	boolean isEmpty() {
+		return rootFields.isEmpty() && collections.isEmpty() && !resources;
+	}
+
+	boolean overlaps(StoreFootprint other) {
+		return (resources && other.resources)
+				|| !disjoint(rootFields, other.rootFields)
+				|| !disjoint(collections, other.collections);
+	}
+
+	StoreFootprint and(StoreFootprint other) {
+		if (other.isEmpty())
+			return this;
+		if (this.isEmpty())
+			return other;
+
+		var allRootFields = new HashSet<>(rootFields);
+		allRootFields.addAll(other.rootFields);
+		var allCollections = new HashSet<>(collections);
+		allCollections.addAll(other.collections);
+		return new StoreFootprint(allRootFields, allCollections, resources || other.resources);
+	}
+
+}
@@ -16,4 +16,10 @@ public interface StoreFront {
 
 	Optional<? extends FileDocument> getResource(String name);
 
+	/**
+	 * @return a number that increases whenever the store's content changes, so results
+	 * 		derived from it can be reused for as long as it stays the same
+	 */
+	long generation();
+
 }
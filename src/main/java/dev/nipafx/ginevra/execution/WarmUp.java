@@ -0,0 +1,89 @@
+package dev.nipafx.ginevra.execution;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Runs tasks that prepare pages (i.e. resolve and render them) in parallel in the background, so requests
+ * that follow a change find them ready. Each round of tasks cancels the previous one because a change that
+ * starts a new round outdates whatever the previous one would have prepared.
+ *
+ * <p>The tasks read the store, so before it's updated, the current round must be cancelled, which waits
+ * for the tasks that already started.</p>
+ */
+class WarmUp {
+
+	private final ExecutorService executor;
+	// tasks run while holding the read lock, so cancelling can wait for them by acquiring the write lock
+	private final ReadWriteLock running;
+	// only access while holding this instance's lock
+	private List<CompletableFuture<Void>> round;
+	// incremented by each cancellation, so tasks that were already taken from the executor's queue
+	// when their round was cancelled don't start after `cancel` returned
+	private volatile long generation;
+
+	WarmUp() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	// package visible for tests
+	WarmUp(int threads) {
+		this.executor = Executors.newFixedThreadPool(threads, Thread.ofPlatform().daemon().name("live-warm-up-", 0).factory());
+		this.running = new ReentrantReadWriteLock();
+		this.round = List.of();
+		this.generation = 0;
+	}
+
+	/**
+	 * Cancels the current round (if any) and starts a new one, which executes the prioritized tasks before the others.
+	 *
+	 * @return a future that completes when the prioritized tasks are done (also if they were cancelled)
+	 */
+	synchronized CompletableFuture<Void> start(List<Runnable> prioritizedTasks, List<Runnable> otherTasks) {
+		// the new round doesn't update the store, so there's no need to wait for the running tasks
+		cancelPending();
+		var roundGeneration = generation;
+		// the executor's queue is first in, first out, so submitting the prioritized tasks first is enough
+		var prioritized = prioritizedTasks.stream()
+				.map(task -> CompletableFuture.runAsync(() -> run(task, roundGeneration), executor))
+				.toList();
+		var others = otherTasks.stream()
+				.map(task -> CompletableFuture.runAsync(() -> run(task, roundGeneration), executor))
+				.toList();
+		round = Stream.concat(prioritized.stream(), others.stream()).toList();
+		return CompletableFuture
+				.allOf(prioritized.toArray(CompletableFuture[]::new))
+				.exceptionally(_ -> null);
+	}
+
+	private void run(Runnable task, long roundGeneration) {
+		running.readLock().lock();
+		try {
+			if (generation == roundGeneration)
+				task.run();
+		} finally {
+			running.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Cancels the tasks of the current round that didn't start, yet, and waits for those that did to finish.
+	 */
+	synchronized void cancel() {
+		cancelPending();
+		running.writeLock().lock();
+		running.writeLock().unlock();
+	}
+
+	private void cancelPending() {
+		generation++;
+		round.forEach(task -> task.cancel(false));
+		round = List.of();
+	}
+
+}
@@ -13,6 +13,8 @@ import static java.util.stream.Collectors.joining;
  */
 public class Classes {
 
+	private static final Classes NONE = new Classes(List.of());
+
 	private final List<String> names;
 
 	private Classes(List<String> names) {
@@ -20,7 +22,7 @@ public class Classes {
 	}
 
 	public static Classes none() {
-		return new Classes(List.of());
+		return NONE;
 	}
 
 	public static Classes of(String... names) {
@@ -7,6 +7,8 @@ import java.util.Objects;
  */
 public class Id {
 
+	private static final Id NONE = new Id("");
+
 	private final String id;
 
 	private Id(String id) {
@@ -14,7 +16,7 @@ public class Id {
 	}
 
 	public static Id none() {
-		return new Id("");
+		return NONE;
 	}
 
 	public static Id of(String id) {
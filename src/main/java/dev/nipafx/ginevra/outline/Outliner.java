@@ -72,6 +72,12 @@ public interface Outliner {
 			Step<DOCUMENT_IN_1> left, Step<DOCUMENT_IN_2> right,
 			Merger<DOCUMENT_IN_1, DOCUMENT_IN_2, DOCUMENT_OUT> merger);
 
+	<DOCUMENT_IN_1 extends Record & Document, DOCUMENT_IN_2 extends Record & Document, DOCUMENT_OUT extends Record & Document, KEY>
+	Step<DOCUMENT_OUT> merge(
+			Step<DOCUMENT_IN_1> left, Step<DOCUMENT_IN_2> right,
+			Function<DOCUMENT_IN_1, KEY> leftKey, Function<DOCUMENT_IN_2, KEY> rightKey,
+			Merger<DOCUMENT_IN_1, DOCUMENT_IN_2, DOCUMENT_OUT> merger);
+
 	// store
 
 	<DOCUMENT_IN extends Record & Document>
@@ -1,17 +1,199 @@
 package dev.nipafx.ginevra.outline;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.function.Predicate;
 
+import static java.util.Objects.requireNonNull;
+
 sealed public interface Query<RESULT extends Record & Document> {
 
 	record RootQuery<RESULT extends Record & Document>(Class<RESULT> resultType)
 			implements Query<RESULT> { }
 
-	record CollectionQuery<RESULT extends Record & Document>(String collection, Class<RESULT> resultType, Predicate<RESULT> filter)
+	/**
+	 * Queries the documents in a collection.
+	 *
+	 * <p>Besides the arbitrary {@code filter}, a collection query can declare a {@link Selection}, which
+	 * selects documents by the values of their record components, orders them, and limits the number of results.
+	 * The store answers the selection from indexes, so unlike a filter it doesn't need to touch every document
+	 * in the collection.</p>
+	 *
+	 * <pre>{@code
+	 * new CollectionQuery<>("posts", Post.class)
+	 *		.where("tag", "java")
+	 *		.orderByDescending("date")
+	 *		.limit(5);
+	 * }</pre>
+	 *
+	 * <p>If a filter is defined, it's applied before offset and limit.</p>
+	 */
+	record CollectionQuery<RESULT extends Record & Document>(
+			String collection, Class<RESULT> resultType, Predicate<RESULT> filter, Selection selection)
 			implements Query<RESULT> {
 
+		@SuppressWarnings("rawtypes")
+		private static final Predicate NO_FILTER = _ -> true;
+
+		public CollectionQuery {
+			requireNonNull(collection);
+			requireNonNull(resultType);
+			requireNonNull(filter);
+			requireNonNull(selection);
+		}
+
+		@SuppressWarnings("unchecked")
 		public CollectionQuery(String collection, Class<RESULT> resultType) {
-			this(collection, resultType, _ -> true);
+			this(collection, resultType, NO_FILTER, Selection.all());
+		}
+
+		public CollectionQuery(String collection, Class<RESULT> resultType, Predicate<RESULT> filter) {
+			this(collection, resultType, filter, Selection.all());
+		}
+
+		/**
+		 * @return whether this query has an arbitrary filter (as opposed to only a declarative {@link Selection})
+		 */
+		public boolean isFiltered() {
+			return filter != NO_FILTER;
+		}
+
+		/**
+		 * Only selects documents whose component of the given name has the given value
+		 * (if the component is an {@code Optional}, its content is compared).
+		 */
+		public CollectionQuery<RESULT> where(String component, Object value) {
+			return withSelection(selection.and(new Condition.Equals(component, value)));
+		}
+
+		/**
+		 * Only selects documents whose component of the given name is at least {@code from} (inclusive)
+		 * and less than {@code to} (exclusive).
+		 */
+		public CollectionQuery<RESULT> whereBetween(String component, Comparable<?> from, Comparable<?> to) {
+			return withSelection(selection.and(new Condition.Range(component, Optional.of(from), Optional.of(to))));
+		}
+
+		/**
+		 * Only selects documents whose component of the given name is at least {@code from} (inclusive).
+		 */
+		public CollectionQuery<RESULT> whereAtLeast(String component, Comparable<?> from) {
+			return withSelection(selection.and(new Condition.Range(component, Optional.of(from), Optional.empty())));
+		}
+
+		/**
+		 * Only selects documents whose component of the given name is less than {@code to} (exclusive).
+		 */
+		public CollectionQuery<RESULT> whereBelow(String component, Comparable<?> to) {
+			return withSelection(selection.and(new Condition.Range(component, Optional.empty(), Optional.of(to))));
+		}
+
+		/**
+		 * Orders the results by the component of the given name in ascending order
+		 * (documents where that component is empty come last).
+		 */
+		public CollectionQuery<RESULT> orderBy(String component) {
+			return withSelection(selection.orderedBy(new Order(component, false)));
+		}
+
+		/**
+		 * Orders the results by the component of the given name in descending order
+		 * (documents where that component is empty come last).
+		 */
+		public CollectionQuery<RESULT> orderByDescending(String component) {
+			return withSelection(selection.orderedBy(new Order(component, true)));
+		}
+
+		public CollectionQuery<RESULT> offset(int offset) {
+			return withSelection(selection.withOffset(offset));
+		}
+
+		public CollectionQuery<RESULT> limit(int limit) {
+			return withSelection(selection.withLimit(limit));
+		}
+
+		public CollectionQuery<RESULT> withFilter(Predicate<RESULT> filter) {
+			return new CollectionQuery<>(collection, resultType, filter, selection);
+		}
+
+		private CollectionQuery<RESULT> withSelection(Selection selection) {
+			return new CollectionQuery<>(collection, resultType, filter, selection);
+		}
+
+	}
+
+	/**
+	 * A declarative selection of documents from a collection - all conditions must be met.
+	 */
+	record Selection(List<Condition> conditions, Optional<Order> order, int offset, Optional<Integer> limit) {
+
+		public Selection {
+			conditions = List.copyOf(conditions);
+			requireNonNull(order);
+			if (offset < 0)
+				throw new IllegalArgumentException("The offset must not be negative but was " + offset);
+			if (limit.isPresent() && limit.get() < 0)
+				throw new IllegalArgumentException("The limit must not be negative but was " + limit.get());
+		}
+
+		public static Selection all() {
+			return new Selection(List.of(), Optional.empty(), 0, Optional.empty());
+		}
+
+		public boolean selectsAll() {
+			return conditions.isEmpty() && order.isEmpty() && offset == 0 && limit.isEmpty();
+		}
+
+		Selection and(Condition condition) {
+			var newConditions = new ArrayList<>(conditions);
+			newConditions.add(condition);
+			return new Selection(newConditions, order, offset, limit);
+		}
+
+		Selection orderedBy(Order order) {
+			return new Selection(conditions, Optional.of(order), offset, limit);
+		}
+
+		Selection withOffset(int offset) {
+			return new Selection(conditions, order, offset, limit);
+		}
+
+		Selection withLimit(int limit) {
+			return new Selection(conditions, order, offset, Optional.of(limit));
+		}
+
+	}
+
+	sealed interface Condition {
+
+		String component();
+
+		record Equals(String component, Object value) implements Condition {
+
+			public Equals {
+				requireNonNull(component);
+				requireNonNull(value);
+			}
+
+		}
+
+		record Range(String component, Optional<Comparable<?>> from, Optional<Comparable<?>> to) implements Condition {
+
+			public Range {
+				requireNonNull(component);
+				if (from.isEmpty() && to.isEmpty())
+					throw new IllegalArgumentException("A range needs at least one bound");
+			}
+
+		}
+
+	}
+
+	record Order(String component, boolean descending) {
+
+		public Order {
+			requireNonNull(component);
 		}
 
 	}
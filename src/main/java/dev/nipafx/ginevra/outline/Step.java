@@ -21,6 +21,18 @@ public interface Step<DOCUMENT extends Record & Document> {
 	<DOCUMENT_OTHER extends Record & Document, DOCUMENT_OUT extends Record & Document>
 	Step<DOCUMENT_OUT> merge(Step<DOCUMENT_OTHER> other, Merger<DOCUMENT, DOCUMENT_OTHER, DOCUMENT_OUT> merger);
 
+	/**
+	 * Like {@link #merge(Step, Merger)} but only passes pairs of documents with equal keys to the merger
+	 * (documents with a {@code null} key are never merged).
+	 * This avoids calling the merger for every possible pair of documents.
+	 */
+	<DOCUMENT_OTHER extends Record & Document, DOCUMENT_OUT extends Record & Document, KEY>
+	Step<DOCUMENT_OUT> merge(
+			Step<DOCUMENT_OTHER> other,
+			Function<DOCUMENT, KEY> key,
+			Function<DOCUMENT_OTHER, KEY> otherKey,
+			Merger<DOCUMENT, DOCUMENT_OTHER, DOCUMENT_OUT> merger);
+
 	// store
 
 	void store(String collection);
@@ -0,0 +1,168 @@
+package dev.nipafx.ginevra.render;
+
+import dev.nipafx.ginevra.html.CustomElement;
+import dev.nipafx.ginevra.html.KnownElement;
+import dev.nipafx.ginevra.render.ResourceGatherer.GatheredResources;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Remembers how custom elements and CSS styles were resolved, so elements that appear on many pages
+ * (like headers, footers, or navigation) only need to be resolved once.
+ *
+ * <p>Elements and styles are identified by equality (templates create new instances for each page),
+ * so memoization is only correct if they're "pure", i.e. if equal elements always compose to equal
+ * children (given the same store content). Because composition may query the store, all results are
+ * discarded when the store's generation changes.</p>
+ */
+interface ElementCache {
+
+	/**
+	 * The default capacity in entries per cache (one for elements, one for styles).
+	 */
+	int DEFAULT_CAPACITY = 4 * 1024;
+
+	static ElementCache none() {
+		return new NoElementCache();
+	}
+
+	static ElementCache memoizing() {
+		return new MemoizingElementCache(DEFAULT_CAPACITY);
+	}
+
+	static ElementCache memoizing(int capacity) {
+		return new MemoizingElementCache(capacity);
+	}
+
+	ResolvedElement resolveElement(CustomElement element, long storeGeneration, Supplier<ResolvedElement> resolve);
+
+	GatheredResources resolveStyle(Record style, long storeGeneration, Supplier<GatheredResources> resolve);
+
+	record ResolvedElement(List<KnownElement> elements, GatheredResources resources) {
+
+		public ResolvedElement {
+			elements = List.copyOf(elements);
+		}
+
+	}
+
+	class NoElementCache implements ElementCache {
+
+		@Override
+		public ResolvedElement resolveElement(CustomElement element, long storeGeneration, Supplier<ResolvedElement> resolve) {
+			return resolve.get();
+		}
+
+		@Override
+		public GatheredResources resolveStyle(Record style, long storeGeneration, Supplier<GatheredResources> resolve) {
+			return resolve.get();
+		}
+
+	}
+
+	/**
+	 * Holds at most the given number of elements and styles each - once that's exceeded,
+	 * the least recently used ones are evicted (most elements are page-specific and never used again).
+	 */
+	class MemoizingElementCache implements ElementCache {
+
+		private final Map<Key, ResolvedElement> elements;
+		private final Map<Key, GatheredResources> styles;
+		// only access the maps and the generation while synchronizing on this instance
+		private long generation;
+
+		private MemoizingElementCache(int capacity) {
+			if (capacity < 0)
+				throw new IllegalArgumentException("The capacity must not be negative but was " + capacity);
+
+			this.elements = new BoundedMap<>(capacity);
+			this.styles = new BoundedMap<>(capacity);
+			this.generation = 0;
+		}
+
+		@Override
+		public ResolvedElement resolveElement(CustomElement element, long storeGeneration, Supplier<ResolvedElement> resolve) {
+			return resolve(elements, new Key(element, storeGeneration), resolve);
+		}
+
+		@Override
+		public GatheredResources resolveStyle(Record style, long storeGeneration, Supplier<GatheredResources> resolve) {
+			return resolve(styles, new Key(style, storeGeneration), resolve);
+		}
+
+		private <VALUE> VALUE resolve(Map<Key, VALUE> cache, Key key, Supplier<VALUE> resolve) {
+			synchronized (this) {
+				discardOutdatedResults(key.storeGeneration());
+				var cached = cache.get(key);
+				if (cached != null)
+					return cached;
+			}
+
+			// resolving an element resolves its children, which leads to recursive calls,
+			// so resolve outside of the lock (which also keeps other threads from being blocked)
+			var resolved = resolve.get();
+			synchronized (this) {
+				// results for an outdated generation are never returned, so there's no need to keep them
+				if (key.storeGeneration() < generation)
+					return resolved;
+				var previous = cache.putIfAbsent(key, resolved);
+				return previous == null ? resolved : previous;
+			}
+		}
+
+		private void discardOutdatedResults(long storeGeneration) {
+			if (storeGeneration <= generation)
+				return;
+
+			generation = storeGeneration;
+			elements.clear();
+			styles.clear();
+		}
+
+		// the generation is part of the key, so results computed for an outdated
+		// generation can never be returned (even if they're put into the cache after it was cleared);
+		// hashing a record hashes its entire tree of components, so that's only done once per key
+		private record Key(Object elementOrStyle, long storeGeneration, int hash) {
+
+			Key(Object elementOrStyle, long storeGeneration) {
+				this(elementOrStyle, storeGeneration, 31 * elementOrStyle.hashCode() + Long.hashCode(storeGeneration));
+			}
+
+			@Override
+			public boolean equals(Object other) {
+				// compare the cheap components first, so unequal trees are rarely compared
+				return other instanceof Key(var otherElementOrStyle, var otherGeneration, var otherHash)
+					   && hash == otherHash
+					   && storeGeneration == otherGeneration
+					   && elementOrStyle.equals(otherElementOrStyle);
+			}
+
+			@Override
+			public int hashCode() {
+				return hash;
+			}
+
+		}
+
+		private static class BoundedMap<VALUE> extends LinkedHashMap<Key, VALUE> {
+
+			private final int capacity;
+
+			private BoundedMap(int capacity) {
+				super(256, 0.75f, true);
+				this.capacity = capacity;
+			}
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, VALUE> eldest) {
+				return size() > capacity;
+			}
+
+		}
+
+	}
+
+}
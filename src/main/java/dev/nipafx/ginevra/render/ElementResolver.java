@@ -38,12 +38,13 @@ import dev.nipafx.ginevra.outline.CustomQueryElement;
 import dev.nipafx.ginevra.outline.Query.CollectionQuery;
 import dev.nipafx.ginevra.outline.Query.RootQuery;
 import dev.nipafx.ginevra.outline.Template;
+import dev.nipafx.ginevra.render.ElementCache.ResolvedElement;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.function.Predicate;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 import static dev.nipafx.ginevra.html.HtmlElement.body;
@@ -57,22 +58,31 @@ class ElementResolver {
 	private final StoreFront store;
 	private final Path resourceFolder;
 	private final Path cssFolder;
+	private final ElementCache cache;
 
 	public ElementResolver(StoreFront store, Path resourceFolder, Path cssFolder) {
+		this(store, resourceFolder, cssFolder, ElementCache.none());
+	}
+
+	public ElementResolver(StoreFront store, Path resourceFolder, Path cssFolder, ElementCache cache) {
 		this.store = store;
 		this.resourceFolder = resourceFolder;
 		this.cssFolder = cssFolder;
+		this.cache = cache;
 	}
 
 	public HtmlDocumentWithResources resolveToDocument(Element element, Optional<Template<?>> maybeTemplateWithResources) {
-		var resources = new ResourceGatherer(store, resourceFolder, cssFolder);
+		var resources = new ResourceGatherer(store, resourceFolder, cssFolder, cache);
 		maybeTemplateWithResources.ifPresent(resources::includeStyle);
 		var elementResolution = resolve(element, resources);
 
 		var htmlDocument = (elementResolution.size() == 1 && elementResolution.getFirst() instanceof HtmlDocument htmlDoc)
 				? htmlDoc.head(mergeLinksIntoHead(htmlDoc.head(), resources.cssHeadLinks().toList()))
 				: document.body(body.children(elementResolution));
-		return new HtmlDocumentWithResources(htmlDocument, resources.resources().collect(toUnmodifiableSet()));
+		return new HtmlDocumentWithResources(
+				htmlDocument,
+				resources.resources().collect(toUnmodifiableSet()),
+				resources.queries().collect(toUnmodifiableSet()));
 	}
 
 	private Head mergeLinksIntoHead(Head head, List<Link> styles) {
@@ -88,21 +98,21 @@ class ElementResolver {
 
 	// package visible for tests
 	List<KnownElement> resolve(Element element) {
-		return resolve(element, new ResourceGatherer(store, resourceFolder, cssFolder));
+		return resolve(element, new ResourceGatherer(store, resourceFolder, cssFolder, cache));
 	}
 
 	private List<KnownElement> resolve(Element element, ResourceGatherer resources) {
 		return switch (element) {
 			case HtmlElement htmlElement -> {
 				var resolvedElement = switch (htmlElement) {
-					case Anchor el -> el.children(resolveChildren(el.children(), resources));
-					case BlockQuote el -> el.children(resolveChildren(el.children(), resources));
-					case Body el -> el.children(resolveChildren(el.children(), resources));
-					case Code el -> el.children(resolveChildren(el.children(), resources));
-					case Div el -> el.children(resolveChildren(el.children(), resources));
-					case Emphasis el -> el.children(resolveChildren(el.children(), resources));
-					case Head el -> el.children(resolveChildren(el.children(), resources));
-					case Heading el -> el.children(resolveChildren(el.children(), resources));
+					case Anchor el -> withResolvedChildren(el, el.children(), el::children, resources);
+					case BlockQuote el -> withResolvedChildren(el, el.children(), el::children, resources);
+					case Body el -> withResolvedChildren(el, el.children(), el::children, resources);
+					case Code el -> withResolvedChildren(el, el.children(), el::children, resources);
+					case Div el -> withResolvedChildren(el, el.children(), el::children, resources);
+					case Emphasis el -> withResolvedChildren(el, el.children(), el::children, resources);
+					case Head el -> withResolvedChildren(el, el.children(), el::children, resources);
+					case Heading el -> withResolvedChildren(el, el.children(), el::children, resources);
 					case HorizontalRule el -> el;
 					case HtmlDocument doc -> {
 						var head = doc.head() == null
@@ -116,27 +126,21 @@ class ElementResolver {
 					case Image el -> el.src(resources.includeResource(el.src()));
 					case LineBreak el -> el;
 					case Link el -> el;
-					case ListItem el -> el.children(resolveChildren(el.children(), resources));
+					case ListItem el -> withResolvedChildren(el, el.children(), el::children, resources);
 					case Meta el -> el;
-					case OrderedList list -> list.children(list
-							.children().stream()
-							.map(listItem -> listItem.children(listItem
-									.children().stream()
-									.flatMap(listItemChild -> resolve(listItemChild, resources).stream())
-									.toList()))
-							.toList());
-					case Paragraph el -> el.children(resolveChildren(el.children(), resources));
-					case Pre el -> el.children(resolveChildren(el.children(), resources));
+					case OrderedList list -> {
+						var items = resolveListItems(list.children(), resources);
+						yield isUnchanged(list.children(), items) ? list : list.children(items);
+					}
+					case Paragraph el -> withResolvedChildren(el, el.children(), el::children, resources);
+					case Pre el -> withResolvedChildren(el, el.children(), el::children, resources);
 					case Source el -> el.src(resources.includeResource(el.src()));
-					case Span el -> el.children(resolveChildren(el.children(), resources));
-					case Strong el -> el.children(resolveChildren(el.children(), resources));
-					case UnorderedList list -> list.children(list
-							.children().stream()
-							.map(listItem -> listItem.children(listItem
-									.children().stream()
-									.flatMap(listItemChild -> resolve(listItemChild, resources).stream())
-									.toList()))
-							.toList());
+					case Span el -> withResolvedChildren(el, el.children(), el::children, resources);
+					case Strong el -> withResolvedChildren(el, el.children(), el::children, resources);
+					case UnorderedList list -> {
+						var items = resolveListItems(list.children(), resources);
+						yield isUnchanged(list.children(), items) ? list : list.children(items);
+					}
 					case Video el -> el
 							.src(resources.includeResource(el.src()))
 							.poster(resources.includeResource(el.poster()))
@@ -153,23 +157,30 @@ class ElementResolver {
 				case Text text -> List.of(text);
 			};
 			case CustomElement customElement -> {
-				resources.includeStyle(customElement);
-				yield composeChildren(customElement)
-						// a custom element may return a new custom element, so keep resolving
-						.flatMap(resolved -> resolve(resolved, resources).stream())
-						.toList();
+				var resolved = cache.resolveElement(customElement, store.generation(), () -> {
+					// gather the element's resources separately, so they can be cached with its resolution
+					var elementResources = resources.createEmpty();
+					elementResources.includeStyle(customElement);
+					var elements = composeChildren(customElement, elementResources)
+							// a custom element may return a new custom element, so keep resolving
+							.flatMap(child -> resolve(child, elementResources).stream())
+							.toList();
+					return new ResolvedElement(elements, elementResources.gathered());
+				});
+				resources.include(resolved.resources());
+				yield resolved.elements();
 			}
 		};
 	}
 
 	@SuppressWarnings({ "rawtypes", "unchecked" })
-	private Stream<Element> composeChildren(CustomElement customElement) {
+	private Stream<Element> composeChildren(CustomElement customElement, ResourceGatherer resources) {
 		return switch (customElement) {
 			case CustomQueryElement queryElement -> {
+				resources.includeQuery(queryElement.query());
 				var results = switch (queryElement.query()) {
 					case CollectionQuery<?> collectionQuery -> store
-							.query(collectionQuery).stream()
-							.filter(result -> ((Predicate) collectionQuery.filter()).test(result));
+							.query(collectionQuery).stream();
 					case RootQuery<?> rootQuery -> Stream.of(store.query(rootQuery));
 				};
 				yield results
@@ -179,6 +190,34 @@ class ElementResolver {
 		};
 	}
 
+	/**
+	 * Resolves the element's children but returns the element itself if that didn't change any of them,
+	 * so unchanged content keeps its identity (which allows the renderer to reuse its rendered fragment).
+	 */
+	private <ELEMENT extends HtmlElement> ELEMENT withResolvedChildren(
+			ELEMENT element,
+			List<? extends Element> children,
+			Function<List<? extends Element>, ELEMENT> withChildren,
+			ResourceGatherer resources) {
+		var resolvedChildren = resolveChildren(children, resources);
+		return isUnchanged(children, resolvedChildren) ? element : withChildren.apply(resolvedChildren);
+	}
+
+	private List<ListItem> resolveListItems(List<ListItem> items, ResourceGatherer resources) {
+		return items.stream()
+				.map(item -> withResolvedChildren(item, item.children(), item::children, resources))
+				.toList();
+	}
+
+	private static boolean isUnchanged(List<?> elements, List<?> resolvedElements) {
+		if (elements.size() != resolvedElements.size())
+			return false;
+		for (int i = 0; i < elements.size(); i++)
+			if (elements.get(i) != resolvedElements.get(i))
+				return false;
+		return true;
+	}
+
 	private List<KnownElement> resolveChildren(List<? extends Element> children, ResourceGatherer resources) {
 		return children.stream()
 				.flatMap(element -> resolve(element, resources).stream())
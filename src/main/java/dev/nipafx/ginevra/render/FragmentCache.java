@@ -0,0 +1,129 @@
+package dev.nipafx.ginevra.render;
+
+import dev.nipafx.ginevra.html.Element;
+import dev.nipafx.ginevra.render.HtmlRenderer.Fragment;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Caches the rendered HTML of elements that are rendered repeatedly, e.g. because they're part of
+ * a document that appears on several pages or because the {@link ElementCache} reused them.
+ */
+interface FragmentCache {
+
+	/**
+	 * The default capacity in characters (roughly 32 MB of memory).
+	 */
+	long DEFAULT_CAPACITY = 16 * 1024 * 1024;
+
+	static FragmentCache none() {
+		return new NoFragmentCache();
+	}
+
+	static FragmentCache bounded(long capacity) {
+		return new BoundedFragmentCache(capacity);
+	}
+
+	/**
+	 * @return the element's fragment if it's cached or if it should be cached now
+	 * 		(in which case it's rendered with the given function), otherwise an empty {@code Optional}
+	 */
+	Optional<Fragment> get(Element element, Supplier<Fragment> render);
+
+	class NoFragmentCache implements FragmentCache {
+
+		@Override
+		public Optional<Fragment> get(Element element, Supplier<Fragment> render) {
+			return Optional.empty();
+		}
+
+	}
+
+	/**
+	 * Identifies elements by identity, which is cheap to check and correct because elements are immutable.
+	 *
+	 * <p>An element's fragment is only cached when it's rendered for the second time, so content that
+	 * appears only once never makes it into the cache (and evicts nothing). Once the total length of
+	 * all cached fragments exceeds the capacity, the least recently used fragments are evicted.</p>
+	 */
+	class BoundedFragmentCache implements FragmentCache {
+
+		private static final int SEEN_ELEMENTS_CAPACITY = 16 * 1024;
+
+		private final long capacity;
+		private final Map<ElementIdentity, Fragment> fragments;
+		private final Map<ElementIdentity, Boolean> seenElements;
+		private long size;
+
+		private BoundedFragmentCache(long capacity) {
+			if (capacity < 0)
+				throw new IllegalArgumentException("The capacity must not be negative but was " + capacity);
+
+			this.capacity = capacity;
+			this.fragments = new LinkedHashMap<>(256, 0.75f, true);
+			this.seenElements = new LinkedHashMap<>(256, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<ElementIdentity, Boolean> eldest) {
+					return size() > SEEN_ELEMENTS_CAPACITY;
+				}
+			};
+			this.size = 0;
+		}
+
+		@Override
+		public Optional<Fragment> get(Element element, Supplier<Fragment> render) {
+			var identity = new ElementIdentity(element);
+			synchronized (this) {
+				var cached = fragments.get(identity);
+				if (cached != null)
+					return Optional.of(cached);
+
+				var firstSighting = seenElements.put(identity, Boolean.TRUE) == null;
+				if (firstSighting)
+					return Optional.empty();
+			}
+
+			// render outside of the lock, so other threads aren't blocked
+			var fragment = render.get();
+			synchronized (this) {
+				seenElements.remove(identity);
+				var previous = fragments.put(identity, fragment);
+				if (previous != null)
+					size -= previous.html().length();
+				size += fragment.html().length();
+				evictUntilWithinCapacity();
+			}
+			return Optional.of(fragment);
+		}
+
+		private void evictUntilWithinCapacity() {
+			var leastRecentlyUsed = fragments.entrySet().iterator();
+			while (size > capacity && leastRecentlyUsed.hasNext()) {
+				size -= leastRecentlyUsed.next().getValue().html().length();
+				leastRecentlyUsed.remove();
+			}
+		}
+
+	}
+
+	/**
+	 * Wraps an element to compare it by identity instead of equality.
+	 */
+	record ElementIdentity(Element element) {
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof ElementIdentity(var otherElement) && element == otherElement;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(element);
+		}
+
+	}
+
+}
@@ -1,7 +1,17 @@
 package dev.nipafx.ginevra.render;
 
 import dev.nipafx.ginevra.html.HtmlDocument;
+import dev.nipafx.ginevra.outline.Query;
 
 import java.util.Set;
 
-public record HtmlDocumentWithResources(HtmlDocument document, Set<ResourceFile> referencedResources) { }
+/**
+ * @param queries the store queries that were made to resolve the document's custom elements
+ */
+public record HtmlDocumentWithResources(HtmlDocument document, Set<ResourceFile> referencedResources, Set<Query<?>> queries) {
+
+	public HtmlDocumentWithResources(HtmlDocument document, Set<ResourceFile> referencedResources) {
+		this(document, referencedResources, Set.of());
+	}
+
+}
@@ -3,122 +3,256 @@ package dev.nipafx.ginevra.render;
 import dev.nipafx.ginevra.html.Classes;
 import dev.nipafx.ginevra.html.Id;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 class HtmlRenderer {
 
 	private enum State { EMPTY, OPENED, INLINE, CLOSED }
 
-	private final StringBuilder builder = new StringBuilder();
+	// rendering to a `StringBuilder` is the default, but long pages are better
+	// streamed to their destination (e.g. a file) to avoid several copies of the page in memory
+	private final Appendable output;
 	/**
 	 * To render elements without children on one line (e.g. {@code <div></div>}),
 	 * tags are not always followed by a new line; instead this state indicates
 	 * what was previously rendered and then all follow-up actions must check and
 	 * add a newline and indentation accordingly.
 	 */
-	private State state = State.EMPTY;
+	private State state;
 	private int indentation = 0;
+	// only non-null when rendering a fragment, in which case it contains the output's offsets
+	// at which lines are indented (so they can be rebased when the fragment is inserted)
+	private final List<Integer> lineStarts;
+
+	public HtmlRenderer() {
+		this(new StringBuilder());
+	}
+
+	public HtmlRenderer(Appendable output) {
+		this(output, State.EMPTY, null);
+	}
+
+	private HtmlRenderer(Appendable output, State state, List<Integer> lineStarts) {
+		this.output = output;
+		this.state = state;
+		this.lineStarts = lineStarts;
+	}
+
+	/**
+	 * Creates a renderer for a single element that can later be {@link #insertFragment(Fragment) inserted}
+	 * into other renderers at any indentation.
+	 */
+	public static HtmlRenderer forFragment() {
+		// starting "inline" means that the fragment begins with the element's
+		// opening tag (instead of a newline or indentation)
+		return new HtmlRenderer(new StringBuilder(), State.INLINE, new ArrayList<>());
+	}
+
+	public boolean rendersFragment() {
+		return lineStarts != null;
+	}
 
 	public void open(String tag) {
-		open(tag, Id.none(), Classes.none(), Map.of());
+		open(tag, Id.none(), Classes.none());
 	}
 
 	public void open(String tag, Id id, Classes classes) {
-		open(tag, id, classes, Map.of());
+		startTag(tag, id, classes).endOpeningTag();
 	}
 
-	public void open(String tag, Map<String, String> attributes) {
-		open(tag, Id.none(), Classes.none(), attributes);
+	public void selfClosed(String tag) {
+		selfClosed(tag, Id.none(), Classes.none());
+	}
+
+	public void selfClosed(String tag, Id id, Classes classes) {
+		startTag(tag, id, classes).endSelfClosingTag();
 	}
 
-	public void open(String tag, Id id, Classes classes, Map<String, String> attributes) {
-		open(tag, id, classes, attributes, List.of());
+	public HtmlRenderer startTag(String tag) {
+		return startTag(tag, Id.none(), Classes.none());
 	}
 
-	public void open(String tag, Id id, Classes classes, Map<String, String> attributes, List<String> properties) {
+	/**
+	 * Starts an opening or self-closing tag, which can then receive {@link #attribute(String, String) attributes}
+	 * and {@link #property(String) properties} and must be completed with {@link #endOpeningTag()} or
+	 * {@link #endSelfClosingTag()}. Attributes are written straight to the output, so (unlike passing them
+	 * in a map) this doesn't allocate anything.
+	 */
+	public HtmlRenderer startTag(String tag, Id id, Classes classes) {
 		switch (state) {
-			case EMPTY -> builder.repeat("\t", indentation);
-			case OPENED, CLOSED -> builder.append("\n").repeat("\t", indentation);
+			case EMPTY -> indent();
+			case OPENED, CLOSED -> append("\n").indent();
 			case INLINE -> { }
 		}
 
-		builder.append("<").append(tag);
+		append("<").append(tag);
 		attribute("id", id.asString());
-		attribute("class", classes.asCssString());
-		attributes.forEach(this::attribute);
-		properties.forEach(this::property);
-		builder.append(">");
+		classes(classes);
+		return this;
+	}
 
-		indentation++;
-		state = State.OPENED;
+	private void classes(Classes classes) {
+		// like `attribute("class", classes.asCssString())` but without creating that string
+		var names = classes.asList();
+		var noClassWritten = true;
+		for (int i = 0; i < names.size(); i++) {
+			var name = names.get(i);
+			if (name.isBlank())
+				continue;
+
+			append(noClassWritten ? " class=\"" : " ").append(name);
+			noClassWritten = false;
+		}
+		if (!noClassWritten)
+			append("\"");
 	}
 
-	private void attribute(String name, String value) {
+	/**
+	 * Writes the attribute unless the value is {@code null} or blank.
+	 */
+	public HtmlRenderer attribute(String name, String value) {
 		if (value == null || value.isBlank())
-			return;
+			return this;
 
-		builder.append(" ").append(name).append("=\"").append(value).append("\"");
+		return append(" ").append(name).append("=\"").append(value).append("\"");
 	}
 
-	private void property(String name) {
-		builder.append(" ").append(name);
+	/**
+	 * Writes the attribute with the value's string representation unless the value is {@code null}.
+	 */
+	public HtmlRenderer attribute(String name, Object value) {
+		return value == null ? this : attribute(name, value.toString());
 	}
 
-	public void close(String tag) {
-		indentation--;
-		switch (state) {
-			case EMPTY -> throw new IllegalStateException();
-			case OPENED, INLINE -> {
-			}
-			case CLOSED -> builder.append("\n").repeat("\t", indentation);
-		}
-
-		builder.append("</").append(tag).append(">");
-		state = State.CLOSED;
+	public HtmlRenderer property(String name) {
+		return append(" ").append(name);
 	}
 
-	public void selfClosed(String tag, Id id, Classes classes) {
-		selfClosed(tag, id, classes, Map.of());
+	public void endOpeningTag() {
+		append(">");
+		indentation++;
+		state = State.OPENED;
 	}
 
-	public void selfClosed(String tag, Map<String, String> attributes) {
-		selfClosed(tag, Id.none(), Classes.none(), attributes);
+	public void endSelfClosingTag() {
+		append(" />");
+		state = State.CLOSED;
 	}
 
-	public void selfClosed(String tag, Id id, Classes classes, Map<String, String> attributes) {
+	public void close(String tag) {
+		indentation--;
 		switch (state) {
-			case EMPTY -> builder.repeat("\t", indentation);
-			case OPENED, CLOSED -> builder.append("\n").repeat("\t", indentation);
-			case INLINE -> {
+			case EMPTY -> throw new IllegalStateException();
+			case OPENED, INLINE -> {
 			}
+			case CLOSED -> append("\n").indent();
 		}
 
-		builder.append("<").append(tag);
-		attribute("id", id.asString());
-		attribute("class", classes.asCssString());
-		attributes.forEach(this::attribute);
-		builder.append(" />");
-
+		append("</").append(tag).append(">");
 		state = State.CLOSED;
 	}
 
 	public void insertText(String text) {
 		switch (state) {
-			case EMPTY -> builder.repeat("\t", indentation);
+			case EMPTY -> indent();
 			case OPENED, INLINE, CLOSED -> {
 			}
 		}
-		builder.append(text);
+		append(text);
 		state = State.INLINE;
 	}
 
-	public String render() {
+	/**
+	 * Inserts a fragment that was rendered by a renderer {@link #forFragment() created for fragments}
+	 * as if its element were rendered by this renderer.
+	 */
+	public void insertFragment(Fragment fragment) {
+		switch (state) {
+			case EMPTY -> indent();
+			case OPENED, CLOSED -> append("\n").indent();
+			case INLINE -> { }
+		}
+
+		var html = fragment.html();
+		var from = 0;
+		for (int lineStart : fragment.lineStarts()) {
+			// the fragment's lines are indented relative to its element,
+			// so prepend this renderer's indentation to each of them
+			append(html, from, lineStart).indent();
+			from = lineStart;
+		}
+		append(html, from, html.length());
+
+		state = fragment.endsInline() ? State.INLINE : State.CLOSED;
+	}
+
+	public Fragment fragment() {
+		if (!rendersFragment())
+			throw new IllegalStateException("Only renderers created for fragments can return a fragment");
+
+		var lines = lineStarts.stream().mapToInt(Integer::intValue).toArray();
+		return new Fragment(output.toString(), lines, state == State.INLINE);
+	}
+
+	/**
+	 * Completes rendering - no more elements must be rendered after calling this method.
+	 */
+	public void finish() {
 		// closing tags don't end with a newline, so
-		// add one final newline before assembling the result
+		// add one final newline before completing the result
 		if (state == State.CLOSED)
-			builder.append("\n");
+			append("\n");
+	}
+
+	/**
+	 * Completes rendering and returns the result - only available if no output was passed on construction.
+	 */
+	public String render() {
+		if (!(output instanceof StringBuilder builder))
+			throw new IllegalStateException("Only renderers that render to a string can return the result");
+
+		finish();
 		return builder.toString();
 	}
 
+	private HtmlRenderer append(CharSequence text) {
+		try {
+			output.append(text);
+			return this;
+		} catch (IOException ex) {
+			// TODO: handle error
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	private HtmlRenderer append(CharSequence text, int start, int end) {
+		try {
+			output.append(text, start, end);
+			return this;
+		} catch (IOException ex) {
+			// TODO: handle error
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	private HtmlRenderer indent() {
+		if (lineStarts != null)
+			lineStarts.add(((StringBuilder) output).length());
+		for (int i = 0; i < indentation; i++)
+			append("\t");
+		return this;
+	}
+
+	/**
+	 * The rendered HTML of a single element.
+	 *
+	 * @param html the element's HTML, with lines indented relative to the element
+	 * @param lineStarts the offsets in {@code html} at which lines start
+	 * @param endsInline whether the HTML ends with text (as opposed to a closing tag)
+	 */
+	record Fragment(String html, int[] lineStarts, boolean endsInline) { }
+
 }
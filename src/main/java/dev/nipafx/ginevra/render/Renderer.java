@@ -33,24 +33,38 @@ import dev.nipafx.ginevra.html.Text;
 import dev.nipafx.ginevra.html.UnorderedList;
 import dev.nipafx.ginevra.html.Video;
 import dev.nipafx.ginevra.outline.Template;
+import dev.nipafx.ginevra.render.HtmlRenderer.Fragment;
 
 import java.nio.file.Path;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Stream;
-
-import static java.util.function.Predicate.not;
 
 public class Renderer {
 
+	// indexed by heading level, so tags don't need to be created while rendering
+	private static final String[] HEADING_TAGS = { null, "h1", "h2", "h3", "h4", "h5", "h6" };
+
 	private final ElementResolver resolver;
+	private final FragmentCache fragments;
 
 	public Renderer(StoreFront store, Path resourceFolder, Path cssFolder) {
-		this.resolver = new ElementResolver(store, resourceFolder, cssFolder);
+		this(store, resourceFolder, cssFolder, false);
+	}
+
+	/**
+	 * @param pureElements whether custom elements and CSS styles are "pure", i.e. whether equal instances always
+	 * 		resolve to the same result (given the same store content) - if so, results are reused across pages
+	 */
+	public Renderer(StoreFront store, Path resourceFolder, Path cssFolder, boolean pureElements) {
+		this(store, resourceFolder, cssFolder, pureElements, FragmentCache.bounded(FragmentCache.DEFAULT_CAPACITY));
+	}
+
+	// package visible for benchmarks
+	Renderer(StoreFront store, Path resourceFolder, Path cssFolder, boolean pureElements, FragmentCache fragments) {
+		var cache = pureElements ? ElementCache.memoizing() : ElementCache.none();
+		this.resolver = new ElementResolver(store, resourceFolder, cssFolder, cache);
+		this.fragments = fragments;
 	}
 
 	public HtmlWithResources renderAsHtml(Element element, Template<?> maybeStyledTemplate) {
@@ -68,6 +82,15 @@ public class Renderer {
 		return new HtmlWithResources(html.render(), referencedResources);
 	}
 
+	/**
+	 * Renders the document straight to the given output (instead of first assembling it in memory).
+	 */
+	public void renderAsHtml(HtmlDocument document, Appendable output) {
+		var html = new HtmlRenderer(output);
+		writeToRenderer(document, html);
+		html.finish();
+	}
+
 	// package visible for tests
 	String render(Element element) {
 		var html = new HtmlRenderer();
@@ -78,11 +101,44 @@ public class Renderer {
 	}
 
 	private void writeToRenderer(Element element, HtmlRenderer html) {
+		// fragments are only used outside of other fragments (instead of being inserted into them),
+		// so each fragment contains the entire HTML of its element and no HTML is copied repeatedly
+		if (isFragmentCandidate(element) && !html.rendersFragment()) {
+			var fragment = fragments.get(element, () -> renderFragment(element));
+			if (fragment.isPresent()) {
+				html.insertFragment(fragment.get());
+				return;
+			}
+		}
+
+		writeElement(element, html);
+	}
+
+	private static boolean isFragmentCandidate(Element element) {
+		// only block elements with children are worth caching
+		// (the document and its head and body are unique to each page)
+		return switch (element) {
+			case BlockQuote _, Div _, OrderedList _, Paragraph _, Pre _, UnorderedList _ -> true;
+			default -> false;
+		};
+	}
+
+	private Fragment renderFragment(Element element) {
+		var html = HtmlRenderer.forFragment();
+		writeElement(element, html);
+		return html.fragment();
+	}
+
+	private void writeElement(Element element, HtmlRenderer html) {
 		switch (element) {
 			case HtmlElement htmlElement -> {
 				switch (htmlElement) {
 					case Anchor(var id, var classes, var href, var title, var text, var children) -> {
-						html.open("a", id, classes, attributes("href", href, "title", title));
+						html
+								.startTag("a", id, classes)
+								.attribute("href", href)
+								.attribute("title", title)
+								.endOpeningTag();
 						renderChildren(text, children, html);
 						html.close("a");
 					}
@@ -114,7 +170,10 @@ public class Renderer {
 					case Head(var title, var charset, var children) -> {
 						html.open("head");
 						if (charset != null)
-							html.selfClosed("meta", attributes("charset", charset.name()));
+							html
+									.startTag("meta")
+									.attribute("charset", charset.name())
+									.endSelfClosingTag();
 						if (title != null) {
 							html.open("title");
 							html.insertText(title);
@@ -124,34 +183,50 @@ public class Renderer {
 						html.close("head");
 					}
 					case Heading(var level, var id, var classes, var text, var children) -> {
-						html.open("h" + level, id, classes);
+						html.open(HEADING_TAGS[level], id, classes);
 						renderChildren(text, children, html);
-						html.close("h" + level);
+						html.close(HEADING_TAGS[level]);
 					}
 					case HtmlDocument(var language, var head, var body) -> {
 						html.insertText("<!doctype html>\n");
-						var lang = language == null
-								? attributes()
-								: attributes("lang", language.getLanguage());
-						html.open("html", lang);
-						var children = Stream.of(head, body).filter(not(Objects::isNull)).toList();
-						renderChildren(children, html);
+						html
+								.startTag("html")
+								.attribute("lang", language == null ? null : language.getLanguage())
+								.endOpeningTag();
+						if (head != null)
+							writeToRenderer(head, html);
+						if (body != null)
+							writeToRenderer(body, html);
 						html.close("html");
 					}
 					case HorizontalRule(var id, var classes) -> html.selfClosed("hr", id, classes);
 					case Image(var id, var classes, var src, var title, var alt) -> html
-							.selfClosed("img", id, classes,
-									attributes("src", src.path(), "title", title, "alt", alt));
+							.startTag("img", id, classes)
+							.attribute("src", src.path())
+							.attribute("title", title)
+							.attribute("alt", alt)
+							.endSelfClosingTag();
 					case LineBreak(var id, var classes) -> html.selfClosed("br", id, classes);
-					case Link(var href, var rel) -> html.selfClosed("link", attributes("href", href, "rel", rel));
+					case Link(var href, var rel) -> html
+							.startTag("link")
+							.attribute("href", href)
+							.attribute("rel", rel)
+							.endSelfClosingTag();
 					case ListItem(var id, var classes, var text, var children) -> {
 						html.open("li", id, classes);
 						renderChildren(text, children, html);
 						html.close("li");
 					}
-					case Meta(var name, var content) -> html.selfClosed("meta", attributes("name", name, "content", content));
+					case Meta(var name, var content) -> html
+							.startTag("meta")
+							.attribute("name", name)
+							.attribute("content", content)
+							.endSelfClosingTag();
 					case OrderedList(var id, var classes, var start, var children) -> {
-						html.open("ol", id, classes, attributes("start", start));
+						html
+								.startTag("ol", id, classes)
+								.attribute("start", start)
+								.endOpeningTag();
 						renderChildren(children, html);
 						html.close("ol");
 					}
@@ -165,7 +240,11 @@ public class Renderer {
 						renderChildren(text, children, html);
 						html.close("pre");
 					}
-					case Source(var src, var type) -> html.selfClosed("source", attributes("src", src.path(), "type", type));
+					case Source(var src, var type) -> html
+							.startTag("source")
+							.attribute("src", src.path())
+							.attribute("type", type)
+							.endSelfClosingTag();
 					case Span(var id, var classes, var text, var children) -> {
 						html.open("span", id, classes);
 						renderChildren(text, children, html);
@@ -186,14 +265,22 @@ public class Renderer {
 							var autoplay, var loop, var muted, var playInline,
 							var controls, var disablePictureInPicture, var disableRemotePlayback,
 							var children) -> {
-						var attributes = attributes(
-								"src", src.path(), "height", height, "width", width, "poster", poster.path(), "preload", preload,
-								"autoplay", autoplay, "loop", loop, "muted", muted, "playinline", playInline,
-								"disablepictureinpicture", disablePictureInPicture, "disableremoteplayback", disableRemotePlayback);
-						var properties = controls != null && controls
-								? List.of("controls")
-								: List.<String> of();
-						html.open("video", id, classes, attributes, properties);
+						html
+								.startTag("video", id, classes)
+								.attribute("src", src.path())
+								.attribute("height", height)
+								.attribute("width", width)
+								.attribute("poster", poster.path())
+								.attribute("preload", preload)
+								.attribute("autoplay", autoplay)
+								.attribute("loop", loop)
+								.attribute("muted", muted)
+								.attribute("playinline", playInline)
+								.attribute("disablepictureinpicture", disablePictureInPicture)
+								.attribute("disableremoteplayback", disableRemotePlayback);
+						if (controls != null && controls)
+							html.property("controls");
+						html.endOpeningTag();
 						renderChildren(children, html);
 						html.close("video");
 					}
@@ -220,21 +307,8 @@ public class Renderer {
 	}
 
 	private void renderChildren(List<? extends Element> children, HtmlRenderer renderer) {
-		children.forEach(child -> writeToRenderer(child, renderer));
-	}
-
-	private static Map<String, String> attributes(Object... namesAndValues) {
-		if (namesAndValues.length % 2 != 0)
-			throw new IllegalArgumentException();
-
-		var attributes = new LinkedHashMap<String, String>();
-		for (int i = 0; i < namesAndValues.length; i += 2) {
-			if (!(namesAndValues[i] instanceof String name))
-				throw new IllegalArgumentException();
-			var value = namesAndValues[i + 1] == null ? null : namesAndValues[i + 1].toString();
-			attributes.put(name, value);
-		}
-		return attributes;
+		for (int i = 0; i < children.size(); i++)
+			writeToRenderer(children.get(i), renderer);
 	}
 
 }
@@ -1,21 +1,24 @@
 package dev.nipafx.ginevra.render;
 
+import dev.nipafx.ginevra.css.CssStyle;
 import dev.nipafx.ginevra.css.CssStyled;
 import dev.nipafx.ginevra.execution.StoreFront;
 import dev.nipafx.ginevra.html.CustomElement;
 import dev.nipafx.ginevra.html.Link;
 import dev.nipafx.ginevra.html.Src;
+import dev.nipafx.ginevra.outline.Query;
 import dev.nipafx.ginevra.outline.ReSrc;
 import dev.nipafx.ginevra.outline.Template;
 import dev.nipafx.ginevra.render.ResourceFile.CopiedFile;
 import dev.nipafx.ginevra.render.ResourceFile.CssFile;
 import dev.nipafx.ginevra.util.SHA256;
 
-import java.io.IOException;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Stream;
 
 import static dev.nipafx.ginevra.html.HtmlElement.link;
@@ -25,17 +28,25 @@ class ResourceGatherer {
 	private final StoreFront store;
 	private final Path resourceFolder;
 	private final Path cssFolder;
+	private final ElementCache cache;
 
 	private final Map<String, CopiedFile> resources;
 	private final Map<String, CssFile> cssFiles;
+	private final Set<Query<?>> queries;
 
 	public ResourceGatherer(StoreFront store, Path resourceFolder, Path cssFolder) {
+		this(store, resourceFolder, cssFolder, ElementCache.none());
+	}
+
+	public ResourceGatherer(StoreFront store, Path resourceFolder, Path cssFolder, ElementCache cache) {
 		this.store = store;
 		this.resourceFolder = resourceFolder;
 		this.cssFolder = cssFolder;
+		this.cache = cache;
 
 		this.resources = new HashMap<>();
 		this.cssFiles = new HashMap<>();
+		this.queries = new HashSet<>();
 	}
 
 	public void includeStyle(Template<?> template) {
@@ -51,10 +62,19 @@ class ResourceGatherer {
 			return;
 
 		var style = styled.style();
+		var styleResources = cache.resolveStyle(style, store.generation(), () -> {
+			var gatherer = createEmpty();
+			gatherer.includeCss(style);
+			return gatherer.gathered();
+		});
+		include(styleResources);
+	}
+
+	private void includeCss(CssStyle style) {
 		var css = style.css().replaceSources(this::includeResource).interpolateSources();
 		var contentHash = SHA256.hash(css);
 		cssFiles.computeIfAbsent(contentHash, _ -> {
-			var file = Path.of(computeCssFileName(style, contentHash));
+			var file = Path.of(computeCssFileName((Record) style, contentHash));
 			return new CssFile(cssFolder.resolve(file), css);
 		});
 	}
@@ -79,11 +99,18 @@ class ResourceGatherer {
 		});
 	}
 
+	/**
+	 * Records a query that was made to compose the elements (so whoever uses them knows what they depend on).
+	 */
+	public void includeQuery(Query<?> query) {
+		queries.add(query);
+	}
+
 	private static String computeResourceFileName(Path sourceFile, String resourceName) {
 		var contentHash = "";
 		try {
-			contentHash = "--" + SHA256.hash(Files.readAllBytes(sourceFile));
-		} catch (IOException ex) {
+			contentHash = "--" + SHA256.hash(sourceFile);
+		} catch (UncheckedIOException ex) {
 			// TODO: handle error
 			ex.printStackTrace();
 		}
@@ -102,10 +129,31 @@ class ResourceGatherer {
 		return targetName + contentHash + fileEnding;
 	}
 
+	/**
+	 * @return a new gatherer for the same store and folders that hasn't gathered any resources, yet
+	 */
+	public ResourceGatherer createEmpty() {
+		return new ResourceGatherer(store, resourceFolder, cssFolder, cache);
+	}
+
+	public GatheredResources gathered() {
+		return new GatheredResources(Map.copyOf(resources), Map.copyOf(cssFiles), Set.copyOf(queries));
+	}
+
+	public void include(GatheredResources gathered) {
+		resources.putAll(gathered.resources());
+		cssFiles.putAll(gathered.cssFiles());
+		queries.addAll(gathered.queries());
+	}
+
 	public Stream<ResourceFile> resources() {
 		return Stream.concat(resources.values().stream(), cssFiles.values().stream());
 	}
 
+	public Stream<Query<?>> queries() {
+		return queries.stream();
+	}
+
 	public Stream<Link> cssHeadLinks() {
 		return cssFiles
 				.values().stream()
@@ -114,4 +162,11 @@ class ResourceGatherer {
 						.rel("stylesheet"));
 	}
 
+	/**
+	 * @param resources copied files by resource name
+	 * @param cssFiles CSS files by content hash
+	 * @param queries the store queries that were made to compose the elements
+	 */
+	record GatheredResources(Map<String, CopiedFile> resources, Map<String, CssFile> cssFiles, Set<Query<?>> queries) { }
+
 }
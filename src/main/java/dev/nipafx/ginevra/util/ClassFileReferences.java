@@ -0,0 +1,179 @@
+package dev.nipafx.ginevra.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Determines which classes a class file references by reading its constant pool.
+ *
+ * <p>This finds the classes that are used in code, field and method signatures, annotations, etc.
+ * but not those whose compile-time constants (e.g. {@code static final String}) were inlined.
+ * To account for that, {@link #definesConstants(byte[])} tells whether a class has such constants.
+ * Classes also depend on their supertypes' supertypes without referencing them, which is why
+ * {@link #supertypes(byte[])} tells the direct ones, so the hierarchy can be followed.</p>
+ */
+class ClassFileReferences {
+
+	// e.g. `Ljava/lang/String;` in descriptors or `Ljava/util/List<` in generic signatures
+	private static final Pattern TYPE_IN_DESCRIPTOR = Pattern.compile("L([^;<\\[\\s]+)[;<]");
+	private static final int ACC_PRIVATE = 0x0002;
+
+	/**
+	 * @return the binary names (e.g. {@code java.util.Map$Entry}) of (a superset of) the referenced classes
+	 * @throws IllegalArgumentException if the byte array isn't a valid class file
+	 */
+	static Set<String> referencedClasses(byte[] classFile) {
+		try {
+			var in = new DataInputStream(new ByteArrayInputStream(classFile));
+			return referencedClasses(readConstantPool(in));
+		} catch (IOException ex) {
+			// reading from a byte array only fails if the class file is truncated
+			throw new IllegalArgumentException("Invalid class file", new UncheckedIOException(ex));
+		}
+	}
+
+	/**
+	 * Other classes inline the values of compile-time constants, so their class files don't reference
+	 * the class that defines them. (Private constants are ignored because they can only be used by the
+	 * class itself and its nestmates, which are defined in the same source file.)
+	 *
+	 * @return whether the class has non-private fields with compile-time constant values
+	 * @throws IllegalArgumentException if the byte array isn't a valid class file
+	 */
+	static boolean definesConstants(byte[] classFile) {
+		try {
+			var in = new DataInputStream(new ByteArrayInputStream(classFile));
+			var constantPool = readConstantPool(in);
+			return readDefinesConstants(in, constantPool);
+		} catch (IOException ex) {
+			// reading from a byte array only fails if the class file is truncated
+			throw new IllegalArgumentException("Invalid class file", new UncheckedIOException(ex));
+		}
+	}
+
+	/**
+	 * @return the binary names of the class's superclass (unless it's {@code java.lang.Object}) and interfaces
+	 * @throws IllegalArgumentException if the byte array isn't a valid class file
+	 */
+	static Set<String> supertypes(byte[] classFile) {
+		try {
+			var in = new DataInputStream(new ByteArrayInputStream(classFile));
+			var constantPool = readConstantPool(in);
+			return readSupertypes(in, constantPool);
+		} catch (IOException ex) {
+			// reading from a byte array only fails if the class file is truncated
+			throw new IllegalArgumentException("Invalid class file", new UncheckedIOException(ex));
+		}
+	}
+
+	private static ConstantPool readConstantPool(DataInputStream in) throws IOException {
+		if (in.readInt() != 0xCAFEBABE)
+			throw new IllegalArgumentException("Invalid class file (wrong magic number)");
+		// minor and major version
+		in.skipBytes(4);
+
+		var constantCount = in.readUnsignedShort();
+		var utf8Constants = new String[constantCount];
+		// for each Class constant, the index of its name (0 for other constants)
+		var classNameIndices = new int[constantCount];
+		// the constant pool's indices start at 1
+		for (int index = 1; index < constantCount; index++) {
+			var tag = in.readUnsignedByte();
+			switch (tag) {
+				case 1 -> utf8Constants[index] = in.readUTF();
+				case 7 -> classNameIndices[index] = in.readUnsignedShort();
+				// Integer, Float
+				case 3, 4 -> in.skipBytes(4);
+				// Long, Double (which take up two entries)
+				case 5, 6 -> {
+					in.skipBytes(8);
+					index++;
+				}
+				// String, MethodType, Module, Package
+				case 8, 16, 19, 20 -> in.skipBytes(2);
+				// Fieldref, Methodref, InterfaceMethodref, NameAndType, Dynamic, InvokeDynamic
+				case 9, 10, 11, 12, 17, 18 -> in.skipBytes(4);
+				// MethodHandle
+				case 15 -> in.skipBytes(3);
+				default -> throw new IllegalArgumentException("Invalid class file (unknown constant pool tag %d)".formatted(tag));
+			}
+		}
+		return new ConstantPool(utf8Constants, classNameIndices);
+	}
+
+	private static Set<String> referencedClasses(ConstantPool constantPool) {
+		var classes = new HashSet<String>();
+		for (int classNameIndex : constantPool.classNameIndices()) {
+			if (classNameIndex == 0)
+				continue;
+			var className = constantPool.utf8Constants()[classNameIndex];
+			// array classes are named by their descriptor, which is covered below
+			if (className != null && !className.startsWith("["))
+				classes.add(toBinaryName(className));
+		}
+		for (String constant : constantPool.utf8Constants()) {
+			if (constant == null)
+				continue;
+			var types = TYPE_IN_DESCRIPTOR.matcher(constant);
+			while (types.find())
+				classes.add(toBinaryName(types.group(1)));
+		}
+		return classes;
+	}
+
+	private static Set<String> readSupertypes(DataInputStream in, ConstantPool constantPool) throws IOException {
+		// access flags, this class
+		in.skipBytes(4);
+		var supertypes = new HashSet<String>();
+		// only `java.lang.Object` has no superclass (index 0)
+		var superclassIndex = in.readUnsignedShort();
+		if (superclassIndex != 0)
+			supertypes.add(constantPool.className(superclassIndex));
+		var interfaceCount = in.readUnsignedShort();
+		for (int interfaceIndex = 0; interfaceIndex < interfaceCount; interfaceIndex++)
+			supertypes.add(constantPool.className(in.readUnsignedShort()));
+		supertypes.remove("java.lang.Object");
+		return supertypes;
+	}
+
+	private static boolean readDefinesConstants(DataInputStream in, ConstantPool constantPool) throws IOException {
+		// access flags, this class, super class
+		in.skipBytes(6);
+		var interfaceCount = in.readUnsignedShort();
+		in.skipBytes(2 * interfaceCount);
+
+		var fieldCount = in.readUnsignedShort();
+		for (int field = 0; field < fieldCount; field++) {
+			var accessFlags = in.readUnsignedShort();
+			// name and descriptor
+			in.skipBytes(4);
+			var attributeCount = in.readUnsignedShort();
+			for (int attribute = 0; attribute < attributeCount; attribute++) {
+				var name = constantPool.utf8Constants()[in.readUnsignedShort()];
+				var length = in.readInt();
+				if ("ConstantValue".equals(name) && (accessFlags & ACC_PRIVATE) == 0)
+					return true;
+				in.skipBytes(length);
+			}
+		}
+		return false;
+	}
+
+	private static String toBinaryName(String internalName) {
+		return internalName.replace('/', '.');
+	}
+
+	private record ConstantPool(String[] utf8Constants, int[] classNameIndices) {
+
+		String className(int classIndex) {
+			return toBinaryName(utf8Constants[classNameIndices[classIndex]]);
+		}
+
+	}
+
+}
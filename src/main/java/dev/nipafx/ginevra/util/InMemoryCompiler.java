@@ -9,65 +9,241 @@ import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
 import javax.tools.JavaFileObject.Kind;
 import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
 import javax.tools.ToolProvider;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StringWriter;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
 
+import static java.util.Collections.disjoint;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.mapping;
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
 import static java.util.stream.Collectors.toUnmodifiableMap;
+import static java.util.stream.Collectors.toUnmodifiableSet;
 
+/**
+ * Compiles all Java sources in a folder to class files in memory.
+ *
+ * <p>The compiler remembers the last successful compilation (and keeps its file manager warm), so the next one
+ * only needs to compile the sources that were added or changed since then plus those whose classes reference
+ * or (transitively) inherit from classes of changed or removed sources (or reference such subclasses).
+ * All other classes are passed to the compiler as they are.
+ * Only when a changed or removed source defined compile-time constants, which other classes inline without
+ * referencing their class, all sources are compiled.</p>
+ */
 public class InMemoryCompiler {
 
 	private final Path sourceRoot;
 	private final JavaCompiler compiler;
+	private final StandardJavaFileManager standardFileManager;
+
+	// the state after the last successful compilation
+	private Map<Path, CompiledSource> sources;
+	private Map<String, byte[]> classes;
+	private Map<String, Set<String>> referencesByClass;
+	private Map<String, Set<String>> supertypesByClass;
 
 	public InMemoryCompiler(Path sourceRoot) {
 		this.sourceRoot = sourceRoot;
 		this.compiler = ToolProvider.getSystemJavaCompiler();
+		// creating a file manager (which, e.g., opens the JDK's modules) is expensive, so it's reused
+		this.standardFileManager = compiler.getStandardFileManager(null, null, null);
+		this.sources = Map.of();
+		this.classes = Map.of();
+		this.referencesByClass = Map.of();
+		this.supertypesByClass = Map.of();
 	}
 
-	public Compilation compileSources() {
+	public synchronized Compilation compileSources() {
+		var currentSources = findSources(sourceRoot);
+		var removedSources = sources.keySet().stream()
+				.filter(source -> !currentSources.containsKey(source))
+				.collect(toSet());
+		var sourcesToCompile = sourcesToCompile(currentSources, removedSources);
+		var outdatedClasses = Stream
+				.concat(sourcesToCompile.stream(), removedSources.stream())
+				.filter(sources::containsKey)
+				.flatMap(source -> sources.get(source).classNames().stream())
+				.collect(toSet());
+		var retainedClasses = classes
+				.entrySet().stream()
+				.filter(type -> !outdatedClasses.contains(type.getKey()))
+				.collect(toUnmodifiableMap(Entry::getKey, Entry::getValue));
+
 		var additionalOutput = new StringWriter();
 		var diagnostics = new DiagnosticCollector<>();
-		var fileManager = new InMemoryJavaFileManager(compiler.getStandardFileManager(diagnostics, null, null));
+		var fileManager = new InMemoryJavaFileManager(standardFileManager, retainedClasses);
 		var options = List.of("--enable-preview", "--release", Runtime.version().feature() + "");
 		var classesForAnnotationProcessing = List.<String> of();
-		var sourceFiles = filesToCompile(sourceRoot);
-		var compilationTask = compiler
-				.getTask(additionalOutput, fileManager, diagnostics, options, classesForAnnotationProcessing, sourceFiles);
+		var sourceFiles = sourcesToCompile.stream().map(JavaSourceFile::new).toList();
+		var success = sourceFiles.isEmpty() || compiler
+				.getTask(additionalOutput, fileManager, diagnostics, options, classesForAnnotationProcessing, sourceFiles)
+				.call();
+		if (!success)
+			// the state isn't updated, so the next compilation will try these sources again
+			return new FailedCompilation(diagnostics.getDiagnostics(), additionalOutput.toString());
 
-		var success = compilationTask.call();
-		var classes = fileManager
+		var compiledClasses = fileManager
 				.classFiles
 				.entrySet().stream()
 				.collect(toUnmodifiableMap(Entry::getKey, entry -> entry.getValue().toByteArray()));
-		return success
-				? new SuccessfulCompilation(diagnostics.getDiagnostics(), additionalOutput.toString(), classes)
-				: new FailedCompilation(diagnostics.getDiagnostics(), additionalOutput.toString());
+		updateState(currentSources, sourcesToCompile, removedSources, retainedClasses, fileManager.sourcesByClass, compiledClasses);
+		return new SuccessfulCompilation(
+				diagnostics.getDiagnostics(), additionalOutput.toString(), classes, compiledClasses.keySet());
+	}
+
+	private Set<Path> sourcesToCompile(Map<Path, FileVersion> currentSources, Set<Path> removedSources) {
+		var changedSources = currentSources
+				.entrySet().stream()
+				.filter(source -> !sources.containsKey(source.getKey())
+						|| !sources.get(source.getKey()).version().equals(source.getValue()))
+				.map(Entry::getKey)
+				.collect(toSet());
+		var changedConstants = Stream
+				.concat(changedSources.stream(), removedSources.stream())
+				.filter(sources::containsKey)
+				.anyMatch(source -> sources.get(source).definesConstants());
+		if (changedConstants)
+			return new HashSet<>(currentSources.keySet());
+
+		var changedClasses = Stream
+				.concat(changedSources.stream(), removedSources.stream())
+				.filter(sources::containsKey)
+				.flatMap(source -> sources.get(source).classNames().stream())
+				.collect(toSet());
+		// a subclass doesn't necessarily reference its supertypes' supertypes, but it can break
+		// when they change (e.g. when an inherited method becomes abstract), so it's affected, too
+		var affectedClasses = withSubtypes(changedClasses);
+		var sourcesByClass = sourcesByClass();
+		var dependentSources = referencesByClass
+				.entrySet().stream()
+				.filter(type -> affectedClasses.contains(type.getKey()) || !disjoint(type.getValue(), affectedClasses))
+				.map(type -> sourcesByClass.get(type.getKey()))
+				.filter(currentSources::containsKey)
+				.collect(toSet());
+
+		var sourcesToCompile = new HashSet<>(changedSources);
+		sourcesToCompile.addAll(dependentSources);
+		return sourcesToCompile;
+	}
+
+	private Set<String> withSubtypes(Set<String> classes) {
+		var withSubtypes = new HashSet<>(classes);
+		var added = true;
+		while (added) {
+			added = false;
+			for (var type : supertypesByClass.entrySet())
+				if (!withSubtypes.contains(type.getKey()) && !disjoint(type.getValue(), withSubtypes))
+					added |= withSubtypes.add(type.getKey());
+		}
+		return withSubtypes;
 	}
 
-	private static List<? extends JavaFileObject> filesToCompile(Path sourceRoot) {
+	private Map<String, Path> sourcesByClass() {
+		return sources
+				.entrySet().stream()
+				.flatMap(source -> source
+						.getValue()
+						.classNames().stream()
+						.map(className -> Map.entry(className, source.getKey())))
+				.collect(toMap(Entry::getKey, Entry::getValue));
+	}
+
+	private void updateState(
+			Map<Path, FileVersion> currentSources,
+			Set<Path> compiledSources,
+			Set<Path> removedSources,
+			Map<String, byte[]> retainedClasses,
+			Map<String, Path> sourcesOfCompiledClasses,
+			Map<String, byte[]> compiledClasses) {
+		var newSources = new HashMap<>(sources);
+		newSources.keySet().removeAll(removedSources);
+		var classNamesBySource = sourcesOfCompiledClasses
+				.entrySet().stream()
+				.collect(groupingBy(Entry::getValue, mapping(Entry::getKey, toUnmodifiableSet())));
+		compiledSources.forEach(source -> {
+			var classNames = classNamesBySource.getOrDefault(source, Set.of());
+			var definesConstants = classNames.stream()
+					.anyMatch(className -> ClassFileReferences.definesConstants(compiledClasses.get(className)));
+			newSources.put(source, new CompiledSource(currentSources.get(source), classNames, definesConstants));
+		});
+
+		var newClasses = new HashMap<>(retainedClasses);
+		newClasses.putAll(compiledClasses);
+		var newReferences = new HashMap<>(referencesByClass);
+		newReferences.keySet().retainAll(retainedClasses.keySet());
+		compiledClasses.forEach((className, byteCode) -> newReferences.put(
+				className,
+				// only references to the site's own classes are of interest
+				ClassFileReferences
+						.referencedClasses(byteCode).stream()
+						.filter(referencedClass -> !referencedClass.equals(className))
+						.filter(referencedClass -> retainedClasses.containsKey(referencedClass) || compiledClasses.containsKey(referencedClass))
+						.collect(toUnmodifiableSet())));
+		var newSupertypes = new HashMap<>(supertypesByClass);
+		newSupertypes.keySet().retainAll(retainedClasses.keySet());
+		compiledClasses.forEach((className, byteCode) -> newSupertypes.put(
+				className,
+				// like references, only the site's own supertypes are of interest
+				ClassFileReferences
+						.supertypes(byteCode).stream()
+						.filter(supertype -> retainedClasses.containsKey(supertype) || compiledClasses.containsKey(supertype))
+						.collect(toUnmodifiableSet())));
+
+		sources = Map.copyOf(newSources);
+		classes = Map.copyOf(newClasses);
+		referencesByClass = Map.copyOf(newReferences);
+		supertypesByClass = Map.copyOf(newSupertypes);
+	}
+
+	private static Map<Path, FileVersion> findSources(Path sourceRoot) {
 		try (var files = Files
 				.find(sourceRoot, Integer.MAX_VALUE, (path, _) -> path.getFileName().toString().endsWith(Kind.SOURCE.extension))) {
 			return files
-					.map(JavaSourceFile::new)
-					.toList();
+					.collect(toUnmodifiableMap(file -> file, InMemoryCompiler::versionOf));
+		} catch (IOException ex) {
+			// TODO: handle error
+			ex.printStackTrace();
+			return Map.of();
+		}
+	}
+
+	private static FileVersion versionOf(Path file) {
+		try {
+			var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			return new FileVersion(attributes.lastModifiedTime(), attributes.size());
 		} catch (IOException ex) {
 			// TODO: handle error
 			ex.printStackTrace();
-			return List.of();
+			// a version that doesn't equal any other, so the file is compiled (which will report the error)
+			return new FileVersion(FileTime.fromMillis(System.nanoTime()), -1);
 		}
 	}
 
+	private record FileVersion(FileTime lastModified, long size) { }
+	private record CompiledSource(FileVersion version, Set<String> classNames, boolean definesConstants) { }
+
 	private static class JavaSourceFile extends SimpleJavaFileObject {
 
 		private final Path file;
@@ -86,7 +262,9 @@ public class InMemoryCompiler {
 
 	private static class JavaClassFile extends SimpleJavaFileObject {
 
+		private final String className;
 		private final ByteArrayOutputStream outputStream;
+		private final byte[] byteCode;
 
 		JavaClassFile(String className, Kind kind) {
 			if (kind != Kind.CLASS)
@@ -94,16 +272,44 @@ public class InMemoryCompiler {
 			var objectUri = "class:///%s%s".formatted(className.replace('.', '/'), kind.extension);
 			super(URI.create(objectUri), kind);
 
+			this.className = className;
 			this.outputStream = new ByteArrayOutputStream();
+			this.byteCode = null;
+		}
+
+		// a class file from an earlier compilation
+		JavaClassFile(String className, byte[] byteCode) {
+			var objectUri = "class:///%s%s".formatted(className.replace('.', '/'), Kind.CLASS.extension);
+			super(URI.create(objectUri), Kind.CLASS);
+
+			this.className = className;
+			this.outputStream = null;
+			this.byteCode = byteCode;
 		}
 
 		@Override
 		public OutputStream openOutputStream() {
+			if (outputStream == null)
+				throw new IllegalStateException("Class files from earlier compilations can't be written");
 			return outputStream;
 		}
 
+		@Override
+		public InputStream openInputStream() {
+			return new ByteArrayInputStream(toByteArray());
+		}
+
+		public String className() {
+			return className;
+		}
+
+		public String packageName() {
+			var lastDot = className.lastIndexOf('.');
+			return lastDot < 0 ? "" : className.substring(0, lastDot);
+		}
+
 		public byte[] toByteArray() {
-			return outputStream.toByteArray();
+			return byteCode != null ? byteCode : outputStream.toByteArray();
 		}
 
 	}
@@ -111,9 +317,40 @@ public class InMemoryCompiler {
 	private static class InMemoryJavaFileManager extends ForwardingJavaFileManager<JavaFileManager> {
 
 		private final ConcurrentMap<String, JavaClassFile> classFiles = new ConcurrentHashMap<>();
+		private final ConcurrentMap<String, Path> sourcesByClass = new ConcurrentHashMap<>();
+		private final Map<String, List<JavaClassFile>> earlierClassFilesByPackage;
 
-		InMemoryJavaFileManager(JavaFileManager fileManager) {
+		InMemoryJavaFileManager(JavaFileManager fileManager, Map<String, byte[]> earlierClasses) {
 			super(fileManager);
+			this.earlierClassFilesByPackage = earlierClasses
+					.entrySet().stream()
+					.map(type -> new JavaClassFile(type.getKey(), type.getValue()))
+					.collect(groupingBy(JavaClassFile::packageName));
+		}
+
+		@Override
+		public Iterable<JavaFileObject> list(Location location, String packageName, Set<Kind> kinds, boolean recurse) throws IOException {
+			var files = super.list(location, packageName, kinds, recurse);
+			if (location != StandardLocation.CLASS_PATH || !kinds.contains(Kind.CLASS))
+				return files;
+
+			// class files from earlier compilations come first, so they take precedence over
+			// (possibly outdated) class files of the same name on the class path
+			var allFiles = new ArrayList<JavaFileObject>();
+			earlierClassFilesByPackage
+					.entrySet().stream()
+					.filter(pack -> pack.getKey().equals(packageName) || (recurse && pack.getKey().startsWith(packageName + ".")))
+					.map(Entry::getValue)
+					.forEach(allFiles::addAll);
+			files.forEach(allFiles::add);
+			return allFiles;
+		}
+
+		@Override
+		public String inferBinaryName(Location location, JavaFileObject file) {
+			if (file instanceof JavaClassFile classFile)
+				return classFile.className();
+			return super.inferBinaryName(location, file);
 		}
 
 		@Override
@@ -122,13 +359,23 @@ public class InMemoryCompiler {
 			var previous = classFiles.put(className, classFile);
 			if (previous != null)
 				throw new IllegalStateException("Two class files of the same name were created");
+			if (sibling instanceof JavaSourceFile source)
+				sourcesByClass.put(className, source.file);
 			return classFile;
 		}
 
 	}
 
 	public sealed interface Compilation { }
-	public record SuccessfulCompilation(List<Diagnostic<?>> diagnostics, String additionalOutput, Map<String, byte[]> classes) implements Compilation { }
+
+	/**
+	 * @param classes all classes (the compiled ones as well as those from earlier compilations that are still valid)
+	 * @param compiledClasses the names of the classes that were compiled (only these can differ from earlier compilations)
+	 */
+	public record SuccessfulCompilation(
+			List<Diagnostic<?>> diagnostics, String additionalOutput, Map<String, byte[]> classes, Set<String> compiledClasses)
+			implements Compilation { }
+
 	public record FailedCompilation(List<Diagnostic<?>> diagnostics, String additionalOutput) implements Compilation { }
 
 }
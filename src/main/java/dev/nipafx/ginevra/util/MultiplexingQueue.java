@@ -1,25 +1,80 @@
 package dev.nipafx.ginevra.util;
 
+import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.Objects;
+import java.util.SequencedMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
+/**
+ * A bounded queue that is drained by its own thread, which passes the elements to all listeners.
+ * What happens when an element is added to a full queue depends on the {@link Backpressure} policy.
+ */
 public class MultiplexingQueue<ELEMENT> {
 
 	private static final AtomicInteger QUEUE_NAME_SUFFIX = new AtomicInteger();
 
-	private final BlockingQueue<ELEMENT> queue;
+	private final int capacity;
+	private final Backpressure<? super ELEMENT> backpressure;
+	private final ReentrantLock lock;
+	private final Condition notEmpty;
+	private final Condition notFull;
+	// waiting elements in the order they were added - each is stored under its coalescing key or,
+	// if elements aren't coalesced, under a new object (so no two elements share a key)
+	private final SequencedMap<Object, ELEMENT> elements;
+
 	private final List<Consumer<? super ELEMENT>> handlers;
+	private final List<Consumer<? super List<ELEMENT>>> batchHandlers;
 
-	public MultiplexingQueue(String threadName, int capacity, boolean fair) {
-		this.queue = new ArrayBlockingQueue<>(capacity, fair);
+	private final LongAdder added;
+	private final LongAdder coalesced;
+	private final LongAdder dropped;
+	private final LongAdder handled;
+	private final LongAdder batches;
+	private final LongAdder handlerNanos;
+	private final AtomicLong maxHandlerNanos;
+
+	public MultiplexingQueue(String threadName, int capacity, boolean fair, Backpressure<? super ELEMENT> backpressure) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be positive but was " + capacity);
+		this.capacity = capacity;
+		this.backpressure = Objects.requireNonNull(backpressure);
+		this.lock = new ReentrantLock(fair);
+		this.notEmpty = lock.newCondition();
+		this.notFull = lock.newCondition();
+		this.elements = new LinkedHashMap<>();
 		this.handlers = new CopyOnWriteArrayList<>();
+		this.batchHandlers = new CopyOnWriteArrayList<>();
+		this.added = new LongAdder();
+		this.coalesced = new LongAdder();
+		this.dropped = new LongAdder();
+		this.handled = new LongAdder();
+		this.batches = new LongAdder();
+		this.handlerNanos = new LongAdder();
+		this.maxHandlerNanos = new AtomicLong();
 		startQueueTakingThread(threadName);
 	}
 
+	public MultiplexingQueue(String threadName, int capacity, Backpressure<? super ELEMENT> backpressure) {
+		this(threadName, capacity, false, backpressure);
+	}
+
+	public MultiplexingQueue(String threadName, Backpressure<? super ELEMENT> backpressure) {
+		this(threadName, 1024, false, backpressure);
+	}
+
+	public MultiplexingQueue(String threadName, int capacity, boolean fair) {
+		this(threadName, capacity, fair, Backpressure.block());
+	}
+
 	public MultiplexingQueue(String threadName, int capacity) {
 		this(threadName, capacity, false);
 	}
@@ -68,8 +123,12 @@ public class MultiplexingQueue<ELEMENT> {
 				.start(() -> {
 					while (true) {
 						try {
-							var element = queue.take();
-							handlers.forEach(handler -> handler.accept(element));
+							// wait for the next element and then take all others that are already waiting
+							var batch = takeAll();
+							var start = System.nanoTime();
+							batch.forEach(element -> handlers.forEach(handler -> handle(handler, element)));
+							batchHandlers.forEach(handler -> handle(handler, batch));
+							recordHandling(batch.size(), System.nanoTime() - start);
 						} catch (InterruptedException ex) {
 							// if the thread is interrupted, exit the loop (and let the thread die)
 							break;
@@ -81,18 +140,191 @@ public class MultiplexingQueue<ELEMENT> {
 				});
 	}
 
+	private static <VALUE> void handle(Consumer<? super VALUE> handler, VALUE value) {
+		// a failing handler must neither keep the other handlers from seeing the value
+		// nor the other elements in the batch from being handled
+		try {
+			handler.accept(value);
+		} catch (RuntimeException ex) {
+			//TODO: handle error
+			ex.printStackTrace();
+		}
+	}
+
+	private List<ELEMENT> takeAll() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (elements.isEmpty())
+				notEmpty.await();
+			var batch = List.copyOf(elements.values());
+			elements.clear();
+			notFull.signalAll();
+			return batch;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void recordHandling(int elementCount, long nanos) {
+		handlerNanos.add(nanos);
+		maxHandlerNanos.accumulateAndGet(nanos, Math::max);
+		batches.increment();
+		handled.add(elementCount);
+	}
+
 	public void addListener(Consumer<? super ELEMENT> handler) {
 		handlers.add(handler);
 	}
 
+	/**
+	 * Adds a listener that is called with all elements that were waiting in the queue
+	 * (so it can process a burst of elements as one unit instead of one by one).
+	 */
+	public void addBatchListener(Consumer<? super List<ELEMENT>> handler) {
+		batchHandlers.add(handler);
+	}
+
 	// collection-like API
 
+	/**
+	 * Adds the element to the queue. If the queue is full, the {@link Backpressure} policy
+	 * determines whether this call blocks until there's space or whether the oldest element is dropped.
+	 * (Don't call this from a listener of a queue that blocks as that can deadlock.)
+	 *
+	 * @throws IllegalStateException if the calling thread is interrupted while waiting for space
+	 */
 	public void add(ELEMENT element) {
-		queue.add(element);
+		Objects.requireNonNull(element);
+		lock.lock();
+		try {
+			added.increment();
+			switch (backpressure) {
+				case Backpressure.Block<? super ELEMENT> _ -> {
+					awaitSpace();
+					elements.put(new Object(), element);
+				}
+				case Backpressure.DropOldest<? super ELEMENT> _ -> {
+					if (elements.size() >= capacity) {
+						elements.pollFirstEntry();
+						dropped.increment();
+					}
+					elements.put(new Object(), element);
+				}
+				case Backpressure.CoalesceByKey<? super ELEMENT> coalesce -> {
+					// an element with the same key replaces the waiting one (and takes its place in the queue)
+					var key = coalesce.key().apply(element);
+					if (elements.containsKey(key))
+						coalesced.increment();
+					else
+						awaitSpace();
+					elements.put(key, element);
+				}
+			}
+			notEmpty.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void awaitSpace() {
+		try {
+			while (elements.size() >= capacity)
+				notFull.await();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for space in the queue", ex);
+		}
 	}
 
 	public boolean isEmpty() {
-		return queue.isEmpty();
+		lock.lock();
+		try {
+			return elements.isEmpty();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int size() {
+		lock.lock();
+		try {
+			return elements.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public Metrics metrics() {
+		return new Metrics(
+				size(),
+				added.sum(),
+				coalesced.sum(),
+				dropped.sum(),
+				handled.sum(),
+				batches.sum(),
+				Duration.ofNanos(handlerNanos.sum()),
+				Duration.ofNanos(maxHandlerNanos.get()));
+	}
+
+	/**
+	 * What happens when an element is added to a full queue.
+	 */
+	public sealed interface Backpressure<ELEMENT> {
+
+		/**
+		 * Block the adding thread until there's space in the queue.
+		 */
+		static <ELEMENT> Backpressure<ELEMENT> block() {
+			return new Block<>();
+		}
+
+		/**
+		 * Drop the oldest waiting element to make space for the new one.
+		 */
+		static <ELEMENT> Backpressure<ELEMENT> dropOldest() {
+			return new DropOldest<>();
+		}
+
+		/**
+		 * Replace a waiting element that has the same key as the new one (regardless of whether the queue is full).
+		 * If there's no such element and the queue is full, block the adding thread until there's space.
+		 */
+		static <ELEMENT> Backpressure<ELEMENT> coalesceBy(Function<? super ELEMENT, ?> key) {
+			return new CoalesceByKey<>(key);
+		}
+
+		record Block<ELEMENT>() implements Backpressure<ELEMENT> { }
+
+		record DropOldest<ELEMENT>() implements Backpressure<ELEMENT> { }
+
+		record CoalesceByKey<ELEMENT>(Function<? super ELEMENT, ?> key) implements Backpressure<ELEMENT> {
+
+			public CoalesceByKey {
+				Objects.requireNonNull(key);
+			}
+
+		}
+
+	}
+
+	/**
+	 * @param depth the number of elements that are currently waiting
+	 * @param added the number of elements that were added
+	 * @param coalesced the number of added elements that replaced a waiting one
+	 * @param dropped the number of waiting elements that were dropped to make space
+	 * @param handled the number of elements that were passed to the listeners
+	 * @param batches the number of batches in which the elements were passed to the listeners
+	 * @param handlerTime the total time spent in the listeners
+	 * @param maxHandlerTime the longest time spent in the listeners for a single batch
+	 */
+	public record Metrics(
+			int depth, long added, long coalesced, long dropped, long handled, long batches,
+			Duration handlerTime, Duration maxHandlerTime) {
+
+		public Duration averageHandlerTime() {
+			return batches == 0 ? Duration.ZERO : handlerTime.dividedBy(batches);
+		}
+
 	}
 
 }
@@ -1,22 +1,33 @@
 package dev.nipafx.ginevra.util;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.RecordComponent;
 import java.lang.reflect.Type;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Stream;
 
-import static java.util.stream.Collectors.toUnmodifiableMap;
 import static java.util.stream.Collectors.toUnmodifiableSet;
 
 public class RecordMapper {
 
+	// `ClassValue` keeps the plan with the class, so it's discarded along with its class loader
+	private static final ClassValue<RecordPlan> PLANS = new ClassValue<>() {
+		@Override
+		protected RecordPlan computeValue(Class<?> type) {
+			return RecordPlan.create(type);
+		}
+	};
+
 	public static <TYPE extends Record> TYPE createRecordFromRecord(Class<TYPE> type, Record instance) {
 		if (type.isInstance(instance)) {
 			@SuppressWarnings("unchecked")
@@ -28,33 +39,35 @@ public class RecordMapper {
 	}
 
 	public static Map<String, Object> createValueMapFromRecord(Record instance) {
-		return Stream
-				.of(instance.getClass().getRecordComponents())
-				.collect(toUnmodifiableMap(
-						RecordComponent::getName,
-						component -> getComponentValue(instance, component)));
+		var plan = PLANS.get(instance.getClass());
+		var values = new HashMap<String, Object>();
+		for (int i = 0; i < plan.components().size(); i++) {
+			var component = plan.components().get(i);
+			values.put(component.getName(), getComponentValue(instance, component, plan.accessors().get(i)));
+		}
+		return Map.copyOf(values);
 	}
 
-	private static Object getComponentValue(Record instance, RecordComponent component) {
+	private static Object getComponentValue(Record instance, RecordComponent component, MethodHandle accessor) {
+		Object componentValue;
 		try {
-			var componentValue = component.getAccessor().invoke(instance);
-			if (component.getType().isRecord())
-				return createValueMapFromRecord((Record) componentValue);
-			else
-				return componentValue;
-		} catch (IllegalAccessException ex) {
-			var message = "Record '%s' is inaccessible.".formatted(instance.getClass().getName());
-			throw new IllegalStateException(message, ex);
-		} catch (InvocationTargetException ex) {
+			componentValue = (Object) accessor.invokeExact((Object) instance);
+		} catch (Throwable ex) {
 			var message = "Invoking accessor of component '%s#%s' failed.".formatted(instance.getClass().getName(), component.getName());
 			throw new IllegalStateException(message, ex);
 		}
+
+		if (component.getType().isRecord())
+			return createValueMapFromRecord((Record) componentValue);
+		else
+			return componentValue;
 	}
 
 	public static <TYPE extends Record> TYPE createRecordFromValueMap(Class<TYPE> type, Map<String, ?> values) {
-		var constructorArguments = Stream.of(type.getRecordComponents())
-				.map(component -> createValueForRecordComponent(component, values.get(component.getName())))
-				.toArray();
+		var components = PLANS.get(type).components();
+		var constructorArguments = new Object[components.size()];
+		for (int i = 0; i < constructorArguments.length; i++)
+			constructorArguments[i] = createValueForRecordComponent(components.get(i), values.get(components.get(i).getName()));
 		return createRecordFromValues(type, constructorArguments);
 	}
 
@@ -75,6 +88,8 @@ public class RecordMapper {
 		}
 
 		return switch (component.getGenericType()) {
+			// primitive types can't cast their boxed values, but reflective instantiation unboxes them anyway
+			case Class<?> classType when classType.isPrimitive() -> guaranteeNotNull(value, component);
 			case Class<?> classType -> classType.cast(guaranteeNotNull(value, component));
 			case ParameterizedType paramType -> switch (paramType.getRawType().getTypeName()) {
 				case "java.util.Optional" -> switch (value) {
@@ -87,8 +102,10 @@ public class RecordMapper {
 				};
 				case "java.util.List" -> switch (value) {
 					case null -> List.of();
-					case List<?> list -> list;
-					case Collection<?> collection -> List.copyOf(collection);
+					case List<?> list -> requiresRecordMapping(list, paramType.getActualTypeArguments()[0])
+							? mapRecordElements(list, paramType.getActualTypeArguments()[0]).toList()
+							: list;
+					case Collection<?> collection -> mapRecordElements(collection, paramType.getActualTypeArguments()[0]).toList();
 					default -> {
 						var valueType = paramType.getActualTypeArguments()[0];
 						yield List.of(guaranteeCorrectType(value, valueType));
@@ -96,8 +113,10 @@ public class RecordMapper {
 				};
 				case "java.util.Set" -> switch (value) {
 					case null -> Set.of();
-					case Set<?> set -> set;
-					case Collection<?> collection -> Set.copyOf(collection);
+					case Set<?> set -> requiresRecordMapping(set, paramType.getActualTypeArguments()[0])
+							? mapRecordElements(set, paramType.getActualTypeArguments()[0]).collect(toUnmodifiableSet())
+							: set;
+					case Collection<?> collection -> mapRecordElements(collection, paramType.getActualTypeArguments()[0]).collect(toUnmodifiableSet());
 					default -> {
 						var valueType = paramType.getActualTypeArguments()[0];
 						yield Set.of(guaranteeCorrectType(value, valueType));
@@ -110,6 +129,26 @@ public class RecordMapper {
 		};
 	}
 
+	private static boolean requiresRecordMapping(Collection<?> elements, Type elementType) {
+		return elementType instanceof Class<?> elementClass
+			   && elementClass.isRecord()
+			   && elements.stream().anyMatch(element -> !elementClass.isInstance(element));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Stream<?> mapRecordElements(Collection<?> elements, Type elementType) {
+		if (!(elementType instanceof Class<?> elementClass && elementClass.isRecord()))
+			return elements.stream();
+
+		var recordType = (Class<? extends Record>) elementClass;
+		return elements.stream()
+				.map(element -> switch (element) {
+					case Record instance -> createRecordFromRecord(recordType, instance);
+					case Map<?, ?> values -> createRecordFromValueMap(recordType, (Map<String, ?>) values);
+					case null, default -> element;
+				});
+	}
+
 	private static <T> T guaranteeNotNull(T value, RecordComponent component) {
 		if (value == null) {
 			var message = "No values are defined for the component '%s' of type '%s'".formatted(component.getName(), component.getType());
@@ -135,22 +174,24 @@ public class RecordMapper {
 	}
 
 	private static <TYPE extends Record> TYPE createRecordFromValues(Class<TYPE> type, Object[] constructorArguments) {
-		var constructorParameters = Stream.of(type.getRecordComponents())
-				.map(RecordComponent::getType)
-				.toArray(Class[]::new);
+		var plan = PLANS.get(type);
 		try {
-			var constructor = type.getConstructor(constructorParameters);
-			return constructor.newInstance(constructorArguments);
-		} catch (ReflectiveOperationException ex) {
+			return type.cast(plan.constructor().invokeExact(constructorArguments));
+		} catch (Throwable ex) {
+			// like reflective instantiation, report arguments that don't match the parameters' types
+			// as such and wrap exceptions that are thrown by the constructor
+			if (!plan.acceptsArguments(constructorArguments))
+				throw new IllegalArgumentException("Argument type mismatch when instantiating '%s'".formatted(type), ex);
 			var message = "Instantiating '%s' failed".formatted(type);
 			throw new IllegalStateException(message, ex);
 		}
 	}
 
 	public static <TYPE extends Record> TYPE createRecordFromStringListMap(Class<TYPE> type, Map<String, List<String>> stringValues) {
-		var constructorArguments = Stream.of(type.getRecordComponents())
-				.map(component -> parseValueForComponent(component, stringValues.get(component.getName())))
-				.toArray();
+		var components = PLANS.get(type).components();
+		var constructorArguments = new Object[components.size()];
+		for (int i = 0; i < constructorArguments.length; i++)
+			constructorArguments[i] = parseValueForComponent(components.get(i), stringValues.get(components.get(i).getName()));
 		return createRecordFromValues(type, constructorArguments);
 	}
 
@@ -208,12 +249,64 @@ public class RecordMapper {
 	}
 
 	public static <TYPE extends Record> TYPE createRecordFromMaps(Class<TYPE> type, Map<String, ?> values, Map<String, List<String>> stringValues) {
-		var constructorArguments = Stream.of(type.getRecordComponents())
-				.map(component -> values.containsKey(component.getName())
-						? createValueForRecordComponent(component, values.get(component.getName()))
-						: parseValueForComponent(component, stringValues.get(component.getName())))
-				.toArray();
+		var components = PLANS.get(type).components();
+		var constructorArguments = new Object[components.size()];
+		for (int i = 0; i < constructorArguments.length; i++) {
+			var component = components.get(i);
+			constructorArguments[i] = values.containsKey(component.getName())
+					? createValueForRecordComponent(component, values.get(component.getName()))
+					: parseValueForComponent(component, stringValues.get(component.getName()));
+		}
 		return createRecordFromValues(type, constructorArguments);
 	}
 
+	/**
+	 * A record type's components as well as method handles for their accessors and the canonical constructor,
+	 * so they only need to be looked up once per type.
+	 */
+	private record RecordPlan(List<RecordComponent> components, List<MethodHandle> accessors, MethodHandle constructor) {
+
+		private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+		private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+		static RecordPlan create(Class<?> type) {
+			if (!type.isRecord())
+				throw new IllegalArgumentException("Type '%s' is no record".formatted(type.getName()));
+
+			var lookup = MethodHandles.publicLookup();
+			var components = List.of(type.getRecordComponents());
+			try {
+				var accessors = new ArrayList<MethodHandle>();
+				for (RecordComponent component : components)
+					accessors.add(lookup.unreflect(component.getAccessor()).asType(ACCESSOR_TYPE));
+				var parameterTypes = components.stream()
+						.map(RecordComponent::getType)
+						.toArray(Class<?>[]::new);
+				var constructor = lookup
+						.findConstructor(type, MethodType.methodType(void.class, parameterTypes))
+						.asSpreader(Object[].class, parameterTypes.length)
+						.asType(CONSTRUCTOR_TYPE);
+				return new RecordPlan(components, List.copyOf(accessors), constructor);
+			} catch (ReflectiveOperationException ex) {
+				var message = "Record '%s' is inaccessible.".formatted(type.getName());
+				throw new IllegalStateException(message, ex);
+			}
+		}
+
+		boolean acceptsArguments(Object[] arguments) {
+			if (arguments.length != components.size())
+				return false;
+			for (int i = 0; i < arguments.length; i++) {
+				var parameterType = components.get(i).getType();
+				var accepted = parameterType.isPrimitive()
+						? arguments[i] != null && MethodType.methodType(parameterType).wrap().returnType().isInstance(arguments[i])
+						: arguments[i] == null || parameterType.isInstance(arguments[i]);
+				if (!accepted)
+					return false;
+			}
+			return true;
+		}
+
+	}
+
 }
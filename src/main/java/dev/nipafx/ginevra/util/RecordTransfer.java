@@ -0,0 +1,233 @@
+package dev.nipafx.ginevra.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toUnmodifiableSet;
+
+/**
+ * Copies record graphs to structurally compatible record types, i.e. records whose components have the same
+ * names and compatible types - most importantly, from types loaded by one class loader to the same types
+ * loaded by another one, but also to records that only have a subset of the components.
+ *
+ * <p>Values whose types are already compatible (e.g. records of the target type, strings, or
+ * Ginevra's own types) aren't copied. For each pair of source and target record types, the accessors
+ * and the constructor are looked up once and then reused, which makes a transfer instance hold on to
+ * those types - it should hence be discarded together with them (e.g. when the class loader changes).</p>
+ */
+public class RecordTransfer {
+
+	private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+	private final ConcurrentMap<TypePair, Plan> plans;
+
+	public RecordTransfer() {
+		plans = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the value (or a value in its graph) can't be transferred to the type
+	 */
+	public <TYPE> TYPE transfer(Object value, Class<TYPE> type) {
+		@SuppressWarnings("unchecked")
+		var transferred = (TYPE) transfer(value, (Type) type);
+		return transferred;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the value (or a value in its graph) can't be transferred to the type
+	 */
+	public Object transfer(Object value, Type type) {
+		if (value == null)
+			return null;
+
+		return switch (type) {
+			case Class<?> classType -> transferToClass(value, classType);
+			case ParameterizedType paramType -> transferToParameterizedType(value, paramType);
+			case WildcardType wildcard -> transfer(value, wildcard.getUpperBounds()[0]);
+			case TypeVariable<?> variable -> transfer(value, variable.getBounds()[0]);
+			default -> transferToClass(value, Object.class);
+		};
+	}
+
+	private Object transferToClass(Object value, Class<?> type) {
+		if (box(type).isInstance(value))
+			return value;
+
+		if (type.isRecord() && value instanceof Record instance)
+			return planFor(instance.getClass(), type).copy(instance, this);
+		if (type.isEnum() && value instanceof Enum<?> constant)
+			return enumConstant(type, constant);
+
+		// e.g. a record that needs to be transferred to an interface (of the target type's class loader)
+		var counterpart = counterpartOf(value.getClass(), type.getClassLoader());
+		if (counterpart.isPresent() && counterpart.get() != value.getClass() && type.isAssignableFrom(counterpart.get()))
+			return transferToClass(value, counterpart.get());
+
+		var message = "Value '%s' of type '%s' can't be transferred to type '%s'".formatted(value, value.getClass(), type);
+		throw new IllegalArgumentException(message);
+	}
+
+	private Object transferToParameterizedType(Object value, ParameterizedType type) {
+		var rawType = (Class<?>) type.getRawType();
+		var typeArguments = type.getActualTypeArguments();
+		return switch (value) {
+			case Optional<?> optional when rawType == Optional.class -> optional.map(element -> transfer(element, typeArguments[0]));
+			case Collection<?> list when rawType == List.class || rawType == Collection.class -> list.stream()
+					.map(element -> transfer(element, typeArguments[0]))
+					.toList();
+			case Collection<?> set when rawType == Set.class -> set.stream()
+					.map(element -> transfer(element, typeArguments[0]))
+					.collect(toUnmodifiableSet());
+			case Map<?, ?> map when rawType == Map.class -> {
+				var transferred = new LinkedHashMap<>();
+				map.forEach((key, element) -> transferred.put(transfer(key, typeArguments[0]), transfer(element, typeArguments[1])));
+				yield Collections.unmodifiableMap(transferred);
+			}
+			default -> transferToClass(value, rawType);
+		};
+	}
+
+	private Plan planFor(Class<?> sourceType, Class<?> targetType) {
+		return plans.computeIfAbsent(new TypePair(sourceType, targetType), _ -> Plan.create(sourceType, targetType));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object enumConstant(Class<?> type, Enum<?> constant) {
+		try {
+			return Enum.valueOf((Class) type, constant.name());
+		} catch (IllegalArgumentException ex) {
+			var message = "Enum '%s' has no constant '%s'".formatted(type.getName(), constant.name());
+			throw new IllegalArgumentException(message, ex);
+		}
+	}
+
+	private static Optional<Class<?>> counterpartOf(Class<?> type, ClassLoader loader) {
+		if (loader == null)
+			return Optional.empty();
+		try {
+			return Optional.of(Class.forName(type.getName(), false, loader));
+		} catch (ClassNotFoundException ex) {
+			return Optional.empty();
+		}
+	}
+
+	private static Class<?> box(Class<?> type) {
+		if (!type.isPrimitive())
+			return type;
+		return MethodType.methodType(type).wrap().returnType();
+	}
+
+	private record TypePair(Class<?> source, Class<?> target) { }
+
+	/**
+	 * @param components for each of the target type's components, how to get its value from a source instance
+	 */
+	private record Plan(Class<?> targetType, List<ComponentPlan> components, MethodHandle constructor) {
+
+		static Plan create(Class<?> sourceType, Class<?> targetType) {
+			var lookup = MethodHandles.publicLookup();
+			var sourceComponents = Stream
+					.of(sourceType.getRecordComponents())
+					.collect(toMap(RecordComponent::getName, Function.identity()));
+			try {
+				var targetComponents = targetType.getRecordComponents();
+				var components = new ArrayList<ComponentPlan>();
+				for (RecordComponent targetComponent : targetComponents) {
+					var sourceComponent = sourceComponents.get(targetComponent.getName());
+					var accessor = sourceComponent == null
+							? Optional.<MethodHandle> empty()
+							: Optional.of(lookup.unreflect(sourceComponent.getAccessor()).asType(ACCESSOR_TYPE));
+					components.add(new ComponentPlan(accessor, targetComponent.getGenericType(), targetComponent.getType()));
+				}
+				var parameterTypes = Stream
+						.of(targetComponents)
+						.map(RecordComponent::getType)
+						.toArray(Class<?>[]::new);
+				var constructor = lookup
+						.findConstructor(targetType, MethodType.methodType(void.class, parameterTypes))
+						.asSpreader(Object[].class, parameterTypes.length)
+						.asType(CONSTRUCTOR_TYPE);
+				return new Plan(targetType, List.copyOf(components), constructor);
+			} catch (ReflectiveOperationException ex) {
+				var message = "Record '%s' can't be transferred to '%s'".formatted(sourceType.getName(), targetType.getName());
+				throw new IllegalArgumentException(message, ex);
+			}
+		}
+
+		Object copy(Record source, RecordTransfer transfer) {
+			var arguments = new Object[components.size()];
+			for (int i = 0; i < arguments.length; i++)
+				arguments[i] = components.get(i).valueFrom(source, transfer);
+			try {
+				return (Object) constructor.invokeExact(arguments);
+			} catch (RuntimeException ex) {
+				throw ex;
+			} catch (Throwable ex) {
+				var message = "Instantiating '%s' with %s failed".formatted(targetType.getName(), Arrays.toString(arguments));
+				throw new IllegalStateException(message, ex);
+			}
+		}
+
+	}
+
+	/**
+	 * @param accessor the accessor of the source type's component with the same name (if there is one)
+	 */
+	private record ComponentPlan(Optional<MethodHandle> accessor, Type targetType, Class<?> targetClass) {
+
+		Object valueFrom(Record source, RecordTransfer transfer) {
+			if (accessor.isEmpty())
+				return missingValue();
+
+			try {
+				var value = (Object) accessor.get().invokeExact((Object) source);
+				return value == null ? missingValue() : transfer.transfer(value, targetType);
+			} catch (RuntimeException ex) {
+				throw ex;
+			} catch (Throwable ex) {
+				var message = "Invoking accessor of '%s' failed".formatted(source.getClass().getName());
+				throw new IllegalStateException(message, ex);
+			}
+		}
+
+		private Object missingValue() {
+			// like deserialization from JSON, missing containers are empty and other values are absent
+			if (targetClass == Optional.class)
+				return Optional.empty();
+			if (targetClass == List.class || targetClass == Collection.class)
+				return List.of();
+			if (targetClass == Set.class)
+				return Set.of();
+			if (targetClass == Map.class)
+				return Map.of();
+			if (targetClass.isPrimitive())
+				return Array.get(Array.newInstance(targetClass, 1), 0);
+			return null;
+		}
+
+	}
+
+}
@@ -1,9 +1,25 @@
 package dev.nipafx.ginevra.util;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Creates SHA-256 hashes that only contain the characters {@code [a-zA-Z0-9]}, so they can be used in
+ * file names, URLs, and CSS identifiers (where the hash is usually separated from the rest by {@code --}).
+ *
+ * <p>All methods are thread-safe and don't contend with one another.</p>
+ */
 public class SHA256 {
 
 	private static final MessageDigest SHA_256;
@@ -16,21 +32,85 @@ public class SHA256 {
 		}
 	}
 
+	// digests aren't thread-safe, so each thread gets its own (they're reset after each use)
+	private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(SHA256::createDigest);
+
+	// hashing a large file (e.g. an image) is expensive, so the result is kept until the file changes
+	private static final ConcurrentMap<Path, FileHash> FILE_HASHES = new ConcurrentHashMap<>();
 
 	public static String hash(String string) {
-		synchronized (SHA_256) {
-			SHA_256.update(string.getBytes());
-			var hash = Base64.getEncoder().encodeToString(SHA_256.digest());
-			return hash.replaceAll("\\W", "");
-		}
+		return hash(string.getBytes(UTF_8));
 	}
 
 	public static String hash(byte[] bytes) {
-		synchronized (SHA_256) {
-			SHA_256.update(bytes);
-			var hash = Base64.getEncoder().encodeToString(SHA_256.digest());
-			return hash.replaceAll("\\W", "");
+		var digest = DIGESTS.get();
+		digest.update(bytes);
+		return hash(digest);
+	}
+
+	/**
+	 * Hashes the file's content - the result is memoized for as long as the file's
+	 * modification time and size stay the same.
+	 *
+	 * @throws UncheckedIOException if the file can't be read
+	 */
+	public static String hash(Path file) {
+		try {
+			var absoluteFile = file.toAbsolutePath();
+			var attributes = Files.readAttributes(absoluteFile, BasicFileAttributes.class);
+			var memoized = FILE_HASHES.get(absoluteFile);
+			if (memoized != null && memoized.matches(attributes))
+				return memoized.hash();
+
+			var hash = hash(Files.readAllBytes(absoluteFile));
+			FILE_HASHES.put(absoluteFile, new FileHash(attributes.lastModifiedTime(), attributes.size(), hash));
+			return hash;
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/**
+	 * Creates a new digest for content that isn't available all at once (e.g. because it's streamed).
+	 * Once all content was passed to it, use {@link #hash(MessageDigest)} to get the same hash
+	 * that {@link #hash(byte[])} would return for the entire content.
+	 */
+	public static MessageDigest createDigest() {
+		// the prototype is never updated, so it can be cloned without a lock
+		try {
+			return (MessageDigest) SHA_256.clone();
+		} catch (CloneNotSupportedException ex) {
+			throw new IllegalStateException("The SHA-256 implementation can't be cloned", ex);
 		}
 	}
 
+	public static String hash(MessageDigest digest) {
+		return encode(digest.digest());
+	}
+
+	/**
+	 * Encodes the bytes with Base64 and drops the non-alphanumeric characters
+	 * ({@code +}, {@code /}, and padding).
+	 */
+	private static String encode(byte[] hash) {
+		var base64 = Base64.getEncoder().withoutPadding().encode(hash);
+		int length = 0;
+		for (byte character : base64)
+			if (isAlphanumeric(character))
+				base64[length++] = character;
+		return new String(base64, 0, length, UTF_8);
+	}
+
+	private static boolean isAlphanumeric(byte character) {
+		return character != '+' && character != '/';
+	}
+
+	private record FileHash(FileTime lastModified, long size, String hash) {
+
+		boolean matches(BasicFileAttributes attributes) {
+			return lastModified.equals(attributes.lastModifiedTime()) && size == attributes.size();
+		}
+
+	}
+
 }
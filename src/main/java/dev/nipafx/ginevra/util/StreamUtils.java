@@ -1,6 +1,10 @@
 package dev.nipafx.ginevra.util;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Function;
 import java.util.stream.Gatherer;
 import java.util.stream.Stream;
 
@@ -21,6 +25,31 @@ public class StreamUtils {
 				.flatMap(l -> right.stream().map(r -> new Pair<>(l, r)));
 	}
 
+	/**
+	 * Pairs up all elements with equal keys by building a hash index over the right elements
+	 * (elements with a {@code null} key are never paired up).
+	 */
+	public static <LEFT, RIGHT, KEY> Stream<Pair<LEFT, RIGHT>> hashJoin(
+			Collection<LEFT> left, Collection<RIGHT> right,
+			Function<? super LEFT, ? extends KEY> leftKey, Function<? super RIGHT, ? extends KEY> rightKey) {
+		var rightByKey = new HashMap<KEY, List<RIGHT>>();
+		for (RIGHT r : right) {
+			var key = rightKey.apply(r);
+			if (key != null)
+				rightByKey.computeIfAbsent(key, _ -> new ArrayList<>()).add(r);
+		}
+
+		return left.stream()
+				.flatMap(l -> {
+					var key = leftKey.apply(l);
+					if (key == null)
+						return Stream.empty();
+					return rightByKey
+							.getOrDefault(key, List.of()).stream()
+							.map(r -> new Pair<>(l, r));
+				});
+	}
+
 	public record Pair<LEFT, RIGHT>(LEFT left, RIGHT right) { }
 
 }
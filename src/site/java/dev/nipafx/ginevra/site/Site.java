@@ -28,7 +28,10 @@ public class Site implements SiteConfiguration {
 		return new BuildArgs(
 				arguments.siteFolder().or(() -> Optional.of(SITE_FOLDER)),
 				arguments.resourcesFolder(),
-				arguments.cssFolder());
+				arguments.cssFolder(),
+				arguments.parallel(),
+				arguments.buildCache(),
+				arguments.pureElements());
 	}
 
 	@Override
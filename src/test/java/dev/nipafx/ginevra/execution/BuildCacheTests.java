@@ -0,0 +1,147 @@
+package dev.nipafx.ginevra.execution;
+
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BuildCacheTests {
+
+	@TempDir
+	private Path folder;
+
+	private Path cacheFile() {
+		return folder.resolve("cache.json");
+	}
+
+	private Path siteFolder() {
+		return folder.resolve("site");
+	}
+
+	private BuildCache completeBuild(Optional<String> fingerprint, String... files) throws IOException {
+		var cache = BuildCache.load(cacheFile(), siteFolder(), fingerprint);
+		for (String file : files) {
+			var path = siteFolder().resolve(file);
+			Files.createDirectories(path.getParent());
+			Files.writeString(path, file);
+			cache.registerOutput(path, file);
+		}
+		cache.completeBuild();
+		return cache;
+	}
+
+	@Nested
+	class UpToDate {
+
+		@Test
+		void noPreviousBuild_notUpToDate() {
+			var cache = BuildCache.load(cacheFile(), siteFolder(), Optional.of("fingerprint"));
+
+			assertThat(cache.isUpToDate()).isFalse();
+		}
+
+		@Test
+		void sameFingerprint_upToDate() throws IOException {
+			completeBuild(Optional.of("fingerprint"), "index.html");
+			var cache = BuildCache.load(cacheFile(), siteFolder(), Optional.of("fingerprint"));
+
+			assertThat(cache.isUpToDate()).isTrue();
+		}
+
+		@Test
+		void differentFingerprint_notUpToDate() throws IOException {
+			completeBuild(Optional.of("fingerprint"), "index.html");
+			var cache = BuildCache.load(cacheFile(), siteFolder(), Optional.of("other fingerprint"));
+
+			assertThat(cache.isUpToDate()).isFalse();
+		}
+
+		@Test
+		void unknownFingerprint_notUpToDate() throws IOException {
+			completeBuild(Optional.empty(), "index.html");
+			var cache = BuildCache.load(cacheFile(), siteFolder(), Optional.empty());
+
+			assertThat(cache.isUpToDate()).isFalse();
+		}
+
+		@Test
+		void outputDeleted_notUpToDate() throws IOException {
+			completeBuild(Optional.of("fingerprint"), "index.html");
+			Files.delete(siteFolder().resolve("index.html"));
+			var cache = BuildCache.load(cacheFile(), siteFolder(), Optional.of("fingerprint"));
+
+			assertThat(cache.isUpToDate()).isFalse();
+		}
+
+		@Test
+		void unreadableCache_notUpToDate() throws IOException {
+			Files.writeString(cacheFile(), "not JSON");
+			var cache = BuildCache.load(cacheFile(), siteFolder(), Optional.of("fingerprint"));
+
+			assertThat(cache.isUpToDate()).isFalse();
+		}
+
+	}
+
+	@Nested
+	class Outputs {
+
+		@Test
+		void sameContent_notWritten() throws IOException {
+			completeBuild(Optional.of("fingerprint"), "index.html");
+			var cache = BuildCache.load(cacheFile(), siteFolder(), Optional.of("other fingerprint"));
+
+			var needsWriting = cache.registerOutput(siteFolder().resolve("index.html"), "index.html");
+
+			assertThat(needsWriting).isFalse();
+		}
+
+		@Test
+		void differentContent_written() throws IOException {
+			completeBuild(Optional.of("fingerprint"), "index.html");
+			var cache = BuildCache.load(cacheFile(), siteFolder(), Optional.of("other fingerprint"));
+
+			var needsWriting = cache.registerOutput(siteFolder().resolve("index.html"), "new content");
+
+			assertThat(needsWriting).isTrue();
+		}
+
+		@Test
+		void newFile_written() throws IOException {
+			completeBuild(Optional.of("fingerprint"), "index.html");
+			var cache = BuildCache.load(cacheFile(), siteFolder(), Optional.of("other fingerprint"));
+
+			var needsWriting = cache.registerOutput(siteFolder().resolve("new/index.html"), "new/index.html");
+
+			assertThat(needsWriting).isTrue();
+		}
+
+		@Test
+		void fileNotProducedAgain_deleted() throws IOException {
+			completeBuild(Optional.of("fingerprint"), "index.html", "old/index.html");
+			completeBuild(Optional.of("other fingerprint"), "index.html");
+
+			assertThat(siteFolder().resolve("index.html")).exists();
+			assertThat(siteFolder().resolve("old/index.html")).doesNotExist();
+		}
+
+		@Test
+		void noCache_alwaysWritten() throws IOException {
+			completeBuild(Optional.of("fingerprint"), "index.html");
+			var cache = BuildCache.none();
+
+			var needsWriting = cache.registerOutput(siteFolder().resolve("index.html"), "index.html");
+
+			assertThat(needsWriting).isTrue();
+			assertThat(cache.isUpToDate()).isFalse();
+		}
+
+	}
+
+}
@@ -0,0 +1,73 @@
+package dev.nipafx.ginevra.execution;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ByteArrayClassLoaderTests {
+
+	private Optional<ByteArrayClassLoader> loaderBeforeTest;
+
+	@BeforeEach
+	void rememberCurrentLoader() {
+		loaderBeforeTest = ByteArrayClassLoader.current();
+	}
+
+	@AfterEach
+	void restoreCurrentLoader() {
+		ByteArrayClassLoader.swap(loaderBeforeTest.orElse(null));
+	}
+
+	@Test
+	void appClass_appGeneration() {
+		assertThat(ByteArrayClassLoader.generationOf(String.class)).isEqualTo(ByteArrayClassLoader.APP_GENERATION);
+		assertThat(ByteArrayClassLoader.generationOf(LiveStore.class)).isEqualTo(ByteArrayClassLoader.APP_GENERATION);
+	}
+
+	@Test
+	void newLoader_laterGeneration() {
+		var first = new ByteArrayClassLoader(getClass().getClassLoader(), Map.of());
+		var second = new ByteArrayClassLoader(getClass().getClassLoader(), Map.of());
+
+		assertThat(first.generation()).isGreaterThan(ByteArrayClassLoader.APP_GENERATION);
+		assertThat(second.generation()).isGreaterThan(first.generation());
+	}
+
+	@Test
+	void appGeneration_neverStale() {
+		ByteArrayClassLoader.swap(new ByteArrayClassLoader(getClass().getClassLoader(), Map.of()));
+
+		assertThat(ByteArrayClassLoader.isStale(ByteArrayClassLoader.APP_GENERATION)).isFalse();
+	}
+
+	@Test
+	void replacedLoader_stale() {
+		var first = new ByteArrayClassLoader(getClass().getClassLoader(), Map.of());
+		ByteArrayClassLoader.swap(first);
+		assertThat(ByteArrayClassLoader.isStale(first.generation())).isFalse();
+
+		var second = new ByteArrayClassLoader(getClass().getClassLoader(), Map.of());
+		ByteArrayClassLoader.swap(second);
+
+		assertThat(ByteArrayClassLoader.isStale(first.generation())).isTrue();
+		assertThat(ByteArrayClassLoader.isStale(second.generation())).isFalse();
+	}
+
+	@Test
+	void replacedReachableLoader_countedAsStale() {
+		var first = new ByteArrayClassLoader(getClass().getClassLoader(), Map.of());
+		ByteArrayClassLoader.swap(first);
+
+		ByteArrayClassLoader.swap(new ByteArrayClassLoader(getClass().getClassLoader(), Map.of()));
+
+		// `first` is still referenced by this test
+		assertThat(ByteArrayClassLoader.staleLoaders()).isPositive();
+		assertThat(ByteArrayClassLoader.isStale(first.generation())).isTrue();
+	}
+
+}
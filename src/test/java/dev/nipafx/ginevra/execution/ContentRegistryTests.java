@@ -0,0 +1,105 @@
+package dev.nipafx.ginevra.execution;
+
+import dev.nipafx.ginevra.outline.HtmlContent;
+import dev.nipafx.ginevra.outline.SenderId;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ContentRegistryTests {
+
+	private static final Optional<String> ROOT = Optional.empty();
+	private static final Optional<String> POSTS = Optional.of("posts");
+	private static final SenderId SENDER = SenderId.source("post", URI.create("file:///post"));
+
+	private final ContentRegistry registry = new ContentRegistry();
+
+	@Test
+	void uncommittedClaim_notRegistered() {
+		var contentId = registry.claim().register(new HtmlContent(List.of()));
+
+		assertThat(registry.size()).isZero();
+		assertThatThrownBy(() -> registry.get(contentId)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void committedClaim_registered() {
+		var content = new HtmlContent(List.of());
+		var claim = registry.claim();
+		var contentId = claim.register(content);
+		registry.commit(POSTS, SENDER, claim);
+
+		assertThat(registry.get(contentId)).isSameAs(content);
+	}
+
+	@Test
+	void sameInstance_sameId() {
+		var content = new HtmlContent(List.of());
+		var claim = registry.claim();
+		var contentId = claim.register(content);
+		registry.commit(POSTS, SENDER, claim);
+
+		assertThat(registry.claim().register(content)).isEqualTo(contentId);
+		assertThat(registry.claim().register(new HtmlContent(List.of()))).isNotEqualTo(contentId);
+	}
+
+	@Test
+	void nextGeneration_previousContentReleased() {
+		var first = registry.claim();
+		var firstId = first.register(new HtmlContent(List.of()));
+		registry.commit(POSTS, SENDER, first);
+		var second = registry.claim();
+		var secondId = second.register(new HtmlContent(List.of()));
+		registry.commit(POSTS, SENDER, second);
+
+		assertThat(registry.size()).isOne();
+		assertThatThrownBy(() -> registry.get(firstId)).isInstanceOf(IllegalArgumentException.class);
+		assertThat(registry.get(secondId)).isNotNull();
+	}
+
+	@Test
+	void nextGenerationWithSameInstance_contentRetained() {
+		var content = new HtmlContent(List.of());
+		var first = registry.claim();
+		var contentId = first.register(content);
+		registry.commit(POSTS, SENDER, first);
+		var second = registry.claim();
+		second.register(content);
+		registry.commit(POSTS, SENDER, second);
+
+		assertThat(registry.get(contentId)).isSameAs(content);
+	}
+
+	@Test
+	void contentInTwoSlots_releasedWhenBothAreReleased() {
+		var content = new HtmlContent(List.of());
+		var inPosts = registry.claim();
+		var contentId = inPosts.register(content);
+		registry.commit(POSTS, SENDER, inPosts);
+		var inRoot = registry.claim();
+		inRoot.register(content);
+		registry.commit(ROOT, SENDER, inRoot);
+
+		registry.release(POSTS, SENDER);
+		assertThat(registry.get(contentId)).isSameAs(content);
+		registry.release(ROOT, SENDER);
+		assertThat(registry.size()).isZero();
+	}
+
+	@Test
+	void clear_releasesAll() {
+		var claim = registry.claim();
+		claim.register(new HtmlContent(List.of()));
+		registry.commit(POSTS, SENDER, claim);
+
+		registry.clear();
+
+		assertThat(registry.size()).isZero();
+	}
+
+}
@@ -1,9 +1,11 @@
 package dev.nipafx.ginevra.execution;
 
 import dev.nipafx.ginevra.execution.LiveNode.FilterLiveNode;
+import dev.nipafx.ginevra.execution.LiveNode.MergeLiveNode;
 import dev.nipafx.ginevra.execution.LiveNode.TransformLiveNode;
 import dev.nipafx.ginevra.outline.Document;
 import dev.nipafx.ginevra.outline.Envelope;
+import dev.nipafx.ginevra.outline.Merger;
 import dev.nipafx.ginevra.outline.SenderId;
 import dev.nipafx.ginevra.outline.SimpleEnvelope;
 import dev.nipafx.ginevra.outline.SourceEvent.Added;
@@ -15,6 +17,7 @@ import org.junit.jupiter.api.Test;
 
 import java.net.URI;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -356,6 +359,158 @@ class LiveNodeTests {
 
 	}
 
+	@Nested
+	class MergeLiveNodeTests {
+
+		private final LiveNode leftParent = new FilterLiveNode(_ -> true);
+		private final LiveNode rightParent = new FilterLiveNode(_ -> true);
+		private final AtomicInteger mergerCalls = new AtomicInteger();
+		private final Merger<Doc, Doc, Doc> sum = (left, right) -> {
+			mergerCalls.incrementAndGet();
+			return List.of(new Doc(left.value() + right.value()));
+		};
+
+		private MergeLiveNode keyedNode() {
+			return new MergeLiveNode(leftParent, rightParent, new KeyedMerger<>(Doc::value, Doc::value, sum));
+		}
+
+		private static SenderId merged(String left, String right) {
+			return id(left).mergeFrom(id(right));
+		}
+
+		@Nested
+		class Merge {
+
+			@Test
+			void keyed_onlyMatchingKeysMerged() {
+				var merged = keyedNode()
+						.setInput(leftParent, List.of(envelop("L1", new Doc(1)), envelop("L2", new Doc(2))))
+						.setInput(rightParent, List.of(envelop("R1", new Doc(1)), envelop("R3", new Doc(3))))
+						.merge();
+
+				assertThat(merged).hasValue(List.of(envelop(merged("L1", "R1"), new Doc(2))));
+				assertThat(mergerCalls).hasValue(1);
+			}
+
+			@Test
+			void keyed_multipleDocumentsPerEnvelope() {
+				var merged = keyedNode()
+						.setInput(leftParent, List.of(envelop("L", new Doc(1), new Doc(2), new Doc(3))))
+						.setInput(rightParent, List.of(envelop("R", new Doc(3), new Doc(1))))
+						.merge();
+
+				assertThat(merged).hasValue(List.of(envelop(merged("L", "R"), new Doc(2), new Doc(6))));
+				assertThat(mergerCalls).hasValue(2);
+			}
+
+			@Test
+			void unkeyed_allPairsMerged() {
+				var merged = new MergeLiveNode(leftParent, rightParent, sum)
+						.setInput(leftParent, List.of(envelop("L1", new Doc(1)), envelop("L2", new Doc(2))))
+						.setInput(rightParent, List.of(envelop("R1", new Doc(1)), envelop("R3", new Doc(3))))
+						.merge();
+
+				assertThat(merged).get().asList().hasSize(4);
+				assertThat(mergerCalls).hasValue(4);
+			}
+
+			@Test
+			void missingInput_empty() {
+				var merged = keyedNode()
+						.setInput(leftParent, List.of(envelop("L1", new Doc(1))))
+						.merge();
+
+				assertThat(merged).isEmpty();
+			}
+
+		}
+
+		@Nested
+		class Update {
+
+			private final MergeLiveNode node = keyedNode();
+
+			@BeforeEach
+			void prefillNode() {
+				node
+						.setInput(leftParent, List.of(envelop("L1", new Doc(1)), envelop("L2", new Doc(2))))
+						.setInput(rightParent, List.of(envelop("R1", new Doc(1)), envelop("R3", new Doc(3))))
+						.merge();
+				mergerCalls.set(0);
+			}
+
+			@Test
+			void addMatchingEnvelope_addedEvent() {
+				var addition = node.update(leftParent, new Added(envelop("L3", new Doc(3))));
+
+				assertThat(addition).containsExactly(new Added(envelop(merged("L3", "R3"), new Doc(6))));
+				assertThat(mergerCalls).hasValue(1);
+			}
+
+			@Test
+			void addNonMatchingEnvelope_noEvent() {
+				var addition = node.update(rightParent, new Added(envelop("R5", new Doc(5))));
+
+				assertThat(addition).isEmpty();
+				assertThat(mergerCalls).hasValue(0);
+			}
+
+			@Test
+			void changeUnknownEnvelope_exception() {
+				var changed = new Changed(envelop("L5", new Doc(5)));
+				assertThatThrownBy(() -> node.update(leftParent, changed)).isInstanceOf(IllegalStateException.class);
+			}
+
+			@Test
+			void changeToOtherKey_removedAndAddedEvents() {
+				var change = node.update(leftParent, new Changed(envelop("L1", new Doc(3))));
+
+				assertThat(change).containsExactlyInAnyOrder(
+						new Added(envelop(merged("L1", "R3"), new Doc(6))),
+						new Removed(merged("L1", "R1")));
+			}
+
+			@Test
+			void changeWithinKey_changedEvent() {
+				var change = node.update(rightParent, new Changed(envelop("R1", new Doc(1), new Doc(2))));
+
+				assertThat(change).containsExactlyInAnyOrder(
+						new Changed(envelop(merged("L1", "R1"), new Doc(2))),
+						new Added(envelop(merged("L2", "R1"), new Doc(4))));
+			}
+
+			@Test
+			void changedEnvelope_replacesPreviousOne() {
+				node.update(leftParent, new Changed(envelop("L1", new Doc(3))));
+				var addition = node.update(rightParent, new Added(envelop("R1b", new Doc(1))));
+
+				assertThat(addition).isEmpty();
+			}
+
+			@Test
+			void removeMergedEnvelope_removedEvent() {
+				var removal = node.update(leftParent, new Removed(id("L1")));
+
+				assertThat(removal).containsExactly(new Removed(merged("L1", "R1")));
+			}
+
+			@Test
+			void removeUnmergedEnvelope_noEvent() {
+				var removal = node.update(rightParent, new Removed(id("R3")));
+
+				assertThat(removal).isEmpty();
+			}
+
+			@Test
+			void removeUnknownEnvelope_exception() {
+				var removed = new Removed(id("L5"));
+				assertThatThrownBy(() -> node.update(leftParent, removed)).isInstanceOf(IllegalStateException.class);
+			}
+
+		}
+
+	}
+
 	// helper
 
 	private static Envelope<Doc> envelop(String senderId, Doc... docs) {
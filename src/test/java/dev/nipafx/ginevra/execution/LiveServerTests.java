@@ -0,0 +1,121 @@
+package dev.nipafx.ginevra.execution;
+
+import dev.nipafx.ginevra.execution.LiveServer.ByteRange;
+import dev.nipafx.ginevra.execution.LiveServer.ContentEncoding;
+import dev.nipafx.ginevra.execution.LiveServer.Response;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LiveServerTests {
+
+	@Nested
+	class ByteRanges {
+
+		@Test
+		void noHeader_entireContent() {
+			assertThat(ByteRange.parse(null, 1000)).isEmpty();
+		}
+
+		@Test
+		void closedRange() {
+			var range = ByteRange.parse("bytes=100-199", 1000);
+
+			assertThat(range).contains(new ByteRange(100, 199));
+			assertThat(range.get().length()).isEqualTo(100);
+		}
+
+		@Test
+		void openRange_untilEnd() {
+			assertThat(ByteRange.parse("bytes=100-", 1000)).contains(new ByteRange(100, 999));
+		}
+
+		@Test
+		void suffixRange_lastBytes() {
+			assertThat(ByteRange.parse("bytes=-100", 1000)).contains(new ByteRange(900, 999));
+			assertThat(ByteRange.parse("bytes=-2000", 1000)).contains(new ByteRange(0, 999));
+		}
+
+		@Test
+		void rangeBeyondEnd_isCut() {
+			assertThat(ByteRange.parse("bytes=900-1999", 1000)).contains(new ByteRange(900, 999));
+		}
+
+		@Test
+		void rangeAfterEnd_isNotWithinContent() {
+			var range = ByteRange.parse("bytes=1000-1999", 1000);
+
+			assertThat(range).isPresent();
+			assertThat(range.get().isWithin(1000)).isFalse();
+		}
+
+		@Test
+		void multipleRanges_entireContent() {
+			assertThat(ByteRange.parse("bytes=0-99, 200-299", 1000)).isEmpty();
+		}
+
+		@Test
+		void invalidRange_entireContent() {
+			assertThat(ByteRange.parse("bytes=200-100", 1000)).isEmpty();
+			assertThat(ByteRange.parse("bytes=abc", 1000)).isEmpty();
+			assertThat(ByteRange.parse("lines=1-2", 1000)).isEmpty();
+		}
+
+	}
+
+	@Nested
+	class Encodings {
+
+		@Test
+		void noHeader_identity() {
+			assertThat(ContentEncoding.negotiate(null)).isEqualTo(ContentEncoding.IDENTITY);
+		}
+
+		@Test
+		void gzipAndDeflate_prefersGzip() {
+			assertThat(ContentEncoding.negotiate("gzip, deflate, br")).isEqualTo(ContentEncoding.GZIP);
+			assertThat(ContentEncoding.negotiate("deflate, gzip")).isEqualTo(ContentEncoding.GZIP);
+		}
+
+		@Test
+		void qualityValues_highestWins() {
+			assertThat(ContentEncoding.negotiate("gzip;q=0.5, deflate")).isEqualTo(ContentEncoding.DEFLATE);
+			assertThat(ContentEncoding.negotiate("gzip;q=0, deflate;q=0")).isEqualTo(ContentEncoding.IDENTITY);
+		}
+
+		@Test
+		void wildcard_prefersGzip() {
+			assertThat(ContentEncoding.negotiate("*")).isEqualTo(ContentEncoding.GZIP);
+			assertThat(ContentEncoding.negotiate("gzip;q=0, *")).isEqualTo(ContentEncoding.DEFLATE);
+		}
+
+		@Test
+		void unknownEncodings_identity() {
+			assertThat(ContentEncoding.negotiate("br, zstd")).isEqualTo(ContentEncoding.IDENTITY);
+		}
+
+		@Test
+		void encodedVariants_roundTripAndAreReused() throws IOException {
+			var content = "<p>Ginevra</p>".repeat(100).getBytes(UTF_8);
+			var response = Response.of(content);
+
+			var gzipped = response.encoded(ContentEncoding.GZIP);
+			var deflated = response.encoded(ContentEncoding.DEFLATE);
+
+			assertThat(gzipped.length).isLessThan(content.length);
+			assertThat(new GZIPInputStream(new ByteArrayInputStream(gzipped)).readAllBytes()).isEqualTo(content);
+			assertThat(new InflaterInputStream(new ByteArrayInputStream(deflated)).readAllBytes()).isEqualTo(content);
+			assertThat(response.encoded(ContentEncoding.GZIP)).isSameAs(gzipped);
+			assertThat(response.encoded(ContentEncoding.IDENTITY)).isSameAs(content);
+		}
+
+	}
+
+}
@@ -0,0 +1,263 @@
+package dev.nipafx.ginevra.execution;
+
+import dev.nipafx.ginevra.outline.Document;
+import dev.nipafx.ginevra.outline.HtmlContent;
+import dev.nipafx.ginevra.outline.Query.CollectionQuery;
+import dev.nipafx.ginevra.outline.Query.RootQuery;
+import dev.nipafx.ginevra.outline.SenderId;
+import dev.nipafx.ginevra.outline.SimpleEnvelope;
+import dev.nipafx.ginevra.outline.SourceEvent.Added;
+import dev.nipafx.ginevra.outline.SourceEvent.Changed;
+import dev.nipafx.ginevra.outline.SourceEvent.Removed;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LiveStoreTests {
+
+	private static final Optional<String> ROOT = Optional.empty();
+	private static final Optional<String> POSTS = Optional.of("posts");
+
+	private final LiveStore store = new LiveStore();
+
+	@Nested
+	class Root {
+
+		@Test
+		void queryRootDocument() {
+			store.updateEnvelope(ROOT, new Added(envelope("title", new Title("Ginevra"))));
+
+			var result = store.query(new RootQuery<>(Title.class));
+			assertThat(result).isEqualTo(new Title("Ginevra"));
+		}
+
+		@Test
+		void changeRootDocument() {
+			store.updateEnvelope(ROOT, new Added(envelope("title", new Title("Ginevra"))));
+			store.query(new RootQuery<>(Title.class));
+			store.updateEnvelope(ROOT, new Changed(envelope("title", new Title("Ginevra 2"))));
+
+			var result = store.query(new RootQuery<>(Title.class));
+			assertThat(result).isEqualTo(new Title("Ginevra 2"));
+		}
+
+		@Test
+		void duplicateKey_fails() {
+			store.updateEnvelope(ROOT, new Added(envelope("title", new Title("Ginevra"))));
+
+			assertThatThrownBy(() -> store.updateEnvelope(ROOT, new Added(envelope("other title", new Title("Other")))))
+					.isInstanceOf(IllegalArgumentException.class);
+		}
+
+		@Test
+		void changedCollection_unrelatedRootDocumentReused() {
+			store.updateEnvelope(ROOT, new Added(envelope("title", new Title("Ginevra"))));
+			store.updateEnvelope(POSTS, new Added(envelope("post #1", new Post("java", 1))));
+			var titleBefore = store.query(new RootQuery<>(Title.class));
+			var postsBefore = store.query(new RootQuery<>(TitleAndPosts.class));
+
+			store.updateEnvelope(POSTS, new Added(envelope("post #2", new Post("java", 2))));
+			var titleAfter = store.query(new RootQuery<>(Title.class));
+			var postsAfter = store.query(new RootQuery<>(TitleAndPosts.class));
+
+			assertThat(titleAfter).isSameAs(titleBefore);
+			assertThat(postsBefore.posts()).containsExactly(new Post("java", 1));
+			assertThat(postsAfter.posts()).containsExactlyInAnyOrder(new Post("java", 1), new Post("java", 2));
+		}
+
+	}
+
+	@Nested
+	class Collections {
+
+		@Test
+		void changedSender_patchesCachedResult() {
+			store.updateEnvelope(POSTS, new Added(envelope("post #1", new Post("java", 1))));
+			store.updateEnvelope(POSTS, new Added(envelope("post #2", new Post("java", 2))));
+			var before = store.query(posts());
+
+			store.updateEnvelope(POSTS, new Changed(envelope("post #2", new Post("kotlin", 2))));
+			var after = store.query(posts());
+
+			assertThat(after).containsExactlyInAnyOrder(new Post("java", 1), new Post("kotlin", 2));
+			// the unchanged document wasn't converted again
+			assertThat(find(after, new Post("java", 1))).isSameAs(find(before, new Post("java", 1)));
+		}
+
+		@Test
+		void removedSender_patchesCachedResult() {
+			store.updateEnvelope(POSTS, new Added(envelope("post #1", new Post("java", 1))));
+			store.updateEnvelope(POSTS, new Added(envelope("post #2", new Post("java", 2))));
+			var before = store.query(posts());
+
+			store.updateEnvelope(POSTS, new Removed(sender("post #2")));
+			var after = store.query(posts());
+
+			assertThat(after).containsExactly(new Post("java", 1));
+			assertThat(find(after, new Post("java", 1))).isSameAs(find(before, new Post("java", 1)));
+		}
+
+		@Test
+		void changedSender_patchesSelection() {
+			store.updateEnvelope(POSTS, new Added(envelope("post #1", new Post("java", 1))));
+			store.updateEnvelope(POSTS, new Added(envelope("post #2", new Post("java", 2))));
+			var before = store.query(posts().where("tag", "java"));
+
+			store.updateEnvelope(POSTS, new Changed(envelope("post #2", new Post("kotlin", 2))));
+			var after = store.query(posts().where("tag", "java"));
+
+			assertThat(before).containsExactlyInAnyOrder(new Post("java", 1), new Post("java", 2));
+			assertThat(after).containsExactly(new Post("java", 1));
+		}
+
+		@Test
+		void changedSender_patchesEveryQueriedType() {
+			store.updateEnvelope(POSTS, new Added(envelope("post #1", new Post("java", 1))));
+			store.query(posts());
+			store.query(new CollectionQuery<>("posts", Tag.class));
+
+			store.updateEnvelope(POSTS, new Changed(envelope("post #1", new Post("kotlin", 1))));
+
+			assertThat(store.query(posts())).containsExactly(new Post("kotlin", 1));
+			assertThat(store.query(new CollectionQuery<>("posts", Tag.class))).containsExactly(new Tag("kotlin"));
+		}
+
+		@Test
+		void queryStoredType_storedInstance() {
+			var post = new Post("java", 1);
+			store.updateEnvelope(POSTS, new Added(envelope("post #1", post)));
+
+			assertThat(store.query(posts())).singleElement().isSameAs(post);
+		}
+
+		@Test
+		void queryOtherType_converted() {
+			store.updateEnvelope(POSTS, new Added(envelope("post #1", new Post("java", 1))));
+
+			assertThat(store.query(new CollectionQuery<>("posts", Tag.class))).containsExactly(new Tag("java"));
+		}
+
+		private CollectionQuery<Post> posts() {
+			return new CollectionQuery<>("posts", Post.class);
+		}
+
+		private static Post find(Set<Post> posts, Post post) {
+			return posts.stream()
+					.filter(post::equals)
+					.findFirst()
+					.orElseThrow();
+		}
+
+	}
+
+	@Nested
+	class Content {
+
+		@Test
+		void queryContent_sameInstance() {
+			var content = new HtmlContent(List.of());
+			store.updateEnvelope(POSTS, new Added(envelope("post #1", new Article("java", content))));
+
+			var result = store.query(new CollectionQuery<>("posts", Article.class));
+			assertThat(result).singleElement().extracting(Article::content).isSameAs(content);
+		}
+
+		@Test
+		void unchangedContent_noChange() {
+			var content = new HtmlContent(List.of());
+			store.updateEnvelope(ROOT, new Added(envelope("article", new Article("java", content))));
+			store.takeChanges();
+			store.updateEnvelope(ROOT, new Changed(envelope("article", new Article("java", content))));
+
+			assertThat(store.takeChanges().isEmpty()).isTrue();
+		}
+
+		@Test
+		void changedContent_previousContentReleased() {
+			store.updateEnvelope(ROOT, new Added(envelope("article", new Article("java", new HtmlContent(List.of())))));
+			store.updateEnvelope(ROOT, new Changed(envelope("article", new Article("java", new HtmlContent(List.of())))));
+
+			assertThat(store.toString()).contains("1 HTML contents");
+		}
+
+		@Test
+		void removedSender_contentReleased() {
+			store.updateEnvelope(ROOT, new Added(envelope("article", new Article("java", new HtmlContent(List.of())))));
+			store.updateEnvelope(ROOT, new Removed(sender("article")));
+
+			assertThat(store.toString()).contains("0 HTML contents");
+		}
+
+	}
+
+	@Nested
+	class Changes {
+
+		@Test
+		void noUpdates_noChanges() {
+			assertThat(store.takeChanges().isEmpty()).isTrue();
+		}
+
+		@Test
+		void updates_accumulateUntilTaken() {
+			store.updateEnvelope(ROOT, new Added(envelope("title", new Title("Ginevra"))));
+			store.updateEnvelope(POSTS, new Added(envelope("post #1", new Post("java", 1))));
+
+			var changes = store.takeChanges();
+			assertThat(changes.rootFields()).containsExactly("title");
+			assertThat(changes.collections()).containsExactly("posts");
+			assertThat(store.takeChanges().isEmpty()).isTrue();
+		}
+
+		@Test
+		void unchangedRootField_noChange() {
+			store.updateEnvelope(ROOT, new Added(envelope("title", new Title("Ginevra"))));
+			store.takeChanges();
+			store.updateEnvelope(ROOT, new Changed(envelope("title", new Title("Ginevra"))));
+
+			assertThat(store.takeChanges().isEmpty()).isTrue();
+		}
+
+		@Test
+		void collectionQuery_readsCollection() {
+			var footprint = store.footprintOf(new CollectionQuery<>("posts", Post.class));
+
+			assertThat(footprint.overlaps(StoreFootprint.ofCollection("posts"))).isTrue();
+			assertThat(footprint.overlaps(StoreFootprint.ofCollection("pages"))).isFalse();
+			assertThat(footprint.overlaps(StoreFootprint.ofRootFields(Set.of("title")))).isFalse();
+		}
+
+		@Test
+		void rootQuery_readsComponents() {
+			var footprint = store.footprintOf(new RootQuery<>(TitleAndPosts.class));
+
+			assertThat(footprint.overlaps(StoreFootprint.ofRootFields(Set.of("title")))).isTrue();
+			assertThat(footprint.overlaps(StoreFootprint.ofCollection("posts"))).isTrue();
+			assertThat(footprint.overlaps(StoreFootprint.ofRootFields(Set.of("author")))).isFalse();
+		}
+
+	}
+
+	private static SenderId sender(String name) {
+		return SenderId.source(name, URI.create("file:///" + name.replace(" ", "").replace("#", "")));
+	}
+
+	@SafeVarargs
+	private static <DOCUMENT extends Record & Document> SimpleEnvelope<DOCUMENT> envelope(String sender, DOCUMENT... documents) {
+		return new SimpleEnvelope<>(sender(sender), List.of(documents));
+	}
+
+	public record Title(String title) implements Document { }
+	public record Post(String tag, int rank) implements Document { }
+	public record Tag(String tag) implements Document { }
+	public record TitleAndPosts(String title, List<Post> posts) implements Document { }
+	public record Article(String tag, HtmlContent content) implements Document { }
+
+}
@@ -0,0 +1,182 @@
+package dev.nipafx.ginevra.execution;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.nipafx.ginevra.outline.SenderId;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MergedRootTests {
+
+	private static final ObjectMapper JSON = new ObjectMapper();
+
+	private static final SenderId SENDER_1 = SenderId.source("one", URI.create("file:///one"));
+	private static final SenderId SENDER_2 = SenderId.source("two", URI.create("file:///two"));
+
+	private final MergedRoot root = new MergedRoot();
+
+	@Nested
+	class Merging {
+
+		@Test
+		void singleDocument() {
+			var changed = root.put(SENDER_1, List.of(json("{ \"title\": \"Ginevra\", \"year\": 2024 }")));
+
+			assertThat(changed).containsExactlyInAnyOrder("title", "year");
+			assertThat(root.get("title").asText()).isEqualTo("Ginevra");
+			assertThat(root.get("year").asInt()).isEqualTo(2024);
+			assertThat(root.get("unknown")).isNull();
+		}
+
+		@Test
+		void documentsFromDifferentSenders() {
+			root.put(SENDER_1, List.of(json("{ \"title\": \"Ginevra\" }")));
+			root.put(SENDER_2, List.of(json("{ \"year\": 2024 }")));
+
+			assertThat(root.get("title").asText()).isEqualTo("Ginevra");
+			assertThat(root.get("year").asInt()).isEqualTo(2024);
+		}
+
+		@Test
+		void nestedObjects() {
+			root.put(SENDER_1, List.of(json("{ \"meta\": { \"title\": \"Ginevra\" } }")));
+			root.put(SENDER_2, List.of(json("{ \"meta\": { \"year\": 2024 } }")));
+
+			assertThat(root.get("meta")).isEqualTo(json("{ \"title\": \"Ginevra\", \"year\": 2024 }"));
+		}
+
+		@Test
+		void nullValues_areUndefined() {
+			root.put(SENDER_1, List.of(json("{ \"title\": \"Ginevra\", \"year\": null }")));
+			root.put(SENDER_2, List.of(json("{ \"title\": null, \"year\": 2024 }")));
+
+			assertThat(root.get("title").asText()).isEqualTo("Ginevra");
+			assertThat(root.get("year").asInt()).isEqualTo(2024);
+		}
+
+		@Test
+		void emptyArraysAndObjects_areUndefined() {
+			root.put(SENDER_1, List.of(json("{ \"tags\": [], \"meta\": {} }")));
+			root.put(SENDER_2, List.of(json("{ \"tags\": [], \"meta\": { \"year\": 2024 } }")));
+
+			assertThat(root.get("tags")).isEqualTo(json("[]"));
+			assertThat(root.get("meta")).isEqualTo(json("{ \"year\": 2024 }"));
+		}
+
+		@Test
+		void emptyArray_replacedByDefinedOne() {
+			root.put(SENDER_1, List.of(json("{ \"tags\": [] }")));
+			root.put(SENDER_2, List.of(json("{ \"tags\": [ \"java\" ] }")));
+
+			assertThat(root.get("tags")).isEqualTo(json("[ \"java\" ]"));
+		}
+
+	}
+
+	@Nested
+	class Updating {
+
+		@Test
+		void changeSender_replacesItsDocuments() {
+			root.put(SENDER_1, List.of(json("{ \"title\": \"Ginevra\", \"year\": 2024 }")));
+			root.put(SENDER_2, List.of(json("{ \"author\": \"nipafx\" }")));
+
+			var changed = root.put(SENDER_1, List.of(json("{ \"title\": \"Ginevra\", \"version\": 2 }")));
+
+			assertThat(changed).containsExactlyInAnyOrder("year", "version");
+			assertThat(root.get("year")).isNull();
+			assertThat(root.get("version").asInt()).isEqualTo(2);
+			assertThat(root.get("author").asText()).isEqualTo("nipafx");
+		}
+
+		@Test
+		void removeSender_removesOnlyItsFields() {
+			root.put(SENDER_1, List.of(json("{ \"meta\": { \"title\": \"Ginevra\" } }")));
+			root.put(SENDER_2, List.of(json("{ \"meta\": { \"year\": 2024 }, \"author\": \"nipafx\" }")));
+
+			var changed = root.remove(SENDER_2);
+
+			assertThat(changed).containsExactlyInAnyOrder("meta", "author");
+			assertThat(root.get("meta")).isEqualTo(json("{ \"title\": \"Ginevra\" }"));
+			assertThat(root.get("author")).isNull();
+			assertThat(root.size()).isEqualTo(1);
+		}
+
+		@Test
+		void removeUnknownSender_changesNothing() {
+			root.put(SENDER_1, List.of(json("{ \"title\": \"Ginevra\" }")));
+
+			assertThat(root.remove(SENDER_2)).isEmpty();
+			assertThat(root.get("title").asText()).isEqualTo("Ginevra");
+		}
+
+	}
+
+	@Nested
+	class Duplicates {
+
+		@Test
+		void sameKeyFromDifferentSenders_fails() {
+			root.put(SENDER_1, List.of(json("{ \"title\": \"Ginevra\" }")));
+
+			assertThatThrownBy(() -> root.put(SENDER_2, List.of(json("{ \"title\": \"Other\" }"))))
+					.isInstanceOf(IllegalArgumentException.class)
+					.hasMessageContaining("'title'");
+		}
+
+		@Test
+		void sameNestedKeyFromDifferentSenders_fails() {
+			root.put(SENDER_1, List.of(json("{ \"meta\": { \"title\": \"Ginevra\" } }")));
+
+			assertThatThrownBy(() -> root.put(SENDER_2, List.of(json("{ \"meta\": { \"title\": \"Other\" } }"))))
+					.isInstanceOf(IllegalArgumentException.class)
+					.hasMessageContaining("'meta.title'");
+		}
+
+		@Test
+		void sameKeyFromOneSender_fails() {
+			assertThatThrownBy(() -> root.put(SENDER_1, List.of(
+					json("{ \"title\": \"Ginevra\" }"),
+					json("{ \"title\": \"Other\" }"))))
+					.isInstanceOf(IllegalArgumentException.class);
+		}
+
+		@Test
+		void failedUpdate_leavesRootUnchanged() {
+			root.put(SENDER_1, List.of(json("{ \"title\": \"Ginevra\" }")));
+			root.put(SENDER_2, List.of(json("{ \"year\": 2024 }")));
+
+			assertThatThrownBy(() -> root.put(SENDER_2, List.of(json("{ \"title\": \"Other\", \"author\": \"nipafx\" }"))))
+					.isInstanceOf(IllegalArgumentException.class);
+			assertThat(root.get("title").asText()).isEqualTo("Ginevra");
+			assertThat(root.get("year").asInt()).isEqualTo(2024);
+			assertThat(root.get("author")).isNull();
+		}
+
+		@Test
+		void changeOwnValue_succeeds() {
+			root.put(SENDER_1, List.of(json("{ \"title\": \"Ginevra\" }")));
+
+			var changed = root.put(SENDER_1, List.of(json("{ \"title\": \"Other\" }")));
+
+			assertThat(changed).containsExactly("title");
+			assertThat(root.get("title").asText()).isEqualTo("Other");
+		}
+
+	}
+
+	private static JsonNode json(String json) {
+		try {
+			return JSON.readTree(json);
+		} catch (Exception ex) {
+			throw new IllegalArgumentException(ex);
+		}
+	}
+
+}
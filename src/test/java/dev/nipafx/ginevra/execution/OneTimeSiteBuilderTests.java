@@ -0,0 +1,187 @@
+package dev.nipafx.ginevra.execution;
+
+import dev.nipafx.ginevra.outline.Document;
+import dev.nipafx.ginevra.outline.Envelope;
+import dev.nipafx.ginevra.outline.Query.CollectionQuery;
+import dev.nipafx.ginevra.outline.Query.RootQuery;
+import dev.nipafx.ginevra.outline.SenderId;
+import dev.nipafx.ginevra.outline.SimpleEnvelope;
+import dev.nipafx.ginevra.outline.Source;
+import dev.nipafx.ginevra.outline.SourceEvent;
+import dev.nipafx.ginevra.render.Renderer;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OneTimeSiteBuilderTests {
+
+	private static final int POST_COUNT = 200;
+	private static final List<String> AUTHORS = List.of("Ada", "Grace", "Barbara", "Frances");
+
+	@Nested
+	class Sequential {
+
+		@Test
+		void mergedDocuments_stored() throws InterruptedException {
+			var store = build(false);
+
+			assertThat(store.query(new CollectionQuery<>("posts", Post.class))).hasSize(POST_COUNT);
+			assertThat(store.query(new CollectionQuery<>("authored", AuthoredPost.class))).hasSize(POST_COUNT);
+			assertThat(store.query(new CollectionQuery<>("located", LocatedPost.class))).hasSize(POST_COUNT / 2);
+		}
+
+	}
+
+	@Nested
+	class Parallel {
+
+		@Test
+		void mergedDocuments_stored() throws InterruptedException {
+			var store = build(true);
+
+			assertThat(store.query(new CollectionQuery<>("posts", Post.class))).hasSize(POST_COUNT);
+			assertThat(store.query(new CollectionQuery<>("authored", AuthoredPost.class))).hasSize(POST_COUNT);
+			assertThat(store.query(new CollectionQuery<>("located", LocatedPost.class))).hasSize(POST_COUNT / 2);
+		}
+
+		@Test
+		void sameStoreContentAsSequential() throws InterruptedException {
+			var sequential = build(false);
+			var parallel = build(true);
+
+			assertThat(parallel.query(new RootQuery<>(Site.class)))
+					.isEqualTo(sequential.query(new RootQuery<>(Site.class)));
+			assertThat(parallel.query(new CollectionQuery<>("posts", Post.class)))
+					.containsExactlyInAnyOrderElementsOf(sequential.query(new CollectionQuery<>("posts", Post.class)));
+			assertThat(parallel.query(new CollectionQuery<>("authored", AuthoredPost.class)))
+					.containsExactlyInAnyOrderElementsOf(sequential.query(new CollectionQuery<>("authored", AuthoredPost.class)));
+			assertThat(parallel.query(new CollectionQuery<>("located", LocatedPost.class)))
+					.containsExactlyInAnyOrderElementsOf(sequential.query(new CollectionQuery<>("located", LocatedPost.class)));
+		}
+
+		@Test
+		void sameStoreContentAcrossBuilds() throws InterruptedException {
+			var expected = build(true).query(new CollectionQuery<>("located", LocatedPost.class));
+
+			for (int i = 0; i < 10; i++)
+				assertThat(build(true).query(new CollectionQuery<>("located", LocatedPost.class)))
+						.containsExactlyInAnyOrderElementsOf(expected);
+		}
+
+	}
+
+	/**
+	 * Builds an outline with a chain of merges: posts are merged with their authors and the result
+	 * is (after filtering) merged with the authors' countries, so the second merge only sees all
+	 * its input if it runs after the first one.
+	 */
+	private static OneTimeStore build(boolean parallel) throws InterruptedException {
+		var outliner = new NodeOutliner(Optional.empty(), Optional.empty(), Optional.empty());
+
+		outliner.store(outliner.source(new Site("Ginevra")));
+
+		var posts = outliner.source(new PostSource());
+		outliner.store(posts, "posts");
+		var authors = outliner.source(new ListSource<>("authors", AUTHORS.stream()
+				.map(name -> new Author(name, AUTHORS.indexOf(name) % 2 == 0 ? "UK" : "US"))
+				.toList()));
+		var countries = outliner.source(new ListSource<>("countries", List.of(
+				new Country("UK", "Europe"),
+				new Country("US", "North America"))));
+
+		var authored = outliner.merge(
+				posts, authors,
+				Post::author, Author::name,
+				(post, author) -> List.of(new AuthoredPost(post.id(), author.name(), author.country())));
+		outliner.store(authored, "authored");
+		var fromUk = outliner.filter(authored, post -> post.country().equals("UK"));
+		var located = outliner.merge(
+				fromUk, countries,
+				AuthoredPost::country, Country::code,
+				(post, country) -> List.of(new LocatedPost(post.id(), post.author(), country.continent())));
+		outliner.store(located, "located");
+
+		var store = new OneTimeStore();
+		var renderer = new Renderer(store, Path.of("resources"), Path.of("style"));
+		new OneTimeSiteBuilder(store, renderer, new NoFileSystem(), parallel).build((NodeOutline) outliner.build());
+		return store;
+	}
+
+	public record Site(String title) implements Document { }
+	public record Post(int id, String author) implements Document { }
+	public record Author(String name, String country) implements Document { }
+	public record Country(String code, String continent) implements Document { }
+	public record AuthoredPost(int id, String author, String country) implements Document { }
+	public record LocatedPost(int id, String author, String continent) implements Document { }
+
+	/**
+	 * Emits the posts in many small envelopes, so a parallel build processes them concurrently.
+	 */
+	private static class PostSource extends ListSource<Post> {
+
+		PostSource() {
+			super("posts", IntStream
+					.range(0, POST_COUNT)
+					.mapToObj(id -> new Post(id, AUTHORS.get(id % AUTHORS.size())))
+					.toList());
+		}
+
+	}
+
+	private static class ListSource<DOCUMENT extends Record & Document> implements Source<DOCUMENT> {
+
+		private final String name;
+		private final List<DOCUMENT> documents;
+
+		ListSource(String name, List<DOCUMENT> documents) {
+			this.name = name;
+			this.documents = documents;
+		}
+
+		@Override
+		public List<Envelope<DOCUMENT>> loadAll() {
+			return IntStream
+					.range(0, documents.size())
+					.<Envelope<DOCUMENT>> mapToObj(index -> new SimpleEnvelope<>(
+							SenderId.source(name, URI.create(name + "/" + index)),
+							List.of(documents.get(index))))
+					.toList();
+		}
+
+		@Override
+		public void observeChanges(Consumer<SourceEvent> listener) {
+			// the documents never change
+		}
+
+		@Override
+		public void stopObservation() {
+			// the documents never change
+		}
+
+	}
+
+	private static class NoFileSystem implements SiteFileSystem {
+
+		@Override
+		public void initialize() { }
+
+		@Override
+		public void writeTemplatedFile(TemplatedFile file) { }
+
+		@Override
+		public void copyStaticFile(Path file, Path targetFolder) { }
+
+		@Override
+		public void awaitCompletion() { }
+
+	}
+
+}
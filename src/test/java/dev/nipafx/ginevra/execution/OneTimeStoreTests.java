@@ -3,10 +3,12 @@ package dev.nipafx.ginevra.execution;
 import dev.nipafx.ginevra.outline.Document;
 import dev.nipafx.ginevra.outline.Query.CollectionQuery;
 import dev.nipafx.ginevra.outline.Query.RootQuery;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
+import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -49,15 +51,43 @@ class OneTimeStoreTests {
 			assertThat(result).isEqualTo(new MergedTestDocument("content", "more content"));
 		}
 
-//		@Test
+		@Test
+		void storeTwice_nestedDocuments_merged() {
+			store.storeDocument(new NestingTestDocument(new TestDocument("content")));
+			store.storeDocument(new NestingNonCollidingTestDocument(new NonCollidingTestDocument("more content")));
+
+			var result = store.query(new RootQuery<>(NestingMergedTestDocument.class));
+			assertThat(result.nested()).isEqualTo(new MergedTestDocument("content", "more content"));
+		}
+
+		@Test
 		void storeTwice_sameDocument_fails() {
-			// TODO: re-enable duplicate value detection (see related TODOs in `OneTimeStore`)
 			store.storeDocument(new TestDocument("content"));
 
 			assertThatThrownBy(() -> store.storeDocument(new TransformedTestDocument("more content")))
 					.isInstanceOf(IllegalArgumentException.class);
 		}
 
+		@Test
+		void storeTwice_sameDocument_rootUnchanged() {
+			store.storeDocument(new TestDocument("content"));
+
+			assertThatThrownBy(() -> store.storeDocument(new MergedTestDocument("other content", "more content")))
+					.isInstanceOf(IllegalArgumentException.class);
+			var result = store.query(new RootQuery<>(TestDocument.class));
+			assertThat(result).isEqualTo(new TestDocument("content"));
+		}
+
+		@Test
+		void storeTwice_emptyValues_succeeds() {
+			store.storeDocument(new OptionalTestDocument(Optional.empty(), List.of()));
+			store.storeDocument(new OptionalTestDocument(Optional.of("content"), List.of()));
+			store.storeDocument(new OptionalTestDocument(Optional.empty(), List.of()));
+
+			var result = store.query(new RootQuery<>(OptionalTestDocument.class));
+			assertThat(result).isEqualTo(new OptionalTestDocument(Optional.of("content"), List.of()));
+		}
+
 		@Test
 		void queryCollection() {
 			var testDocument1 = new TestDocument("content #1");
@@ -117,6 +147,15 @@ class OneTimeStoreTests {
 			assertThat(result).containsExactlyInAnyOrder(testDocument1, testDocument2, testDocument3);
 		}
 
+		@Test
+		void querySameType_returnsStoredInstances() {
+			var testDocument = new TestDocument("content");
+			store.storeDocument("collection", testDocument);
+
+			var result = store.query(new CollectionQuery<>("collection", TestDocument.class));
+			assertThat(result).singleElement().isSameAs(testDocument);
+		}
+
 		@Test
 		void queryMultipleTransformed() {
 			store.storeDocument("collection", new TestDocument("content #1"));
@@ -130,12 +169,153 @@ class OneTimeStoreTests {
 					new TransformedTestDocument("content #3"));
 		}
 
+		@Test
+		void queryTransformed_primitiveComponent() {
+			store.storeDocument("collection", new RankedTestDocument("content", 3));
+
+			var result = store.query(new CollectionQuery<>("collection", TransformedRankedTestDocument.class));
+			assertThat(result).containsExactly(new TransformedRankedTestDocument("content", 3));
+		}
+
+	}
+
+	@Nested
+	class Selections {
+
+		private final Post javaFirst = new Post("java", 1, Optional.of("Nicolai"));
+		private final Post javaSecond = new Post("java", 2, Optional.empty());
+		private final Post javaThird = new Post("java", 3, Optional.of("Nicolai"));
+		private final Post kotlinFirst = new Post("kotlin", 1, Optional.of("Someone"));
+
+		@BeforeEach
+		void storePosts() {
+			// store in "random" order to make sure results are actually ordered
+			store.storeDocument("posts", javaSecond);
+			store.storeDocument("posts", kotlinFirst);
+			store.storeDocument("posts", javaThird);
+			store.storeDocument("posts", javaFirst);
+		}
+
+		private CollectionQuery<Post> posts() {
+			return new CollectionQuery<>("posts", Post.class);
+		}
+
+		@Test
+		void whereEquals() {
+			var result = store.query(posts().where("tag", "java"));
+			assertThat(result).containsExactlyInAnyOrder(javaFirst, javaSecond, javaThird);
+		}
+
+		@Test
+		void whereEquals_optionalComponent() {
+			var result = store.query(posts().where("author", "Nicolai"));
+			assertThat(result).containsExactlyInAnyOrder(javaFirst, javaThird);
+		}
+
+		@Test
+		void whereEquals_noMatch() {
+			var result = store.query(posts().where("tag", "scala"));
+			assertThat(result).isEmpty();
+		}
+
+		@Test
+		void whereBetween() {
+			var result = store.query(posts().whereBetween("rank", 2, 4));
+			assertThat(result).containsExactlyInAnyOrder(javaSecond, javaThird);
+		}
+
+		@Test
+		void whereAtLeast_whereBelow() {
+			assertThat(store.query(posts().whereAtLeast("rank", 3))).containsExactly(javaThird);
+			assertThat(store.query(posts().whereBelow("rank", 2))).containsExactlyInAnyOrder(javaFirst, kotlinFirst);
+		}
+
+		@Test
+		void multipleConditions() {
+			var result = store.query(posts().whereAtLeast("rank", 2).where("author", "Nicolai"));
+			assertThat(result).containsExactly(javaThird);
+		}
+
+		@Test
+		void orderBy() {
+			var result = store.query(posts().where("tag", "java").orderBy("rank"));
+			assertThat(result).containsExactly(javaFirst, javaSecond, javaThird);
+		}
+
+		@Test
+		void orderByDescending() {
+			var result = store.query(posts().where("tag", "java").orderByDescending("rank"));
+			assertThat(result).containsExactly(javaThird, javaSecond, javaFirst);
+		}
+
+		@Test
+		void orderBy_emptyValuesLast() {
+			var result = store.query(posts().orderByDescending("author"));
+			// the order of documents with the same value is undefined
+			assertThat(result).first().isEqualTo(kotlinFirst);
+			assertThat(result).last().isEqualTo(javaSecond);
+		}
+
+		@Test
+		void offsetAndLimit() {
+			var result = store.query(posts().where("tag", "java").orderBy("rank").offset(1).limit(1));
+			assertThat(result).containsExactly(javaSecond);
+		}
+
+		@Test
+		void offsetBeyondResults() {
+			var result = store.query(posts().orderBy("rank").offset(10));
+			assertThat(result).isEmpty();
+		}
+
+		@Test
+		void filterBeforeLimit() {
+			var result = store.query(posts()
+					.withFilter(post -> post.author().isPresent())
+					.where("tag", "java")
+					.orderByDescending("rank")
+					.limit(1));
+			assertThat(result).containsExactly(javaThird);
+		}
+
+		@Test
+		void selectionWithOtherType() {
+			var result = store.query(new CollectionQuery<>("posts", TransformedPost.class)
+					.where("tag", "kotlin"));
+			assertThat(result).containsExactly(new TransformedPost("kotlin", 1));
+		}
+
+		@Test
+		void unknownComponent_fails() {
+			assertThatThrownBy(() -> store.query(posts().where("title", "Ginevra")))
+					.isInstanceOf(IllegalArgumentException.class);
+		}
+
+		@Test
+		void newDocument_invalidatesSelection() {
+			var before = store.query(posts().where("tag", "java"));
+			var javaFourth = new Post("java", 4, Optional.empty());
+			store.storeDocument("posts", javaFourth);
+			var after = store.query(posts().where("tag", "java"));
+
+			assertThat(before).containsExactlyInAnyOrder(javaFirst, javaSecond, javaThird);
+			assertThat(after).containsExactlyInAnyOrder(javaFirst, javaSecond, javaThird, javaFourth);
+		}
+
 	}
 
 	public record TestDocument(String content) implements Document { }
 	public record NonCollidingTestDocument(String moreContent) implements Document { }
 	public record MergedTestDocument(String content, String moreContent) implements Document { }
 
+	public record NestingTestDocument(TestDocument nested) implements Document { }
+	public record NestingNonCollidingTestDocument(NonCollidingTestDocument nested) implements Document { }
+	public record NestingMergedTestDocument(MergedTestDocument nested) implements Document { }
+
+	public record OptionalTestDocument(Optional<String> content, List<String> tags) implements Document { }
+	public record RankedTestDocument(String content, int rank) implements Document { }
+	public record TransformedRankedTestDocument(String content, int rank) implements Document { }
+
 	public record RootCollectionDocument(List<TestDocument> collection) implements Document { }
 	public record RootMixedDocument(String content, String moreContent, List<TestDocument> collection) implements Document { }
 
@@ -144,4 +324,7 @@ class OneTimeStoreTests {
 	// For tests of record mapping itself, see `RecordMapperTests`.
 	public record TransformedTestDocument(String content) implements Document { }
 
+	public record Post(String tag, int rank, Optional<String> author) implements Document { }
+	public record TransformedPost(String tag, int rank) implements Document { }
+
 }
@@ -0,0 +1,85 @@
+package dev.nipafx.ginevra.execution;
+
+import dev.nipafx.ginevra.outline.Document;
+import dev.nipafx.ginevra.outline.SenderId;
+import dev.nipafx.ginevra.outline.SimpleEnvelope;
+import dev.nipafx.ginevra.outline.SourceEvent;
+import dev.nipafx.ginevra.outline.SourceEvent.Added;
+import dev.nipafx.ginevra.outline.SourceEvent.Changed;
+import dev.nipafx.ginevra.outline.SourceEvent.Removed;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SourceEventsTests {
+
+	private static final SenderId SENDER_1 = SenderId.source("one", URI.create("file:///one"));
+	private static final SenderId SENDER_2 = SenderId.source("two", URI.create("file:///two"));
+
+	@Test
+	void singleEvents_unchanged() {
+		var events = List.<SourceEvent> of(new Added(envelope(SENDER_1, "a")), new Removed(SENDER_2));
+
+		assertThat(SourceEvents.coalesce(events)).isEqualTo(events);
+	}
+
+	@Test
+	void addedThenChanged_addedWithLatestDocuments() {
+		var coalesced = SourceEvents.coalesce(List.of(
+				new Added(envelope(SENDER_1, "a")),
+				new Changed(envelope(SENDER_1, "b")),
+				new Changed(envelope(SENDER_1, "c"))));
+
+		assertThat(coalesced).containsExactly(new Added(envelope(SENDER_1, "c")));
+	}
+
+	@Test
+	void addedThenRemoved_noEvent() {
+		var coalesced = SourceEvents.coalesce(List.of(
+				new Added(envelope(SENDER_1, "a")),
+				new Changed(envelope(SENDER_1, "b")),
+				new Removed(SENDER_1)));
+
+		assertThat(coalesced).isEmpty();
+	}
+
+	@Test
+	void changedThenRemoved_removed() {
+		var coalesced = SourceEvents.coalesce(List.of(
+				new Changed(envelope(SENDER_1, "a")),
+				new Removed(SENDER_1)));
+
+		assertThat(coalesced).containsExactly(new Removed(SENDER_1));
+	}
+
+	@Test
+	void removedThenAdded_changed() {
+		var coalesced = SourceEvents.coalesce(List.of(
+				new Removed(SENDER_1),
+				new Added(envelope(SENDER_1, "a"))));
+
+		assertThat(coalesced).containsExactly(new Changed(envelope(SENDER_1, "a")));
+	}
+
+	@Test
+	void differentSenders_orderedByFirstEvent() {
+		var coalesced = SourceEvents.coalesce(List.of(
+				new Changed(envelope(SENDER_2, "a")),
+				new Changed(envelope(SENDER_1, "b")),
+				new Changed(envelope(SENDER_2, "c"))));
+
+		assertThat(coalesced).containsExactly(
+				new Changed(envelope(SENDER_2, "c")),
+				new Changed(envelope(SENDER_1, "b")));
+	}
+
+	private static SimpleEnvelope<Text> envelope(SenderId sender, String text) {
+		return new SimpleEnvelope<>(sender, List.of(new Text(text)));
+	}
+
+	public record Text(String text) implements Document { }
+
+}
@@ -0,0 +1,100 @@
+package dev.nipafx.ginevra.execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WarmUpTests {
+
+	private final WarmUp warmUp = new WarmUp(1);
+	private final List<String> executed = new CopyOnWriteArrayList<>();
+
+	@Test
+	void prioritizedTasksRunFirst() throws Exception {
+		var done = new CountDownLatch(3);
+		warmUp
+				.start(
+						List.of(record("prioritized", done)),
+						List.of(record("other #1", done), record("other #2", done)))
+				.get(1, TimeUnit.SECONDS);
+
+		assertThat(done.await(1, TimeUnit.SECONDS)).isTrue();
+		assertThat(executed).containsExactly("prioritized", "other #1", "other #2");
+	}
+
+	@Test
+	void newRound_cancelsPendingTasks() throws Exception {
+		var blocker = new CountDownLatch(1);
+		var done = new CountDownLatch(1);
+		warmUp.start(List.of(), List.of(() -> await(blocker), record("outdated", done)));
+
+		warmUp.start(List.of(), List.of(record("current", done)));
+		blocker.countDown();
+
+		assertThat(done.await(1, TimeUnit.SECONDS)).isTrue();
+		assertThat(executed).containsExactly("current");
+	}
+
+	@Test
+	void cancel_cancelsPendingTasks() throws Exception {
+		var blocker = new CountDownLatch(1);
+		var done = new CountDownLatch(1);
+		var prioritized = warmUp.start(List.of(() -> await(blocker), record("outdated", done)), List.of());
+
+		// cancelling waits for the running task, so it must be unblocked from another thread
+		Thread.ofVirtual().start(() -> {
+			sleep(100);
+			blocker.countDown();
+		});
+		warmUp.cancel();
+
+		// even though the tasks were cancelled, the returned future completes
+		prioritized.get(1, TimeUnit.SECONDS);
+		assertThat(done.await(100, TimeUnit.MILLISECONDS)).isFalse();
+		assertThat(executed).isEmpty();
+	}
+
+	@Test
+	void cancel_waitsForRunningTasks() throws Exception {
+		var started = new CountDownLatch(1);
+		warmUp.start(List.of(), List.of(() -> {
+			started.countDown();
+			sleep(100);
+			executed.add("running");
+		}));
+		assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+
+		warmUp.cancel();
+
+		assertThat(executed).containsExactly("running");
+	}
+
+	private Runnable record(String name, CountDownLatch done) {
+		return () -> {
+			executed.add(name);
+			done.countDown();
+		};
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
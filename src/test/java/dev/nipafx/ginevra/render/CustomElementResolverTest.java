@@ -0,0 +1,214 @@
+package dev.nipafx.ginevra.render;
+
+import dev.nipafx.ginevra.css.Css;
+import dev.nipafx.ginevra.css.CssStyle;
+import dev.nipafx.ginevra.css.CssStyled;
+import dev.nipafx.ginevra.execution.StoreFront;
+import dev.nipafx.ginevra.html.Classes;
+import dev.nipafx.ginevra.html.CustomElement;
+import dev.nipafx.ginevra.html.Element;
+import dev.nipafx.ginevra.outline.CustomQueryElement;
+import dev.nipafx.ginevra.outline.Document;
+import dev.nipafx.ginevra.outline.FileDocument;
+import dev.nipafx.ginevra.outline.Query.CollectionQuery;
+import dev.nipafx.ginevra.outline.Query.RootQuery;
+import dev.nipafx.ginevra.render.ResourceFile.CssFile;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static dev.nipafx.ginevra.html.HtmlElement.div;
+import static dev.nipafx.ginevra.html.HtmlElement.p;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomElementResolverTest {
+
+	private static final AtomicInteger COMPOSITIONS = new AtomicInteger();
+
+	public record Header(String title) implements CustomElement, CssStyled<Header.Style> {
+
+		public record Style(Classes header, Css css) implements CssStyle { }
+
+		private static final Style STYLE = Css.parse(Style.class, """
+				.header {
+					color: red;
+				}
+				""");
+
+		@Override
+		public List<Element> compose() {
+			COMPOSITIONS.incrementAndGet();
+			return List.of(div.classes(STYLE.header()).children(p.text(title)));
+		}
+
+		@Override
+		public Style style() {
+			return STYLE;
+		}
+
+	}
+
+	public record Page(String title) implements CustomElement {
+
+		@Override
+		public List<Element> compose() {
+			return List.of(new Header(title), p.text("content"));
+		}
+
+	}
+
+	public record Post(String title) implements Document { }
+
+	public record PostList() implements CustomQueryElement<Post> {
+
+		private static final CollectionQuery<Post> QUERY = new CollectionQuery<>("posts", Post.class);
+
+		@Override
+		public CollectionQuery<Post> query() {
+			return QUERY;
+		}
+
+		@Override
+		public List<Element> compose(Post post) {
+			return List.of(p.text(post.title()));
+		}
+
+	}
+
+	private final GenerationalStore store = new GenerationalStore();
+
+	private HtmlDocumentWithResources resolve(ElementResolver resolver, Element element) {
+		return resolver.resolveToDocument(element, Optional.empty());
+	}
+
+	@Nested
+	class WithoutCache {
+
+		private final ElementResolver resolver = new ElementResolver(store, Path.of(""), Path.of("style"), ElementCache.none());
+
+		@Test
+		void equalElements_composedEachTime() {
+			COMPOSITIONS.set(0);
+			resolve(resolver, new Page("Title"));
+			resolve(resolver, new Page("Title"));
+
+			assertThat(COMPOSITIONS.get()).isEqualTo(2);
+		}
+
+		@Test
+		void queryElement_recordsQuery() {
+			var resolved = resolve(resolver, div.children(new PostList()));
+
+			assertThat(resolved.queries()).containsExactly(PostList.QUERY);
+		}
+
+	}
+
+	@Nested
+	class WithCache {
+
+		private final ElementResolver resolver = new ElementResolver(store, Path.of(""), Path.of("style"), ElementCache.memoizing());
+
+		@Test
+		void equalElements_composedOnce() {
+			COMPOSITIONS.set(0);
+			resolve(resolver, new Page("Title"));
+			resolve(resolver, new Page("Title"));
+
+			assertThat(COMPOSITIONS.get()).isEqualTo(1);
+		}
+
+		@Test
+		void differentElements_composedEach() {
+			COMPOSITIONS.set(0);
+			resolve(resolver, new Page("Title"));
+			resolve(resolver, new Page("Other Title"));
+
+			assertThat(COMPOSITIONS.get()).isEqualTo(2);
+		}
+
+		@Test
+		void equalElements_sameResult() {
+			var uncached = new ElementResolver(store, Path.of(""), Path.of("style"), ElementCache.none());
+			var expected = resolve(uncached, new Page("Title"));
+
+			resolve(resolver, new Page("Title"));
+			var resolved = resolve(resolver, new Page("Title"));
+
+			assertThat(resolved).isEqualTo(expected);
+		}
+
+		@Test
+		void cachedElement_contributesResources() {
+			resolve(resolver, new Page("Title"));
+			var resolved = resolve(resolver, new Page("Title"));
+
+			assertThat(resolved.referencedResources())
+					.hasSize(1)
+					.first()
+					.isInstanceOfSatisfying(CssFile.class, css -> assertThat(css.content()).contains("color: red"));
+		}
+
+		@Test
+		void cachedQueryElement_recordsQuery() {
+			resolve(resolver, div.children(new PostList()));
+			var resolved = resolve(resolver, div.children(new PostList()));
+
+			assertThat(resolved.queries()).containsExactly(PostList.QUERY);
+		}
+
+		@Test
+		void storeChanged_composedAgain() {
+			COMPOSITIONS.set(0);
+			resolve(resolver, new Page("Title"));
+			store.generation++;
+			resolve(resolver, new Page("Title"));
+
+			assertThat(COMPOSITIONS.get()).isEqualTo(2);
+		}
+
+		@Test
+		void capacityExceeded_leastRecentlyUsedComposedAgain() {
+			var boundedResolver = new ElementResolver(store, Path.of(""), Path.of("style"), ElementCache.memoizing(1));
+			COMPOSITIONS.set(0);
+			resolve(boundedResolver, new Header("Title"));
+			resolve(boundedResolver, new Header("Other Title"));
+			resolve(boundedResolver, new Header("Title"));
+
+			assertThat(COMPOSITIONS.get()).isEqualTo(3);
+		}
+
+	}
+
+	private static class GenerationalStore implements StoreFront {
+
+		private long generation = 0;
+
+		@Override
+		public <RESULT extends Record & Document> RESULT query(RootQuery<RESULT> query) {
+			throw new IllegalStateException("This store can't answer queries");
+		}
+
+		@Override
+		public <RESULT extends Record & Document> Set<RESULT> query(CollectionQuery<RESULT> query) {
+			return Set.of();
+		}
+
+		@Override
+		public Optional<? extends FileDocument> getResource(String name) {
+			throw new IllegalStateException("This store has no resources");
+		}
+
+		@Override
+		public long generation() {
+			return generation;
+		}
+
+	}
+
+}
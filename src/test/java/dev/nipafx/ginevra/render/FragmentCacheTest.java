@@ -0,0 +1,163 @@
+package dev.nipafx.ginevra.render;
+
+import dev.nipafx.ginevra.html.Element;
+import dev.nipafx.ginevra.html.Id;
+import dev.nipafx.ginevra.render.HtmlRenderer.Fragment;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static dev.nipafx.ginevra.html.HtmlElement.div;
+import static dev.nipafx.ginevra.html.HtmlElement.p;
+import static dev.nipafx.ginevra.html.HtmlElement.pre;
+import static dev.nipafx.ginevra.html.HtmlElement.span;
+import static dev.nipafx.ginevra.render.HtmlRendererTest.RENDERER;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FragmentCacheTest {
+
+	@Nested
+	class Rendering {
+
+		// the same instance is rendered repeatedly, so from the second time on, its fragment is used
+		private static final Element SHARED = div
+				.id(Id.of("shared"))
+				.children(
+						p.text("paragraph"),
+						div.children(span.id(Id.of("nested"))),
+						pre.text("line 1\n\tline 2"));
+
+		@Test
+		void sameIndentation_sameResult() {
+			for (int i = 0; i < 3; i++)
+				assertThat(RENDERER.render(div.children(SHARED))).isEqualTo("""
+						<div>
+							<div id="shared">
+								<p>paragraph</p>
+								<div>
+									<span id="nested"></span>
+								</div>
+								<pre>line 1
+							line 2</pre>
+							</div>
+						</div>
+						""");
+		}
+
+		@Test
+		void differentIndentation_rebased() {
+			RENDERER.render(SHARED);
+			RENDERER.render(SHARED);
+			var rendered = RENDERER.render(div.children(div.children(SHARED)));
+
+			assertThat(rendered).isEqualTo("""
+					<div>
+						<div>
+							<div id="shared">
+								<p>paragraph</p>
+								<div>
+									<span id="nested"></span>
+								</div>
+								<pre>line 1
+						line 2</pre>
+							</div>
+						</div>
+					</div>
+					""");
+		}
+
+		@Test
+		void afterText_sameResult() {
+			var element = div.children(span.text("before"), SHARED, span.text("after"));
+			var first = RENDERER.render(element);
+			var second = RENDERER.render(element);
+			var third = RENDERER.render(element);
+
+			assertThat(second).isEqualTo(first);
+			assertThat(third).isEqualTo(first);
+		}
+
+	}
+
+	@Nested
+	class Caching {
+
+		private final AtomicInteger renderings = new AtomicInteger();
+
+		private Fragment render(String html) {
+			renderings.incrementAndGet();
+			return new Fragment(html, new int[0], false);
+		}
+
+		@Test
+		void firstSighting_notCached() {
+			var cache = FragmentCache.bounded(1_000);
+			var element = p.text("text");
+
+			var fragment = cache.get(element, () -> render("<p>text</p>"));
+
+			assertThat(fragment).isEmpty();
+			assertThat(renderings).hasValue(0);
+		}
+
+		@Test
+		void secondSighting_renderedAndCached() {
+			var cache = FragmentCache.bounded(1_000);
+			var element = p.text("text");
+
+			cache.get(element, () -> render("<p>text</p>"));
+			var second = cache.get(element, () -> render("<p>text</p>"));
+			var third = cache.get(element, () -> render("<p>text</p>"));
+
+			assertThat(second).map(Fragment::html).contains("<p>text</p>");
+			assertThat(third).isEqualTo(second);
+			assertThat(renderings).hasValue(1);
+		}
+
+		@Test
+		void equalButNotSameElement_notCached() {
+			var cache = FragmentCache.bounded(1_000);
+
+			cache.get(p.text("text"), () -> render("<p>text</p>"));
+			var fragment = cache.get(p.text("text"), () -> render("<p>text</p>"));
+
+			assertThat(fragment).isEmpty();
+		}
+
+		@Test
+		void capacityExceeded_leastRecentlyUsedEvicted() {
+			// the capacity only suffices for two of these fragments
+			var cache = FragmentCache.bounded(25);
+			var first = p.text("first");
+			var second = p.text("second");
+			var third = p.text("third");
+			for (var element : new Element[] { first, second, third, first, second, first, third })
+				cache.get(element, () -> render("0123456789"));
+			renderings.set(0);
+
+			// `second` was used least recently when `third` was cached, so it was evicted
+			var firstFragment = cache.get(first, () -> render("0123456789"));
+			var thirdFragment = cache.get(third, () -> render("0123456789"));
+			var secondFragment = cache.get(second, () -> render("0123456789"));
+
+			assertThat(firstFragment).isPresent();
+			assertThat(thirdFragment).isPresent();
+			assertThat(secondFragment).isEmpty();
+			assertThat(renderings).hasValue(0);
+		}
+
+		@Test
+		void noCache_neverCached() {
+			var cache = FragmentCache.none();
+			var element = p.text("text");
+
+			cache.get(element, () -> render("<p>text</p>"));
+			var fragment = cache.get(element, () -> render("<p>text</p>"));
+
+			assertThat(fragment).isEmpty();
+		}
+
+	}
+
+}
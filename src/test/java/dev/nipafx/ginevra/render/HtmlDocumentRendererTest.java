@@ -2,6 +2,7 @@ package dev.nipafx.ginevra.render;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Locale;
@@ -91,4 +92,21 @@ class HtmlDocumentRendererTest {
 					""");
 	}
 
+	@Test
+	void streamed_sameAsRendered() {
+		var element = document
+				.language(Locale.US)
+				.head(head
+						.charset(StandardCharsets.UTF_8)
+						.title("The document title"))
+				.body(body
+						.children(List.of(
+								p.text("Hello"),
+								p.text("World"))));
+		var streamed = new StringWriter();
+		RENDERER.renderAsHtml(element, streamed);
+
+		assertThat(streamed.toString()).isEqualTo(RENDERER.render(element));
+	}
+
 }
@@ -480,6 +480,11 @@ class HtmlRendererTest {
 			throw new IllegalStateException("The empty store can't answer queries");
 		}
 
+		@Override
+		public long generation() {
+			return 0;
+		}
+
 	}
 
 }
@@ -0,0 +1,166 @@
+package dev.nipafx.ginevra.util;
+
+import dev.nipafx.ginevra.util.InMemoryCompiler.Compilation;
+import dev.nipafx.ginevra.util.InMemoryCompiler.FailedCompilation;
+import dev.nipafx.ginevra.util.InMemoryCompiler.SuccessfulCompilation;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryCompilerTests {
+
+	@TempDir
+	Path sourceRoot;
+
+	@Nested
+	class Incremental {
+
+		@Test
+		void firstCompilation_compilesAll() throws IOException {
+			writeSources();
+			var compiler = new InMemoryCompiler(sourceRoot);
+
+			var compilation = successful(compiler.compileSources());
+
+			assertThat(compilation.compiledClasses()).containsExactlyInAnyOrder("site.Page", "site.Title", "site.Footer");
+			assertThat(compilation.classes()).containsOnlyKeys("site.Page", "site.Title", "site.Footer");
+		}
+
+		@Test
+		void noChanges_compilesNothing() throws IOException {
+			writeSources();
+			var compiler = new InMemoryCompiler(sourceRoot);
+			var first = successful(compiler.compileSources());
+
+			var second = successful(compiler.compileSources());
+
+			assertThat(second.compiledClasses()).isEmpty();
+			assertThat(second.classes()).isEqualTo(first.classes());
+		}
+
+		@Test
+		void changedSource_compilesItAndDependents() throws IOException {
+			writeSources();
+			var compiler = new InMemoryCompiler(sourceRoot);
+			var first = successful(compiler.compileSources());
+
+			write("Title.java", "package site; public record Title(String text, int level) { }");
+			var second = successful(compiler.compileSources());
+
+			assertThat(second.compiledClasses()).containsExactlyInAnyOrder("site.Title", "site.Page");
+			assertThat(second.classes().get("site.Footer")).isSameAs(first.classes().get("site.Footer"));
+		}
+
+		@Test
+		void changedSupertype_compilesAllSubtypes() throws IOException {
+			writeSources();
+			write("Base.java", "package site; public abstract class Base { }");
+			write("Middle.java", "package site; public abstract class Middle extends Base { }");
+			write("Leaf.java", "package site; public class Leaf extends Middle { }");
+			var compiler = new InMemoryCompiler(sourceRoot);
+			successful(compiler.compileSources());
+
+			write("Base.java", "package site; public abstract class Base { public String name() { return \"base\"; } }");
+			var second = successful(compiler.compileSources());
+
+			// `Leaf` doesn't reference `Base` but inherits from it, so it must be compiled again
+			assertThat(second.compiledClasses()).containsExactlyInAnyOrder("site.Base", "site.Middle", "site.Leaf");
+		}
+
+		@Test
+		void changedConstant_compilesAll() throws IOException {
+			writeSources();
+			write("Copyright.java", "package site; public class Copyright { public static final String YEAR = \"2024\"; }");
+			write("Footer.java", "package site; public record Footer(String text) { String year() { return Copyright.YEAR; } }");
+			var compiler = new InMemoryCompiler(sourceRoot);
+			successful(compiler.compileSources());
+
+			write("Copyright.java", "package site; public class Copyright { public static final String YEAR = \"2025\"; }");
+			var second = successful(compiler.compileSources());
+
+			// `Footer` inlined the constant, so it doesn't reference `Copyright` but must be compiled again anyway
+			assertThat(second.compiledClasses()).containsExactlyInAnyOrder("site.Copyright", "site.Page", "site.Title", "site.Footer");
+		}
+
+		@Test
+		void changedPrivateConstant_compilesItAndDependents() throws IOException {
+			writeSources();
+			write("Title.java", "package site; public record Title(String text) { private static final int MAX = 80; }");
+			var compiler = new InMemoryCompiler(sourceRoot);
+			successful(compiler.compileSources());
+
+			write("Title.java", "package site; public record Title(String text) { private static final int MAX = 100; }");
+			var second = successful(compiler.compileSources());
+
+			assertThat(second.compiledClasses()).containsExactlyInAnyOrder("site.Title", "site.Page");
+		}
+
+		@Test
+		void removedSource_removesItsClasses() throws IOException {
+			writeSources();
+			var compiler = new InMemoryCompiler(sourceRoot);
+			successful(compiler.compileSources());
+
+			Files.delete(sourceRoot.resolve("Footer.java"));
+			var second = successful(compiler.compileSources());
+
+			assertThat(second.compiledClasses()).isEmpty();
+			assertThat(second.classes()).containsOnlyKeys("site.Page", "site.Title");
+		}
+
+		@Test
+		void removedDependency_fails() throws IOException {
+			writeSources();
+			var compiler = new InMemoryCompiler(sourceRoot);
+			successful(compiler.compileSources());
+
+			Files.delete(sourceRoot.resolve("Title.java"));
+			var second = compiler.compileSources();
+
+			assertThat(second).isInstanceOf(FailedCompilation.class);
+		}
+
+		@Test
+		void failedCompilation_isRetried() throws IOException {
+			writeSources();
+			var compiler = new InMemoryCompiler(sourceRoot);
+			successful(compiler.compileSources());
+
+			write("Footer.java", "package site; public record Footer(String text) { ");
+			assertThat(compiler.compileSources()).isInstanceOf(FailedCompilation.class);
+			write("Footer.java", "package site; public record Footer(String text, String year) { }");
+			var third = successful(compiler.compileSources());
+
+			assertThat(third.compiledClasses()).containsExactly("site.Footer");
+		}
+
+	}
+
+	private void writeSources() throws IOException {
+		write("Page.java", "package site; public record Page(Title title) { }");
+		write("Title.java", "package site; public record Title(String text) { }");
+		write("Footer.java", "package site; public record Footer(String text) { }");
+	}
+
+	private void write(String fileName, String source) throws IOException {
+		var file = sourceRoot.resolve(fileName);
+		var previousModification = Files.exists(file) ? Files.getLastModifiedTime(file).toInstant() : Instant.EPOCH;
+		Files.writeString(file, source);
+		// make sure the change is visible even if the file system's timestamps are coarse
+		Files.setLastModifiedTime(file, FileTime.from(previousModification.plusSeconds(1)));
+	}
+
+	private static SuccessfulCompilation successful(Compilation compilation) {
+		assertThat(compilation).isInstanceOf(SuccessfulCompilation.class);
+		return (SuccessfulCompilation) compilation;
+	}
+
+}
@@ -0,0 +1,260 @@
+package dev.nipafx.ginevra.util;
+
+import dev.nipafx.ginevra.util.MultiplexingQueue.Backpressure;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MultiplexingQueueTests {
+
+	private static final long TIMEOUT_SECONDS = 5;
+
+	@Nested
+	class Listeners {
+
+		@Test
+		void elementListener_calledPerElement() throws InterruptedException {
+			var handled = new LinkedBlockingQueue<String>();
+			var queue = new MultiplexingQueue<String>(handled::add, "test-queue");
+
+			queue.add("a");
+			queue.add("b");
+
+			assertThat(handled.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isEqualTo("a");
+			assertThat(handled.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isEqualTo("b");
+		}
+
+		@Test
+		void batchListener_calledWithWaitingElements() throws InterruptedException {
+			var gate = new Gate();
+			var queue = new MultiplexingQueue<String>("test-queue");
+			var batches = new LinkedBlockingQueue<List<String>>();
+			queue.addBatchListener(gate::pass);
+			queue.addBatchListener(batches::add);
+
+			queue.add("first");
+			gate.awaitBlocked();
+			queue.add("a");
+			queue.add("b");
+			queue.add("c");
+			gate.open();
+
+			assertThat(batches.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS)).containsExactly("first");
+			assertThat(batches.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS)).containsExactly("a", "b", "c");
+		}
+
+		@Test
+		void failingListener_laterElementsHandled() throws InterruptedException {
+			var handled = new LinkedBlockingQueue<String>();
+			var queue = new MultiplexingQueue<String>(element -> {
+				if (element.equals("fail"))
+					throw new IllegalArgumentException();
+				handled.add(element);
+			}, "test-queue");
+
+			queue.add("fail");
+			queue.add("a");
+
+			assertThat(handled.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isEqualTo("a");
+		}
+
+	}
+
+	@Nested
+	class Block {
+
+		@Test
+		void fullQueue_addBlocksUntilHandled() throws InterruptedException {
+			var gate = new Gate();
+			var queue = new MultiplexingQueue<String>("test-queue", 1, Backpressure.block());
+			var batches = new CopyOnWriteArrayList<List<String>>();
+			queue.addBatchListener(gate::pass);
+			queue.addBatchListener(batches::add);
+			queue.add("first");
+			gate.awaitBlocked();
+			queue.add("a");
+
+			var adding = Thread.ofVirtual().start(() -> queue.add("b"));
+			assertThat(adding.join(Duration.ofMillis(100))).isFalse();
+			gate.open();
+			assertThat(adding.join(Duration.ofSeconds(TIMEOUT_SECONDS))).isTrue();
+
+			awaitHandled(queue, 3);
+			assertThat(batches).containsExactly(List.of("first"), List.of("a"), List.of("b"));
+			assertThat(queue.metrics().dropped()).isZero();
+		}
+
+	}
+
+	@Nested
+	class DropOldest {
+
+		@Test
+		void fullQueue_oldestDropped() throws InterruptedException {
+			var gate = new Gate();
+			var queue = new MultiplexingQueue<String>("test-queue", 2, Backpressure.dropOldest());
+			var batches = new CopyOnWriteArrayList<List<String>>();
+			queue.addBatchListener(gate::pass);
+			queue.addBatchListener(batches::add);
+			queue.add("first");
+			gate.awaitBlocked();
+
+			queue.add("a");
+			queue.add("b");
+			queue.add("c");
+			gate.open();
+
+			awaitHandled(queue, 3);
+			assertThat(batches).containsExactly(List.of("first"), List.of("b", "c"));
+			assertThat(queue.metrics().dropped()).isEqualTo(1);
+		}
+
+	}
+
+	@Nested
+	class CoalesceByKey {
+
+		@Test
+		void sameKey_latestElementReplacesWaitingOne() throws InterruptedException {
+			var gate = new Gate();
+			var queue = new MultiplexingQueue<String>("test-queue", Backpressure.coalesceBy(element -> element.charAt(0)));
+			var batches = new CopyOnWriteArrayList<List<String>>();
+			queue.addBatchListener(gate::pass);
+			queue.addBatchListener(batches::add);
+			queue.add("first");
+			gate.awaitBlocked();
+
+			queue.add("a1");
+			queue.add("b1");
+			queue.add("a2");
+			gate.open();
+
+			awaitHandled(queue, 3);
+			assertThat(batches).containsExactly(List.of("first"), List.of("a2", "b1"));
+			assertThat(queue.metrics().coalesced()).isEqualTo(1);
+		}
+
+		@Test
+		void fullQueue_sameKeyDoesNotBlock() throws InterruptedException {
+			var gate = new Gate();
+			var queue = new MultiplexingQueue<String>("test-queue", 1, Backpressure.coalesceBy(element -> element.charAt(0)));
+			var batches = new CopyOnWriteArrayList<List<String>>();
+			queue.addBatchListener(gate::pass);
+			queue.addBatchListener(batches::add);
+			queue.add("first");
+			gate.awaitBlocked();
+
+			queue.add("a1");
+			queue.add("a2");
+			gate.open();
+
+			awaitHandled(queue, 2);
+			assertThat(batches).containsExactly(List.of("first"), List.of("a2"));
+		}
+
+	}
+
+	@Nested
+	class Metrics {
+
+		@Test
+		void newQueue_empty() {
+			var metrics = new MultiplexingQueue<String>("test-queue").metrics();
+
+			assertThat(metrics.depth()).isZero();
+			assertThat(metrics.added()).isZero();
+			assertThat(metrics.batches()).isZero();
+			assertThat(metrics.averageHandlerTime()).isZero();
+		}
+
+		@Test
+		void waitingElements_countedAsDepth() throws InterruptedException {
+			var gate = new Gate();
+			var queue = new MultiplexingQueue<String>("test-queue");
+			queue.addBatchListener(gate::pass);
+			queue.add("first");
+			gate.awaitBlocked();
+
+			queue.add("a");
+			queue.add("b");
+
+			assertThat(queue.metrics().depth()).isEqualTo(2);
+			assertThat(queue.metrics().added()).isEqualTo(3);
+			gate.open();
+		}
+
+		@Test
+		void handledElements_countedWithHandlerTime() throws InterruptedException {
+			var queue = new MultiplexingQueue<String>(_ -> sleep(10), "test-queue");
+
+			queue.add("a");
+			awaitHandled(queue, 1);
+
+			var metrics = queue.metrics();
+			assertThat(metrics.handled()).isEqualTo(1);
+			assertThat(metrics.batches()).isEqualTo(1);
+			assertThat(metrics.handlerTime()).isGreaterThanOrEqualTo(Duration.ofMillis(10));
+			assertThat(metrics.maxHandlerTime()).isEqualTo(metrics.handlerTime());
+		}
+
+	}
+
+	@Test
+	void nonPositiveCapacity_fails() {
+		assertThatThrownBy(() -> new MultiplexingQueue<String>("test-queue", 0))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	private static void awaitHandled(MultiplexingQueue<?> queue, long count) throws InterruptedException {
+		var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+		while (queue.metrics().handled() < count && System.nanoTime() < deadline)
+			Thread.sleep(5);
+		assertThat(queue.metrics().handled()).isEqualTo(count);
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Blocks the queue's thread in the first batch it handles until the gate is opened,
+	 * so the test can fill the queue in the meantime.
+	 */
+	private static class Gate {
+
+		private final CountDownLatch blocked = new CountDownLatch(1);
+		private final CountDownLatch opened = new CountDownLatch(1);
+
+		void pass(List<?> batch) {
+			blocked.countDown();
+			try {
+				opened.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		void awaitBlocked() throws InterruptedException {
+			blocked.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		}
+
+		void open() {
+			opened.countDown();
+		}
+
+	}
+
+}
@@ -24,6 +24,15 @@ class RecordMapperTests {
 	public record OneOptional(Optional<String> stringValue) { }
 	public record OneSet(Set<String> stringValues) { }
 	public record OneList(List<String> stringValues) { }
+	public record OneRecordList(List<OneString> recordValues) { }
+	public record OneRecordSet(Set<OneString> recordValues) { }
+	public record OtherString(String stringValue) { }
+	public record Validated(String stringValue) {
+		public Validated {
+			if (stringValue.isBlank())
+				throw new IllegalArgumentException("Blank string");
+		}
+	}
 
 	@Nested
 	class FromInstanceToValueMap {
@@ -181,6 +190,28 @@ class RecordMapperTests {
 			assertThat(instance.stringValues).isEmpty();
 		}
 
+		@Test
+		void recordListComponent_otherRecordType() {
+			var instance = createRecordFromValueMap(
+					OneRecordList.class,
+					Map.of(
+							"recordValues", List.of(new OtherString("value #1"), new OtherString("value #2"))
+					));
+
+			assertThat(instance.recordValues).containsExactly(new OneString("value #1"), new OneString("value #2"));
+		}
+
+		@Test
+		void recordListComponent_valueMaps() {
+			var instance = createRecordFromValueMap(
+					OneRecordList.class,
+					Map.of(
+							"recordValues", List.of(Map.of("stringValue", "value #1"), Map.of("stringValue", "value #2"))
+					));
+
+			assertThat(instance.recordValues).containsExactly(new OneString("value #1"), new OneString("value #2"));
+		}
+
 		@Test
 		void setComponent_empty() {
 			var instance = createRecordFromValueMap(
@@ -223,6 +254,18 @@ class RecordMapperTests {
 			assertThat(instance.stringValues).isEmpty();
 		}
 
+
+		@Test
+		void recordSetComponent_otherRecordType() {
+			var instance = createRecordFromValueMap(
+					OneRecordSet.class,
+					Map.of(
+							"recordValues", Set.of(new OtherString("value #1"), new OtherString("value #2"))
+					));
+
+			assertThat(instance.recordValues).containsExactlyInAnyOrder(new OneString("value #1"), new OneString("value #2"));
+		}
+
 	}
 
 	@Nested
@@ -492,4 +535,24 @@ class RecordMapperTests {
 
 	}
 
+	@Nested
+	class Instantiation {
+
+		@Test
+		void sameTypeTwice_sameResult() {
+			var first = createRecordFromValueMap(OneString.class, Map.of("stringValue", "the string value"));
+			var second = createRecordFromValueMap(OneString.class, Map.of("stringValue", "the string value"));
+
+			assertThat(second).isEqualTo(first);
+		}
+
+		@Test
+		void constructorThrows_wrapped() {
+			assertThatThrownBy(() -> createRecordFromValueMap(Validated.class, Map.of("stringValue", " ")))
+					.isInstanceOf(IllegalStateException.class)
+					.hasRootCauseMessage("Blank string");
+		}
+
+	}
+
 }
@@ -0,0 +1,163 @@
+package dev.nipafx.ginevra.util;
+
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toUnmodifiableSet;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RecordTransferTests {
+
+	public enum Kind { POST, PAGE }
+	public record Title(String text) { }
+	public record Post(Title title, int rank, Kind kind, Optional<Title> subtitle, List<Title> tags, Map<String, Title> links) { }
+	public record PostSummary(Title title, int rank) { }
+	public record PostWithMore(Title title, Optional<String> author, List<String> comments, int likes, String editor) { }
+	public record OtherTitle(int text) { }
+
+	private final RecordTransfer transfer = new RecordTransfer();
+
+	@Nested
+	class SameClassLoader {
+
+		@Test
+		void sameType_sameInstance() {
+			var post = post();
+
+			assertThat(transfer.transfer(post, Post.class)).isSameAs(post);
+		}
+
+		@Test
+		void subsetType_copiesComponents() {
+			var post = post();
+
+			var summary = transfer.transfer(post, PostSummary.class);
+
+			assertThat(summary).isEqualTo(new PostSummary(new Title("Ginevra"), 3));
+			assertThat(summary.title()).isSameAs(post.title());
+		}
+
+		@Test
+		void missingComponents_emptyOrAbsent() {
+			var more = transfer.transfer(post(), PostWithMore.class);
+
+			assertThat(more).isEqualTo(new PostWithMore(new Title("Ginevra"), Optional.empty(), List.of(), 0, null));
+		}
+
+		@Test
+		void incompatibleComponent_fails() {
+			assertThatThrownBy(() -> transfer.transfer(new Title("Ginevra"), OtherTitle.class))
+					.isInstanceOf(IllegalArgumentException.class);
+		}
+
+		@Test
+		void nonRecordToRecord_fails() {
+			assertThatThrownBy(() -> transfer.transfer("Ginevra", Title.class))
+					.isInstanceOf(IllegalArgumentException.class);
+		}
+
+	}
+
+	@Nested
+	class OtherClassLoader {
+
+		@Test
+		void record_copiedToOtherType() throws ReflectiveOperationException {
+			var loader = new ChildFirstClassLoader(Title.class, Post.class, Kind.class);
+			var otherPost = loader.loadClass(Post.class.getName());
+
+			var copy = transfer.transfer(post(), otherPost);
+
+			assertThat(copy).isInstanceOf(otherPost);
+			assertThat(otherPost.getMethod("rank").invoke(copy)).isEqualTo(3);
+		}
+
+		@Test
+		void nestedValues_copiedToOtherTypes() throws ReflectiveOperationException {
+			var loader = new ChildFirstClassLoader(Title.class, Post.class, Kind.class);
+			var otherPost = loader.loadClass(Post.class.getName());
+
+			var copy = (Record) transfer.transfer(post(), otherPost);
+
+			var title = otherPost.getMethod("title").invoke(copy);
+			var kind = otherPost.getMethod("kind").invoke(copy);
+			var subtitle = (Optional<?>) otherPost.getMethod("subtitle").invoke(copy);
+			var tags = (List<?>) otherPost.getMethod("tags").invoke(copy);
+			var links = (Map<?, ?>) otherPost.getMethod("links").invoke(copy);
+			var otherTitle = loader.loadClass(Title.class.getName());
+			assertThat(title).isInstanceOf(otherTitle);
+			assertThat(kind.getClass()).isSameAs(loader.loadClass(Kind.class.getName()));
+			assertThat(subtitle).get().isInstanceOf(otherTitle);
+			assertThat(tags).allMatch(otherTitle::isInstance);
+			assertThat(links.values()).allMatch(otherTitle::isInstance);
+		}
+
+		@Test
+		void copiedBack_equal() throws ClassNotFoundException {
+			var loader = new ChildFirstClassLoader(Title.class, Post.class, Kind.class);
+			var otherPost = loader.loadClass(Post.class.getName());
+
+			var copy = transfer.transfer(post(), otherPost);
+			var copiedBack = transfer.transfer(copy, Post.class);
+
+			assertThat(copiedBack).isEqualTo(post());
+		}
+
+	}
+
+	private static Post post() {
+		return new Post(
+				new Title("Ginevra"),
+				3,
+				Kind.POST,
+				Optional.of(new Title("A static site generator")),
+				List.of(new Title("java"), new Title("web")),
+				Map.of("home", new Title("Home")));
+	}
+
+	/**
+	 * Loads the given classes itself (instead of delegating to its parent), so they're different
+	 * from the classes with the same names that were loaded by the parent.
+	 */
+	private static class ChildFirstClassLoader extends ClassLoader {
+
+		private final Set<String> classNames;
+
+		ChildFirstClassLoader(Class<?>... classes) {
+			super("child-first", RecordTransferTests.class.getClassLoader());
+			this.classNames = Stream.of(classes).map(Class::getName).collect(toUnmodifiableSet());
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			synchronized (getClassLoadingLock(name)) {
+				if (!classNames.contains(name))
+					return super.loadClass(name, resolve);
+
+				var loaded = findLoadedClass(name);
+				if (loaded != null)
+					return loaded;
+				var resource = name.replace('.', '/') + ".class";
+				try (var byteCode = getParent().getResourceAsStream(resource)) {
+					if (byteCode == null)
+						throw new ClassNotFoundException(name);
+					var bytes = byteCode.readAllBytes();
+					return defineClass(name, bytes, 0, bytes.length);
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,109 @@
+package dev.nipafx.ginevra.util;
+
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SHA256Tests {
+
+	@Nested
+	class Content {
+
+		@Test
+		void onlyAlphanumericCharacters() {
+			// with a hundred hashes, some of their Base64 encodings contain `+` or `/`
+			var hashes = IntStream
+					.range(0, 100)
+					.mapToObj(i -> SHA256.hash("content " + i))
+					.toList();
+
+			assertThat(hashes).allMatch(hash -> hash.matches("[a-zA-Z0-9]+"));
+		}
+
+		@Test
+		void sameContent_sameHash() {
+			assertThat(SHA256.hash("content")).isEqualTo(SHA256.hash("content"));
+		}
+
+		@Test
+		void differentContent_differentHash() {
+			assertThat(SHA256.hash("content")).isNotEqualTo(SHA256.hash("other content"));
+		}
+
+		@Test
+		void stringAndBytes_sameHash() {
+			assertThat(SHA256.hash("contént")).isEqualTo(SHA256.hash("contént".getBytes(UTF_8)));
+		}
+
+		@Test
+		void streamed_sameHash() {
+			var digest = SHA256.createDigest();
+			digest.update("con".getBytes(UTF_8));
+			digest.update("tent".getBytes(UTF_8));
+
+			assertThat(SHA256.hash(digest)).isEqualTo(SHA256.hash("content"));
+		}
+
+		@Test
+		void concurrentHashing_sameHashes() throws Exception {
+			var expected = IntStream
+					.range(0, 1_000)
+					.mapToObj(i -> SHA256.hash("content " + i))
+					.toList();
+
+			try (var executor = Executors.newFixedThreadPool(8)) {
+				var futures = IntStream
+						.range(0, 1_000)
+						.mapToObj(i -> executor.submit((Callable<String>) () -> SHA256.hash("content " + i)))
+						.toList();
+				for (int i = 0; i < futures.size(); i++)
+					assertThat(futures.get(i).get()).isEqualTo(expected.get(i));
+			}
+		}
+
+	}
+
+	@Nested
+	class FileContent {
+
+		@TempDir
+		private Path folder;
+
+		@Test
+		void sameHashAsContent() throws IOException {
+			var file = folder.resolve("file.txt");
+			Files.writeString(file, "content");
+
+			assertThat(SHA256.hash(file)).isEqualTo(SHA256.hash("content"));
+		}
+
+		@Test
+		void fileChanged_newHash() throws IOException {
+			var file = folder.resolve("file.txt");
+			Files.writeString(file, "content");
+			Files.setLastModifiedTime(file, FileTime.from(Instant.parse("2024-01-01T00:00:00Z")));
+			var hash = SHA256.hash(file);
+
+			Files.writeString(file, "other content");
+			Files.setLastModifiedTime(file, FileTime.from(Instant.parse("2024-01-02T00:00:00Z")));
+
+			assertThat(SHA256.hash(file))
+					.isNotEqualTo(hash)
+					.isEqualTo(SHA256.hash("other content"));
+		}
+
+	}
+
+}